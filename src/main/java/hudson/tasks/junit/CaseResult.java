@@ -26,16 +26,20 @@ package hudson.tasks.junit;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Util;
+import hudson.model.Job;
 import hudson.model.Run;
 import hudson.tasks.test.TestResult;
 import hudson.util.TextFile;
 import io.jenkins.plugins.junit.storage.FileJunitTestResultStorage;
 import io.jenkins.plugins.junit.storage.JunitTestResultStorage;
 import io.jenkins.plugins.junit.storage.TestResultImpl;
+import io.jenkins.plugins.junit.storage.TestResultImplCache;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -43,6 +47,8 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -79,14 +85,22 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
      */
     private String testName;
 
-    private transient String safeName;
+    /**
+     * Set by {@link ClassResult#assignSafeNames()} for all cases of a class at once.
+     */
+    private transient volatile String safeName;
     private boolean isProperFailure;
     private boolean skipped;
     private boolean keepTestNames;
     private String skippedMessage;
     private String errorStackTrace;
     private String errorDetails;
+    /**
+     * Null rather than an empty map or list when there is nothing to hold,
+     * which is the case for almost all test cases.
+     */
     private Map<String, String> properties;
+
     private List<Failure> flakyFailures;
     private List<Failure> rerunFailures;
 
@@ -144,7 +158,7 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
         this.isProperFailure = false;
         this.skipped = false;
         this.skippedMessage = null;
-        this.properties = Collections.emptyMap();
+        this.properties = null;
         this.keepTestNames = false;
     }
 
@@ -172,7 +186,7 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
         this.isProperFailure = false;
         this.skipped = skippedMessage != null;
         this.skippedMessage = skippedMessage;
-        this.properties = Collections.emptyMap();
+        this.properties = null;
         this.keepTestNames = false;
     }
 
@@ -237,13 +251,16 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
         stderr = fixNULs(possiblyTrimStdio(_this, stdioRetention, testCase.elementText("system-err")));
 
         // parse properties
-        Map<String, String> properties = new HashMap<String, String>();
+        Map<String, String> properties = null;
         if (keepProperties) {
             Element properties_element = testCase.element("properties");
             if (properties_element != null) {
                 List<Element> property_elements = properties_element.elements("property");
                 for (Element prop : property_elements) {
                     if (prop.attributeValue("name") != null) {
+                        if (properties == null) {
+                            properties = new HashMap<>();
+                        }
                         if (prop.attributeValue("value") != null) {
                             properties.put(prop.attributeValue("name"), prop.attributeValue("value"));
                         } else {
@@ -272,8 +289,8 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
         this.failedSince = src.failedSince;
         this.stdout = src.stdout;
         this.stderr = src.stderr;
-        this.properties = new HashMap<>();
-        this.properties.putAll(src.properties);
+        // never modified once parsed, so the copy can share them
+        this.properties = src.properties;
         this.flakyFailures = src.flakyFailures;
         this.rerunFailures = src.rerunFailures;
     }
@@ -283,44 +300,61 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
     }
 
     private static List<Failure> parseFlakyFailures(Element testCase) {
-        List<Failure> failures = new ArrayList<>();
         List<Element> flakyFailuresElements = testCase.elements("flakyFailure");
-        if (flakyFailuresElements != null) {
-            for (Element flakyFailuresElement : flakyFailuresElements) {
-                String message = flakyFailuresElement.attributeValue("message");
-                String type = flakyFailuresElement.attributeValue("type");
-                String stackTrace = flakyFailuresElement.elementText("stackTrace");
-                String stdout = flakyFailuresElement.elementText("system-out");
-                String stderr = flakyFailuresElement.elementText("system-err");
-                failures.add(new Failure(message, type, stackTrace, stdout, stderr));
-            }
+        if (flakyFailuresElements == null || flakyFailuresElements.isEmpty()) {
+            return null;
+        }
+        List<Failure> failures = new ArrayList<>();
+        for (Element flakyFailuresElement : flakyFailuresElements) {
+            String message = flakyFailuresElement.attributeValue("message");
+            String type = flakyFailuresElement.attributeValue("type");
+            String stackTrace = flakyFailuresElement.elementText("stackTrace");
+            String stdout = flakyFailuresElement.elementText("system-out");
+            String stderr = flakyFailuresElement.elementText("system-err");
+            failures.add(new Failure(message, type, stackTrace, stdout, stderr));
         }
         return failures;
     }
 
     private static List<Failure> parseRerunFailures(Element testCase) {
-        List<Failure> rerunFailures = new ArrayList<>();
         List<Element> rerunFailureElements = testCase.elements("rerunFailure");
-        if (rerunFailureElements != null) {
-            for (Element rerunFailureElement : rerunFailureElements) {
-                String message = rerunFailureElement.attributeValue("message");
-                String type = rerunFailureElement.attributeValue("type");
-                String stackTrace = rerunFailureElement.elementText("stackTrace");
-                String stdout = rerunFailureElement.elementText("system-out");
-                String stderr = rerunFailureElement.elementText("system-err");
-                rerunFailures.add(new Failure(message, type, stackTrace, stdout, stderr));
-            }
+        if (rerunFailureElements == null || rerunFailureElements.isEmpty()) {
+            return null;
+        }
+        List<Failure> rerunFailures = new ArrayList<>();
+        for (Element rerunFailureElement : rerunFailureElements) {
+            String message = rerunFailureElement.attributeValue("message");
+            String type = rerunFailureElement.attributeValue("type");
+            String stackTrace = rerunFailureElement.elementText("stackTrace");
+            String stdout = rerunFailureElement.elementText("system-out");
+            String stderr = rerunFailureElement.elementText("system-err");
+            rerunFailures.add(new Failure(message, type, stackTrace, stdout, stderr));
         }
         return rerunFailures;
     }
 
     static CaseResult parse(SuiteResult parent, final XMLStreamReader reader, String context, String ver)
             throws XMLStreamException {
+        return parse(parent, reader, context, ver, null);
+    }
+
+    /**
+     * @param classFilter if given, cases of other classes are skipped as soon as their class name has been read
+     * @return null if the case was skipped
+     */
+    @CheckForNull
+    static CaseResult parse(
+            SuiteResult parent,
+            final XMLStreamReader reader,
+            String context,
+            String ver,
+            @CheckForNull Predicate<String> classFilter)
+            throws XMLStreamException {
         CaseResult r = new CaseResult(parent, null, null, null);
         while (reader.hasNext()) {
             final int event = reader.next();
             if (event == XMLStreamReader.END_ELEMENT && reader.getLocalName().equals("case")) {
-                return r;
+                return classFilter == null || (r.className != null && classFilter.test(r.className)) ? r : null;
             }
             if (event == XMLStreamReader.START_ELEMENT) {
                 final String elementName = reader.getLocalName();
@@ -333,6 +367,10 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
                         break;
                     case "className":
                         r.className = reader.getElementText();
+                        if (classFilter != null && !classFilter.test(r.className)) {
+                            skipToEndOfElement(reader);
+                            return null;
+                        }
                         break;
                     case "testName":
                         r.testName = reader.getElementText();
@@ -365,14 +403,15 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
                         r.stderr = reader.getElementText();
                         break;
                     case "properties":
-                        r.properties = new HashMap<>();
-                        parseProperties(r.properties, reader, context, ver);
+                        Map<String, String> properties = new HashMap<>();
+                        parseProperties(properties, reader, context, ver);
+                        r.properties = properties.isEmpty() ? null : properties;
                         break;
                     case "flakyFailures":
-                        r.flakyFailures = parseFailures(reader, context, "flakyFailures");
+                        r.flakyFailures = nullIfEmpty(parseFailures(reader, context, "flakyFailures"));
                         break;
                     case "rerunFailures":
-                        r.rerunFailures = parseFailures(reader, context, "rerunFailures");
+                        r.rerunFailures = nullIfEmpty(parseFailures(reader, context, "rerunFailures"));
                         break;
                     default:
                         LOGGER.finest(() -> "Unknown field in " + context + ": " + elementName);
@@ -382,6 +421,34 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
         return r;
     }
 
+    /**
+     * Moves past the end of the element the reader is in, without reading what is left of it.
+     */
+    private static void skipToEndOfElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamReader.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamReader.END_ELEMENT && depth-- == 0) {
+                return;
+            }
+        }
+    }
+
+    private static List<Failure> nullIfEmpty(List<Failure> failures) {
+        return failures.isEmpty() ? null : failures;
+    }
+
+    /**
+     * Lets consecutive cases of a suite, which mostly belong to the same class, share one class name instance.
+     */
+    void shareClassName(@CheckForNull CaseResult previous) {
+        if (previous != null && className != null && className.equals(previous.className)) {
+            className = previous.className;
+        }
+    }
+
     static List<Failure> parseFailures(final XMLStreamReader reader, String context, String endElement)
             throws XMLStreamException {
         List<Failure> failures = new ArrayList<>();
@@ -647,11 +714,19 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
             Run<?, ?> r = getRun();
             if (r != null) {
                 TestResultAction action = r.getAction(TestResultAction.class);
-                if (action != null && action.getResult().hasMultipleBlocks()) {
-                    List<String> enclosingFlowNodeNames = getEnclosingFlowNodeNames();
-                    Collections.reverse(enclosingFlowNodeNames);
-                    return String.join(" / ", enclosingFlowNodeNames) + " / " + rawName;
-                }
+                return getNameWithEnclosingBlocks(
+                        rawName, action != null && action.getResult().hasMultipleBlocks());
+            }
+        }
+        return rawName;
+    }
+
+    private String getNameWithEnclosingBlocks(String rawName, boolean multipleBlocks) {
+        if (multipleBlocks && !keepTestNames) {
+            List<String> enclosingFlowNodeNames = getEnclosingFlowNodeNames();
+            if (!enclosingFlowNodeNames.isEmpty()) {
+                Collections.reverse(enclosingFlowNodeNames);
+                return String.join(" / ", enclosingFlowNodeNames) + " / " + rawName;
             }
         }
         return rawName;
@@ -698,19 +773,49 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
     /**
      * Gets the version of {@link #getName()} that's URL-safe.
      */
-    public @Override synchronized String getSafeName() {
-        if (safeName != null) {
-            return safeName;
+    public @Override String getSafeName() {
+        String name = safeName;
+        if (name == null) {
+            ClassResult c = classResult;
+            if (c != null) {
+                c.assignSafeNames();
+                name = safeName;
+            }
+            if (name == null) { // not among the cases of a class
+                name = safeName = toSafeName(getDisplayName());
+            }
         }
-        StringBuilder buf = new StringBuilder(getDisplayName());
+        return name;
+    }
+
+    @CheckForNull
+    String getAssignedSafeName() {
+        return safeName;
+    }
+
+    void setSafeName(@CheckForNull String safeName) {
+        this.safeName = safeName;
+        resetId();
+    }
+
+    /**
+     * Gets {@link #getSafeName()} before it is made unique among the cases of its class.
+     *
+     * @param multipleBlocks whether the result has several pipeline blocks, so display names include their names
+     */
+    String getBaseSafeName(boolean multipleBlocks) {
+        return toSafeName(getNameWithEnclosingBlocks(getTransformedTestName(), multipleBlocks));
+    }
+
+    private static String toSafeName(String displayName) {
+        StringBuilder buf = new StringBuilder(displayName);
         for (int i = 0; i < buf.length(); i++) {
             char ch = buf.charAt(i);
             if (!Character.isJavaIdentifierPart(ch)) {
                 buf.setCharAt(i, '_');
             }
         }
-        Collection<CaseResult> siblings = classResult == null ? Collections.emptyList() : classResult.getChildren();
-        return safeName = uniquifyName(siblings, buf.toString());
+        return buf.toString();
     }
 
     /**
@@ -814,12 +919,77 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
         }
     }
 
+    /**
+     * Computes since when the given failed cases of a build have been failing from the {@link HistoryIndex}
+     * of previous builds, reading the index of each previous build once for all of them.
+     * This happens as the result is recorded, so that {@code failedSince} is saved with it and showing or sorting
+     * failed tests later does not go back through previous builds.
+     * Cases this cannot tell, e.g. because a previous build has not been indexed, are left to
+     * {@link #recomputeFailedSinceIfNeeded()}.
+     *
+     * @return how many of the cases are {@link Status#REGRESSION regressions}, i.e. passed the last time they ran,
+     *     or -1 if this could not tell for all of them
+     */
+    static int computeFailedSince(@NonNull Run<?, ?> run, @NonNull Collection<CaseResult> cases) {
+        if (HistoryIndex.DISABLED) {
+            return -1;
+        }
+        Map<Long, CaseResult> pending = new HashMap<>();
+        for (CaseResult c : cases) {
+            if (c.failedSince == 0 && c.getFailCount() == 1) {
+                pending.put(HistoryIndex.key(c.getId()), c);
+            }
+        }
+        HistoryIndex index = HistoryIndex.of(run.getParent());
+        Run<?, ?> b = run;
+        int n = 0;
+        int regressions = 0;
+        // same builds as getPreviousResult() looks at
+        while (!pending.isEmpty() && n < PREVIOUS_TEST_RESULT_BACKTRACK_BUILDS_MAX) {
+            b = b.getPreviousBuild();
+            if (b == null) {
+                break;
+            }
+            if (b.getAction(TestResultAction.class) == null) {
+                continue;
+            }
+            Map<Long, HistoryIndex.Row> rows;
+            try {
+                rows = index.findAll(b.getNumber(), pending.keySet());
+            } catch (NoSuchFileException e) {
+                return -1; // not indexed (yet)
+            } catch (IOException e) {
+                Run<?, ?> loggedBuild = b;
+                LOGGER.log(Level.WARNING, e, () -> "Failed to read test history index of " + loggedBuild);
+                return -1;
+            }
+            for (Map.Entry<Long, HistoryIndex.Row> e : rows.entrySet()) {
+                CaseResult c = pending.remove(e.getKey());
+                HistoryIndex.Row row = e.getValue();
+                if (row.failCount() == 0) {
+                    c.failedSince = run.getNumber();
+                    if (row.passCount() > 0) {
+                        regressions++;
+                    }
+                } else if (row.failedSince() > 0) {
+                    c.failedSince = row.failedSince();
+                }
+            }
+            ++n;
+        }
+        for (CaseResult c : pending.values()) {
+            c.failedSince = run.getNumber();
+        }
+        return regressions;
+    }
+
     @Override
     public Run<?, ?> getFailedSinceRun() {
         JunitTestResultStorage storage = JunitTestResultStorage.find();
         if (!(storage instanceof FileJunitTestResultStorage)) {
             Run<?, ?> run = Stapler.getCurrentRequest2().findAncestorObject(Run.class);
-            TestResultImpl pluggableStorage = storage.load(run.getParent().getFullName(), run.getNumber());
+            TestResultImpl pluggableStorage =
+                    TestResultImplCache.load(storage, run.getParent().getFullName(), run.getNumber());
             return pluggableStorage.getFailedSinceRun(this);
         }
 
@@ -844,6 +1014,24 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
         }
     }
 
+    /**
+     * Whether this test took much longer than it usually does.
+     */
+    @Restricted(NoExternalUse.class)
+    public boolean isSlowerThanUsual() {
+        DurationStats.Summary stats = DurationStats.of(this);
+        return stats != null && stats.isSlowerThanUsual(getDuration());
+    }
+
+    /**
+     * Gets the median duration of this test over the builds of its job.
+     */
+    @Restricted(NoExternalUse.class)
+    public String getUsualDurationString() {
+        DurationStats.Summary stats = DurationStats.of(this);
+        return stats == null ? getDurationString() : Util.getTimeSpanString((long) (stats.median() * 1000));
+    }
+
     /**
      * The stdout of this test.
      *
@@ -899,6 +1087,11 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
         }
 
         TestResult previousResult = parent.getParent();
+        if (previousResult != null
+                && previousResult.getParentAction() instanceof TestResultAction
+                && TestResultAction.TARGETED_LOOKUP_ENABLED) {
+            return findPreviousResultOfClass();
+        }
         int n = 0;
         while (previousResult != null && n < PREVIOUS_TEST_RESULT_BACKTRACK_BUILDS_MAX) {
             previousResult = previousResult.getPreviousResult();
@@ -917,6 +1110,74 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
         return null;
     }
 
+    /**
+     * Looks for this case in previous builds as {@link #getPreviousResult()} does,
+     * reading only the cases of its class from builds whose results are not in memory.
+     * Builds the {@link LastSeenIndex} knows about are not looked through, but still count towards
+     * {@link #PREVIOUS_TEST_RESULT_BACKTRACK_BUILDS_MAX}.
+     */
+    private CaseResult findPreviousResultOfClass() {
+        Run<?, ?> b = getRun();
+        int n = 0;
+        if (b != null && !LastSeenIndex.DISABLED) {
+            Job<?, ?> job = b.getParent();
+            LastSeenIndex index = LastSeenIndex.of(job);
+            int previous = index.previousBuild(getId(), b.getNumber());
+            if (previous > 0) {
+                try {
+                    CaseResult cr = findInBuild(job.getBuildByNumber(previous));
+                    if (cr != null) {
+                        return cr;
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, e, () -> "Failed to load (corrupt?) build #" + previous + " of " + job);
+                }
+            } else if (previous == LastSeenIndex.NONE) {
+                // only builds older than the index are left, if the index did not cover as many builds already
+                int since = index.getSince();
+                for (Run<?, ?> p = b.getPreviousBuild();
+                        p != null && p.getNumber() >= since;
+                        p = p.getPreviousBuild()) {
+                    b = p;
+                    if (p.getAction(TestResultAction.class) != null
+                            && ++n >= PREVIOUS_TEST_RESULT_BACKTRACK_BUILDS_MAX) {
+                        return null;
+                    }
+                }
+            }
+        }
+        while (b != null && n < PREVIOUS_TEST_RESULT_BACKTRACK_BUILDS_MAX) {
+            b = b.getPreviousBuild();
+            if (b == null || b.getAction(TestResultAction.class) == null) {
+                continue;
+            }
+            try {
+                CaseResult cr = findInBuild(b);
+                if (cr != null) {
+                    return cr;
+                }
+            } catch (RuntimeException e) {
+                Run<?, ?> loggedBuild = b;
+                LOGGER.log(Level.WARNING, e, () -> "Failed to load (corrupt?) build " + loggedBuild + ", skipping");
+                continue;
+            }
+            ++n;
+        }
+        return null;
+    }
+
+    /**
+     * Gets this case from another build, reading only the cases of its class.
+     */
+    @CheckForNull
+    private CaseResult findInBuild(@CheckForNull Run<?, ?> build) {
+        TestResultAction action = build == null ? null : build.getAction(TestResultAction.class);
+        if (action == null) {
+            return null;
+        }
+        return action.getResultForClass(className).getCase(parent.getName(), getTransformedFullDisplayName());
+    }
+
     /**
      * Case results have no children
      * @return null
@@ -988,7 +1249,7 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
     @Exported
     @Override
     public Map<String, String> getProperties() {
-        return properties;
+        return properties == null ? Collections.emptyMap() : properties;
     }
 
     /**
@@ -1098,8 +1359,7 @@ public class CaseResult extends TestResult implements Comparable<CaseResult> {
 
     public void freeze(SuiteResult parent) {
         this.parent = parent;
-        // some old test data doesn't have failedSince value set, so for those compute them.
-        recomputeFailedSinceIfNeeded();
+        // failedSince is computed once the whole result is frozen as it is recorded, see TestResult.freeze
     }
 
     @Override
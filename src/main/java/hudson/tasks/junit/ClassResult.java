@@ -23,11 +23,14 @@
  */
 package hudson.tasks.junit;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.model.Run;
 import hudson.tasks.test.TabulatedResult;
 import hudson.tasks.test.TestObject;
 import hudson.tasks.test.TestResult;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import org.kohsuke.stapler.StaplerRequest2;
@@ -45,6 +48,11 @@ public final class ClassResult extends TabulatedResult implements Comparable<Cla
 
     private final Set<CaseResult> cases = new TreeSet<CaseResult>();
 
+    /**
+     * {@link #cases} keyed by their {@link CaseResult#getSafeName()}, built by {@link #assignSafeNames()}.
+     */
+    private transient volatile Map<String, CaseResult> casesBySafeName;
+
     private int passCount, failCount, skipCount;
 
     private float duration;
@@ -79,14 +87,14 @@ public final class ClassResult extends TabulatedResult implements Comparable<Cla
             return null;
         }
         if (pr instanceof PackageResult) {
-            return ((PackageResult) pr).getClassResult(getName());
+            return ((PackageResult) pr).getClassResultByName(className);
         }
         return null;
     }
 
     @Override
     public hudson.tasks.test.TestResult findCorrespondingResult(String id) {
-        String myID = safe(getName());
+        String myID = getSafeName();
         String caseName = id;
         int base = id.indexOf(myID);
         if (base > 0) {
@@ -124,20 +132,77 @@ public final class ClassResult extends TabulatedResult implements Comparable<Cla
         }
     }
 
-    public @Override synchronized String getSafeName() {
-        if (safeName != null) {
-            return safeName;
-        }
-        return safeName = uniquifyName(parent.getChildren(), safe(getName()));
+    /**
+     * Unique among the classes of the {@link PackageResult} once it has been tallied.
+     */
+    public @Override String getSafeName() {
+        String name = safeName;
+        return name != null ? name : safe(getName());
+    }
+
+    @CheckForNull
+    String getAssignedSafeName() {
+        return safeName;
+    }
+
+    void setSafeName(String safeName) {
+        this.safeName = safeName;
+        resetId();
     }
 
     public CaseResult getCaseResult(String name) {
+        Map<String, CaseResult> bySafeName = casesBySafeName;
+        if (bySafeName == null) {
+            bySafeName = assignSafeNames();
+        }
+        return bySafeName.get(name);
+    }
+
+    /**
+     * Gives each case a URL-safe name that is unique among the cases of this class,
+     * keeping the names cases were already given, and warms up their ids.
+     *
+     * <p>
+     * Done in one pass whenever cases have been added, so that looking names up is a plain field read afterwards.
+     */
+    synchronized Map<String, CaseResult> assignSafeNames() {
+        Map<String, CaseResult> bySafeName = new HashMap<>();
         for (CaseResult c : cases) {
-            if (c.getSafeName().equals(name)) {
-                return c;
+            String name = c.getAssignedSafeName();
+            if (name != null) {
+                bySafeName.putIfAbsent(name, c);
             }
         }
-        return null;
+        boolean multipleBlocks = getRun() != null
+                && parent != null
+                && parent.getParent() != null
+                && parent.getParent().hasMultipleBlocks();
+        for (CaseResult c : cases) {
+            if (c.getAssignedSafeName() == null) {
+                String base = c.getBaseSafeName(multipleBlocks);
+                String name = base;
+                for (int i = 2; bySafeName.containsKey(name); i++) {
+                    name = base + '_' + i;
+                }
+                c.setSafeName(name);
+                bySafeName.put(name, c);
+            }
+            if (c.getParent() == this) {
+                c.getId();
+            }
+        }
+        casesBySafeName = bySafeName;
+        return bySafeName;
+    }
+
+    /**
+     * Forgets the names given to cases, as they depend on whether there are several pipeline blocks.
+     */
+    synchronized void resetSafeNames() {
+        for (CaseResult c : cases) {
+            c.setSafeName(null);
+        }
+        casesBySafeName = null;
     }
 
     @Override
@@ -196,6 +261,7 @@ public final class ClassResult extends TabulatedResult implements Comparable<Cla
             startTime = Math.min(startTime, r.getStartTime());
         }
         cases.add(r);
+        casesBySafeName = null;
     }
 
     /**
@@ -216,6 +282,7 @@ public final class ClassResult extends TabulatedResult implements Comparable<Cla
             }
             duration += r.getDuration();
         }
+        assignSafeNames();
     }
 
     void freeze() {
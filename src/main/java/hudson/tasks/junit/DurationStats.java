@@ -0,0 +1,398 @@
+package hudson.tasks.junit;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Running statistics of the duration of every test object of a job, updated as builds complete,
+ * so that duration trends and outliers do not need the history of the test to be read.
+ *
+ * <p>
+ * For each test object it keeps the mean and variance of its duration, the linear regression of its duration
+ * over the build number, and a sketch of the distribution of its durations from which percentiles are estimated.
+ * All of them are updated in constant time per build, and kept in {@code junit-history/duration-stats.bin}
+ * in the job directory by a {@link SidecarStore}. Test objects that have not run for {@link #RETENTION} builds
+ * are forgotten.
+ */
+@Restricted(NoExternalUse.class)
+public final class DurationStats {
+
+    static boolean DISABLED = SystemProperties.getBoolean(DurationStats.class.getName() + ".DISABLED", false);
+
+    /**
+     * Number of builds a test object needs to have run in before it can be told to be slower than usual.
+     */
+    static int MIN_SAMPLES = SystemProperties.getInteger(DurationStats.class.getName() + ".MIN_SAMPLES", 10);
+
+    /**
+     * Test objects that have not run for this many builds are forgotten.
+     */
+    static int RETENTION = SystemProperties.getInteger(DurationStats.class.getName() + ".RETENTION", 100);
+
+    private static final int MAGIC = 0x4A554453; // JUDS
+    private static final int VERSION = 2;
+    private static final String FILE_NAME = "duration-stats.bin";
+
+    private static final SidecarStore<DurationStats> store = new SidecarStore<>(
+            FILE_NAME,
+            "test duration statistics",
+            file -> new DurationStats(),
+            DurationStats::load,
+            DurationStats::save);
+
+    private final Map<Long, Stats> stats = new ConcurrentHashMap<>();
+
+    DurationStats() {}
+
+    /**
+     * Gets the statistics of a job, loading them on first use.
+     */
+    @NonNull
+    public static DurationStats of(@NonNull Job<?, ?> job) {
+        return store.get(job);
+    }
+
+    /**
+     * Gets the statistics of a test object over the builds of its job.
+     *
+     * @return null if they are not kept for this test object
+     */
+    @CheckForNull
+    public static Summary of(@NonNull hudson.tasks.test.TestObject testObject) {
+        if (DISABLED || !HistoryIndex.isIndexed(testObject)) {
+            return null;
+        }
+        Run<?, ?> run = testObject.getRun();
+        return run == null ? null : of(run.getParent()).get(testObject.getId());
+    }
+
+    /**
+     * Gets the statistics of a test object.
+     *
+     * @param id the {@link hudson.tasks.test.TestObject#getId() id} of the test object
+     * @return null if the test object has not run in any build recorded so far
+     */
+    @CheckForNull
+    public Summary get(@NonNull String id) {
+        Stats s = stats.get(HistoryIndex.key(id));
+        return s == null ? null : s.summary();
+    }
+
+    /**
+     * Adds the durations of the test objects of a completed build, and forgets those that have not run for
+     * {@link #RETENTION} builds.
+     * Test objects whose tests were all skipped are left out, as they did not really run.
+     */
+    void record(int buildNumber, @NonNull TestResult result) {
+        add(buildNumber, result);
+        for (PackageResult pr : result.getChildren()) {
+            add(buildNumber, pr);
+            for (ClassResult cr : pr.getChildren()) {
+                add(buildNumber, cr);
+                for (CaseResult c : cr.getChildren()) {
+                    add(buildNumber, c);
+                }
+            }
+        }
+        stats.values().removeIf(s -> s.isOlderThan(buildNumber - RETENTION, buildNumber));
+    }
+
+    private void add(int buildNumber, hudson.tasks.test.TestResult r) {
+        if (r.getPassCount() + r.getFailCount() > 0) {
+            stats.computeIfAbsent(HistoryIndex.key(r.getId()), k -> new Stats())
+                    .add(buildNumber, r.getDuration());
+        }
+    }
+
+    void load(File file) throws IOException {
+        SidecarStore.read(file, MAGIC, VERSION, (in, version) -> {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                stats.put(key, Stats.read(in, version));
+            }
+        });
+    }
+
+    synchronized void save(File file) throws IOException {
+        SidecarStore.write(file, MAGIC, VERSION, out -> {
+            Map<Long, Stats> snapshot = Map.copyOf(stats);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<Long, Stats> e : snapshot.entrySet()) {
+                out.writeLong(e.getKey());
+                e.getValue().write(out);
+            }
+        });
+    }
+
+    /**
+     * Statistics of the duration of one test object, in seconds.
+     *
+     * @param count number of builds the test object ran in
+     * @param intercept duration at build number 0 of the linear trend of the duration over the build number
+     * @param slope change of the duration from one build to the next along that trend
+     * @param median estimated median duration
+     * @param p95 estimated 95th percentile of the duration
+     */
+    public record Summary(
+            long count, double mean, double stdDev, double intercept, double slope, double median, double p95) {
+
+        /**
+         * Whether a duration is an outlier among the durations seen so far:
+         * above the 95th percentile and more than three standard deviations away from the mean.
+         */
+        public boolean isSlowerThanUsual(double duration) {
+            return count >= MIN_SAMPLES && duration > p95 && duration > mean + 3 * stdDev;
+        }
+
+        /**
+         * Duration along the linear trend at the given build.
+         */
+        public double trendAt(int buildNumber) {
+            return intercept + slope * buildNumber;
+        }
+    }
+
+    /**
+     * Running statistics of a series of durations, updated one value at a time.
+     * Mean, variance and the regression over the build number follow Welford's method, which keeps them accurate
+     * over long series; the percentiles come from a {@link Sketch}.
+     */
+    static final class Stats {
+        private long count;
+        /**
+         * Last build the test object ran in, or 0 if unknown, as in statistics saved by earlier versions.
+         */
+        private int lastBuild;
+        private double meanX, meanY;
+        private double m2X, m2Y, cXY;
+        private final Sketch sketch;
+
+        Stats() {
+            this(new Sketch());
+        }
+
+        private Stats(Sketch sketch) {
+            this.sketch = sketch;
+        }
+
+        synchronized void add(int buildNumber, double duration) {
+            count++;
+            lastBuild = Math.max(lastBuild, buildNumber);
+            double dx = buildNumber - meanX;
+            double dy = duration - meanY;
+            meanX += dx / count;
+            meanY += dy / count;
+            m2X += dx * (buildNumber - meanX);
+            m2Y += dy * (duration - meanY);
+            cXY += dx * (duration - meanY);
+            sketch.add(duration);
+        }
+
+        /**
+         * Whether the test object last ran before the given build.
+         * If that is not known, it counts as having run in the current build.
+         */
+        synchronized boolean isOlderThan(int buildNumber, int currentBuild) {
+            if (lastBuild == 0) {
+                lastBuild = currentBuild;
+            }
+            return lastBuild < buildNumber;
+        }
+
+        synchronized Summary summary() {
+            double slope = m2X > 0 ? cXY / m2X : 0;
+            return new Summary(
+                    count,
+                    meanY,
+                    count > 1 ? Math.sqrt(m2Y / (count - 1)) : 0,
+                    meanY - slope * meanX,
+                    slope,
+                    sketch.quantile(0.5),
+                    sketch.quantile(0.95));
+        }
+
+        synchronized void write(DataOutputStream out) throws IOException {
+            out.writeLong(count);
+            out.writeInt(lastBuild);
+            out.writeDouble(meanX);
+            out.writeDouble(meanY);
+            out.writeDouble(m2X);
+            out.writeDouble(m2Y);
+            out.writeDouble(cXY);
+            sketch.write(out);
+        }
+
+        static Stats read(DataInputStream in, int version) throws IOException {
+            long count = in.readLong();
+            int lastBuild = version >= 2 ? in.readInt() : 0;
+            double meanX = in.readDouble();
+            double meanY = in.readDouble();
+            double m2X = in.readDouble();
+            double m2Y = in.readDouble();
+            double cXY = in.readDouble();
+            Stats s = new Stats(Sketch.read(in));
+            s.count = count;
+            s.lastBuild = lastBuild;
+            s.meanX = meanX;
+            s.meanY = meanY;
+            s.m2X = m2X;
+            s.m2Y = m2Y;
+            s.cXY = cXY;
+            return s;
+        }
+    }
+
+    /**
+     * Distribution of durations in logarithmic buckets, each {@link #GAMMA} times as wide as the previous one,
+     * so that percentiles are estimated within a few percent of their value whatever the scale of the durations.
+     * Two sketches merge by adding their buckets.
+     * When values span more than {@link #MAX_BUCKETS} buckets, the lowest ones are folded together,
+     * which only degrades the accuracy of low percentiles.
+     */
+    static final class Sketch {
+        static final double GAMMA = 1.1;
+        static final int MAX_BUCKETS = 128;
+        /**
+         * Durations up to this one, in seconds, count as zero.
+         */
+        private static final double MIN_VALUE = 1e-6;
+
+        private static final double LOG_GAMMA = Math.log(GAMMA);
+
+        private long zeroCount;
+        private int offset;
+        private long[] counts = new long[0];
+
+        void add(double value) {
+            if (!(value > MIN_VALUE)) {
+                zeroCount++;
+                return;
+            }
+            int index = (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+            if (counts.length == 0) {
+                offset = index;
+                counts = new long[1];
+            } else if (index < offset) {
+                int grow = offset - index;
+                if (counts.length + grow > MAX_BUCKETS) {
+                    // fold into the lowest bucket rather than growing below it
+                    index = offset;
+                } else {
+                    long[] c = new long[counts.length + grow];
+                    System.arraycopy(counts, 0, c, grow, counts.length);
+                    counts = c;
+                    offset = index;
+                }
+            } else if (index >= offset + counts.length) {
+                int length = index - offset + 1;
+                if (length > MAX_BUCKETS) {
+                    int drop = length - MAX_BUCKETS;
+                    long folded = 0;
+                    for (int i = 0; i <= drop && i < counts.length; i++) {
+                        folded += counts[i];
+                    }
+                    long[] c = new long[MAX_BUCKETS];
+                    if (drop < counts.length) {
+                        System.arraycopy(counts, drop, c, 0, counts.length - drop);
+                    }
+                    c[0] = folded;
+                    counts = c;
+                    offset += drop;
+                } else {
+                    counts = Arrays.copyOf(counts, length);
+                }
+            }
+            counts[index - offset]++;
+        }
+
+        /**
+         * Estimates the value below which the given fraction of the values fall.
+         */
+        double quantile(double q) {
+            long total = zeroCount;
+            for (long c : counts) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) (q * (total - 1));
+            if (rank < zeroCount) {
+                return 0;
+            }
+            long seen = zeroCount;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (rank < seen) {
+                    // middle of the bucket, whose upper bound is gamma^(offset + i)
+                    return 2 * Math.pow(GAMMA, offset + i) / (GAMMA + 1);
+                }
+            }
+            return 2 * Math.pow(GAMMA, offset + counts.length - 1) / (GAMMA + 1);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(zeroCount);
+            out.writeInt(offset);
+            out.writeInt(counts.length);
+            for (long c : counts) {
+                out.writeLong(c);
+            }
+        }
+
+        static Sketch read(DataInputStream in) throws IOException {
+            Sketch s = new Sketch();
+            s.zeroCount = in.readLong();
+            s.offset = in.readInt();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_BUCKETS) {
+                throw new IOException("Corrupt test duration statistics");
+            }
+            s.counts = new long[length];
+            for (int i = 0; i < length; i++) {
+                s.counts[i] = in.readLong();
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Records the durations of builds as they complete, and writes them a little later.
+     */
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            if (DISABLED) {
+                return;
+            }
+            TestResultAction action = run.getAction(TestResultAction.class);
+            if (action == null) {
+                return;
+            }
+            TestResult result = action.getResult();
+            if (result.getPluggableStorage() != null) {
+                return;
+            }
+            Job<?, ?> job = run.getParent();
+            of(job).record(run.getNumber(), result);
+            store.saveLater(job);
+        }
+    }
+}
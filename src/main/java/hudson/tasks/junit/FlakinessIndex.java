@@ -0,0 +1,282 @@
+package hudson.tasks.junit;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * How flaky each test case of a job is, updated as builds complete,
+ * so that the flakiest tests can be listed without reading the results of past builds.
+ *
+ * <p>
+ * For each case it keeps how often it ran, failed, and flipped between passing and failing,
+ * how many flaky and rerun failures were reported for it, and the outcomes of its last {@link #WINDOW} runs.
+ * Its flakiness is the share of those runs that either flipped its status or needed reruns to pass.
+ * Cases are keyed by the {@link HistoryIndex#key hash} of their id, and their id and name are only kept once they
+ * were flaky. Everything is kept in {@code junit-history/flakiness.bin} in the job directory by a
+ * {@link SidecarStore}.
+ */
+@Restricted(NoExternalUse.class)
+public final class FlakinessIndex {
+
+    static boolean DISABLED = SystemProperties.getBoolean(FlakinessIndex.class.getName() + ".DISABLED", false);
+
+    /**
+     * Number of recent runs of a test its flakiness is computed over, at most 64.
+     */
+    static final int WINDOW = Math.max(
+            2, Math.min(64, SystemProperties.getInteger(FlakinessIndex.class.getName() + ".WINDOW", 30)));
+
+    /**
+     * Tests that have not run for this many builds are forgotten.
+     */
+    static int RETENTION = SystemProperties.getInteger(FlakinessIndex.class.getName() + ".RETENTION", 100);
+
+    private static final int MAGIC = 0x4A55464C; // JUFL
+    private static final int VERSION = 2;
+    private static final String FILE_NAME = "flakiness.bin";
+
+    private static final SidecarStore<FlakinessIndex> store = new SidecarStore<>(
+            FILE_NAME, "test flakiness", file -> new FlakinessIndex(), FlakinessIndex::load, FlakinessIndex::save);
+
+    private final Map<Long, TestFlakiness> tests = new ConcurrentHashMap<>();
+
+    FlakinessIndex() {}
+
+    /**
+     * Gets the flakiness of the tests of a job, loading it on first use.
+     */
+    @NonNull
+    public static FlakinessIndex of(@NonNull Job<?, ?> job) {
+        return store.get(job);
+    }
+
+    /**
+     * Lists the flakiest tests, flakiest first.
+     *
+     * @param limit maximum number of tests to list
+     * @return tests with a non-zero flakiness
+     */
+    @NonNull
+    public List<Flakiness> top(int limit) {
+        List<Flakiness> flaky = new ArrayList<>();
+        for (TestFlakiness test : tests.values()) {
+            Flakiness f = test.snapshot();
+            if (f.flakiness() > 0 && f.id() != null) {
+                flaky.add(f);
+            }
+        }
+        flaky.sort(Comparator.comparingDouble(Flakiness::flakiness)
+                .thenComparingInt(Flakiness::flips)
+                .reversed()
+                .thenComparing(Flakiness::id));
+        return flaky.size() > limit ? flaky.subList(0, Math.max(0, limit)) : flaky;
+    }
+
+    /**
+     * Adds the outcome of the cases of a completed build.
+     */
+    void record(int buildNumber, @NonNull TestResult result) {
+        for (PackageResult pr : result.getChildren()) {
+            for (ClassResult cr : pr.getChildren()) {
+                for (CaseResult c : cr.getChildren()) {
+                    if (!c.isSkipped()) {
+                        tests.computeIfAbsent(HistoryIndex.key(c.getId()), key -> new TestFlakiness())
+                                .add(buildNumber, c);
+                    }
+                }
+            }
+        }
+        tests.values().removeIf(test -> test.lastBuild < buildNumber - RETENTION);
+    }
+
+    void load(File file) throws IOException {
+        SidecarStore.read(file, MAGIC, VERSION, (in, version) -> {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long key = version >= 2 ? in.readLong() : 0;
+                TestFlakiness test = TestFlakiness.read(in, version);
+                tests.put(version >= 2 ? key : HistoryIndex.key(test.id), test);
+            }
+        });
+    }
+
+    synchronized void save(File file) throws IOException {
+        SidecarStore.write(file, MAGIC, VERSION, out -> {
+            Map<Long, TestFlakiness> snapshot = Map.copyOf(tests);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<Long, TestFlakiness> e : snapshot.entrySet()) {
+                out.writeLong(e.getKey());
+                e.getValue().write(out);
+            }
+        });
+    }
+
+    /**
+     * Flakiness of one test case.
+     *
+     * @param id the {@link hudson.tasks.test.TestObject#getId() id} of the case, null if it was never flaky
+     * @param lastBuild the last build the case ran in
+     * @param flakiness share of the recent runs that flipped the status of the case or needed reruns, from 0 to 1
+     * @param recentRuns number of runs the flakiness was computed over
+     * @param flips number of status flips in the recent runs
+     * @param runs number of runs since the case is tracked
+     * @param failures number of failed runs since the case is tracked
+     * @param flakyFailures number of flaky failures reported since the case is tracked
+     * @param rerunFailures number of rerun failures reported since the case is tracked
+     */
+    public record Flakiness(
+            String id,
+            String name,
+            int lastBuild,
+            double flakiness,
+            int recentRuns,
+            int flips,
+            long runs,
+            long failures,
+            long flakyFailures,
+            long rerunFailures) {}
+
+    /**
+     * Running record of one test case.
+     * The outcomes of its recent runs are kept as bits, the latest run in the lowest bit.
+     */
+    static final class TestFlakiness {
+        /**
+         * Id and full display name of the case, only kept from its first flaky run on.
+         */
+        private String id, name;
+        private int lastBuild;
+        private long runs, failures, flakyFailures, rerunFailures;
+        /**
+         * Recent runs that failed.
+         */
+        private long failed;
+        /**
+         * Recent runs whose status differed from the previous run.
+         */
+        private long flipped;
+        /**
+         * Recent runs that passed only after reruns, or had reruns fail.
+         */
+        private long rerun;
+
+        TestFlakiness() {}
+
+        synchronized void add(int buildNumber, CaseResult c) {
+            if (buildNumber <= lastBuild) {
+                return; // already recorded
+            }
+            add(buildNumber, c.isFailed(), c.getFlakyFailures().size(), c.getRerunFailures().size());
+            if (id == null && ((flipped | rerun) & 1) != 0) {
+                id = c.getId();
+                name = c.getFullDisplayName();
+            }
+        }
+
+        synchronized void add(int buildNumber, boolean isFailed, int flaky, int reruns) {
+            boolean flip = runs > 0 && (failed & 1) != (isFailed ? 1 : 0);
+            lastBuild = buildNumber;
+            runs++;
+            if (isFailed) {
+                failures++;
+            }
+            flakyFailures += flaky;
+            rerunFailures += reruns;
+            failed = (failed << 1) | (isFailed ? 1 : 0);
+            flipped = (flipped << 1) | (flip ? 1 : 0);
+            rerun = (rerun << 1) | (flaky > 0 || reruns > 0 ? 1 : 0);
+        }
+
+        synchronized Flakiness snapshot() {
+            int recentRuns = (int) Math.min(runs, WINDOW);
+            long mask = WINDOW == 64 ? -1L : (1L << WINDOW) - 1;
+            int flips = Long.bitCount(flipped & mask);
+            double flakiness =
+                    recentRuns == 0 ? 0 : (double) Long.bitCount((flipped | rerun) & mask) / recentRuns;
+            return new Flakiness(
+                    id,
+                    name,
+                    lastBuild,
+                    flakiness,
+                    recentRuns,
+                    flips,
+                    runs,
+                    failures,
+                    flakyFailures,
+                    rerunFailures);
+        }
+
+        synchronized void write(DataOutputStream out) throws IOException {
+            out.writeBoolean(id != null);
+            if (id != null) {
+                out.writeUTF(id);
+                out.writeUTF(name);
+            }
+            out.writeInt(lastBuild);
+            out.writeLong(runs);
+            out.writeLong(failures);
+            out.writeLong(flakyFailures);
+            out.writeLong(rerunFailures);
+            out.writeLong(failed);
+            out.writeLong(flipped);
+            out.writeLong(rerun);
+        }
+
+        static TestFlakiness read(DataInputStream in, int version) throws IOException {
+            TestFlakiness test = new TestFlakiness();
+            if (version < 2 || in.readBoolean()) {
+                test.id = in.readUTF();
+                test.name = in.readUTF();
+            }
+            test.lastBuild = in.readInt();
+            test.runs = in.readLong();
+            test.failures = in.readLong();
+            test.flakyFailures = in.readLong();
+            test.rerunFailures = in.readLong();
+            test.failed = in.readLong();
+            test.flipped = in.readLong();
+            test.rerun = in.readLong();
+            return test;
+        }
+    }
+
+    /**
+     * Records the outcome of builds as they complete, and writes it a little later.
+     */
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            if (DISABLED) {
+                return;
+            }
+            TestResultAction action = run.getAction(TestResultAction.class);
+            if (action == null) {
+                return;
+            }
+            TestResult result = action.getResult();
+            if (result.getPluggableStorage() != null) {
+                return;
+            }
+            Job<?, ?> job = run.getParent();
+            of(job).record(run.getNumber(), result);
+            store.saveLater(job);
+        }
+    }
+}
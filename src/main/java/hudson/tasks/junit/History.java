@@ -23,28 +23,40 @@
  */
 package hudson.tasks.junit;
 
-import com.pivovarit.collectors.ParallelCollectors;
 import edu.hm.hafner.echarts.ChartModelConfiguration;
 import edu.hm.hafner.echarts.JacksonFacade;
 import edu.hm.hafner.echarts.LinesChartModel;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Job;
 import hudson.model.Run;
 import hudson.tasks.test.TestObject;
-import hudson.tasks.test.TestObjectIterable;
 import hudson.tasks.test.TestResultTrendChart;
-import hudson.util.RunList;
+import hudson.tasks.test.TestResultTrendStore;
+import hudson.tasks.test.TrendChartCache;
 import io.jenkins.plugins.junit.storage.TestResultImpl;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.ref.SoftReference;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
 import jenkins.util.SystemProperties;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerResponse2;
 import org.kohsuke.stapler.bind.JavaScriptMethod;
 import tools.jackson.databind.ObjectMapper;
 import tools.jackson.databind.node.ArrayNode;
@@ -57,6 +69,7 @@ import tools.jackson.databind.node.ObjectNode;
  */
 @Restricted(NoExternalUse.class)
 public class History {
+    private static final Logger LOGGER = Logger.getLogger(History.class.getName());
     private static final JacksonFacade JACKSON_FACADE = new JacksonFacade();
     private final TestObject testObject;
 
@@ -79,8 +92,14 @@ public class History {
     @JavaScriptMethod
     @SuppressWarnings("unused") // Called by jelly view
     public String getTestResultTrend(int start, int end, String configuration) {
-        return JACKSON_FACADE.toJson(
+        Supplier<String> compute = () -> JACKSON_FACADE.toJson(
                 createTestResultTrend(start, end, ChartModelConfiguration.fromJson(configuration)));
+        Run<?, ?> run = testObject.getRun();
+        if (run == null || run.isBuilding()) { // results of running builds may still change
+            return compute.get();
+        }
+        String chart = "history\0" + testObject.getId() + '\0' + run.getNumber() + '\0' + start + '\0' + end;
+        return TrendChartCache.get(run.getParent(), chart, configuration, compute);
     }
 
     private LinesChartModel createTestResultTrend(int start, int end, ChartModelConfiguration chartModelConfiguration) {
@@ -89,7 +108,7 @@ public class History {
             return new TestResultTrendChart().create(pluggableStorage.getTrendTestResultSummary());
         }
         return new TestResultTrendChart()
-                .createFromTestObject(createBuildHistory(testObject, start, end), chartModelConfiguration);
+                .createFromHistory(retrieveHistorySummary(start, end).getHistorySummaries(), chartModelConfiguration);
     }
 
     private ObjectNode computeDurationTrendJson(List<HistoryTestResultSummary> history) {
@@ -162,6 +181,16 @@ public class History {
         yAxis.put("name", "Duration (" + durationStr.toLowerCase() + ")");
         durationSeries.put("name", durationStr);
 
+        DurationStats.Summary stats = DurationStats.of(testObject);
+        if (stats != null && stats.count() >= DurationStats.MIN_SAMPLES) {
+            ObjectNode durationP95Mark = MAPPER.createObjectNode();
+            durationP95Mark.put("name", "95th percentile");
+            durationP95Mark.put("yAxis", Math.round(mul * stats.p95() * roundMul) / roundMul);
+            durationP95Mark.set("label", hideLabel);
+            durationP95Mark.set("lineStyle", dashLineStyle);
+            durationMarkData.add(durationP95Mark);
+        }
+
         int index = 0;
         ObjectNode skippedStyle = MAPPER.createObjectNode();
         skippedStyle.put("color", "gray");
@@ -196,7 +225,14 @@ public class History {
             ++index;
         }
 
-        if (EXTRA_GRAPH_MATH_ENABLED) {
+        if (EXTRA_GRAPH_MATH_ENABLED && stats != null && stats.count() >= 3 && history.size() >= 3) {
+            // the trend over all builds so far, kept up to date as they complete
+            double[] trend = new double[history.size()];
+            for (int i = 0; i < trend.length; ++i) {
+                trend[i] = mul * stats.trendAt(history.get(i).getRun().getNumber());
+            }
+            addTrendSeries(series, trend, "Trend of " + durationStr, "rgba(0, 120, 255, 0.5)", 0, 0, roundMul);
+        } else if (EXTRA_GRAPH_MATH_ENABLED) {
             createLinearTrend(
                     series,
                     history,
@@ -240,7 +276,21 @@ public class History {
         double[] cs = SimpleLinearRegression.coefficients(lrX, lrY);
         double intercept = cs[0];
         double slope = cs[1];
+        double[] trend = new double[history.size()];
+        for (int index = 0; index < trend.length; ++index) {
+            trend[index] = intercept + index * slope;
+        }
+        addTrendSeries(series, trend, title, color, xAxisIndex, yAxisIndex, roundMul);
+    }
 
+    private void addTrendSeries(
+            ArrayNode series,
+            double[] trend,
+            String title,
+            String color,
+            int xAxisIndex,
+            int yAxisIndex,
+            double roundMul) {
         ObjectNode lrSeries = MAPPER.createObjectNode();
         series.add(lrSeries);
         lrSeries.put("name", title);
@@ -262,9 +312,9 @@ public class History {
         if (roundMul < 10.0) {
             roundMul = 10.0;
         }
-        for (int index = 0; index < history.size(); ++index) {
+        for (double value : trend) {
             // Use float to reduce JSON size.
-            lrData.add((float) (Math.round((intercept + index * slope) * roundMul) / roundMul));
+            lrData.add((float) (Math.round(value * roundMul) / roundMul));
         }
     }
 
@@ -519,11 +569,13 @@ public class History {
     private ObjectNode computeTrendJsons(HistoryParseResult parseResult) {
         List<HistoryTestResultSummary> history = parseResult.historySummaries;
         Collections.reverse(history);
+        // the distribution counts every build, the other charts only need enough points to keep their shape
+        List<HistoryTestResultSummary> points = downsample(history, MAX_CHART_POINTS);
         ObjectNode root = MAPPER.createObjectNode();
-        root.set("duration", computeDurationTrendJson(history));
-        root.set("result", computeResultTrendJson(history));
+        root.set("duration", computeDurationTrendJson(points));
+        root.set("result", computeResultTrendJson(points));
         root.set("distribution", computeDistributionJson(history));
-        root.set("buildMap", computeBuildMapJson(history));
+        root.set("buildMap", computeBuildMapJson(points));
         ObjectNode saveAsImage = MAPPER.createObjectNode();
         if (!history.isEmpty()) {
             saveAsImage.put(
@@ -540,16 +592,37 @@ public class History {
         status.put("buildsRequested", parseResult.buildsRequested);
         status.put("buildsParsed", parseResult.buildsParsed);
         status.put("buildsWithTestResult", parseResult.buildsWithTestResult);
+        status.put("cursor", parseResult.cursor);
         root.set("status", status);
         return root;
     }
 
-    private TestObjectIterable createBuildHistory(final TestObject testObject, int start, int end) {
-        HistoryTableResult r = retrieveHistorySummary(start, end);
-        if (!r.getHistorySummaries().isEmpty()) {
-            return new TestObjectIterable(testObject, r.getHistorySummaries());
+    /**
+     * Number of builds above which the history charts show a sample of them, chosen by
+     * {@link LargestTriangleThreeBuckets} so that spikes in duration and failing builds stay visible.
+     */
+    static int MAX_CHART_POINTS = SystemProperties.getInteger(History.class.getName() + ".MAX_CHART_POINTS", 500);
+
+    static List<HistoryTestResultSummary> downsample(List<HistoryTestResultSummary> history, int threshold) {
+        if (threshold < 3 || history.size() <= threshold) {
+            return history;
+        }
+        int n = history.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        boolean[] failed = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            HistoryTestResultSummary h = history.get(i);
+            xs[i] = h.getRun().getNumber();
+            ys[i] = h.getDuration();
+            failed[i] = h.getFailCount() > 0;
         }
-        return null;
+        int[] selected = LargestTriangleThreeBuckets.select(xs, ys, failed, threshold);
+        List<HistoryTestResultSummary> points = new ArrayList<>(selected.length);
+        for (int i : selected) {
+            points.add(history.get(i));
+        }
+        return points;
     }
 
     private TestResultImpl getPluggableStorage() {
@@ -607,6 +680,10 @@ public class History {
         int end;
         int interval;
         boolean hasTimedOut;
+        /**
+         * Index of the first build of the window that was not read, {@link #end} when all were.
+         */
+        int cursor;
 
         public HistoryParseResult(
                 List<HistoryTestResultSummary> historySummaries,
@@ -625,6 +702,7 @@ public class History {
             this.start = start;
             this.end = end;
             this.interval = interval;
+            this.cursor = end;
         }
 
         public HistoryParseResult(
@@ -651,7 +729,6 @@ public class History {
                 return result;
             }
             TestResultImpl pluggableStorage = getPluggableStorage();
-            HistoryParseResult parseResult;
             if (pluggableStorage != null) {
                 int offset = start;
                 if (start > 1000 || start < 0) {
@@ -659,75 +736,303 @@ public class History {
                 }
                 List<HistoryTestResultSummary> historySummary = pluggableStorage.getHistorySummary(offset);
 
-                parseResult = new HistoryParseResult(historySummary, end - start + 1, start, end);
+                HistoryParseResult parseResult = new HistoryParseResult(historySummary, end - start + 1, start, end);
+                result = new HistoryTableResult(parseResult, computeTrendJsons(parseResult));
             } else {
-                parseResult = getHistoryFromFileStorage(start, end, interval);
+                Job<?, ?> job = testObject.getRun().getParent();
+                HistoryCache.TestHistory cached = HistoryCache.get(job, testObject.getId());
+                Run<?, ?> newest = job.getLastBuild();
+                HistoryCache.Window window =
+                        new HistoryCache.Window(start, end, interval, newest == null ? 0 : newest.getNumber());
+                result = cached == null ? null : cached.getWindow(window);
+                if (result == null) {
+                    HistoryParseResult parseResult = getHistoryFromFileStorage(start, end, interval, cached);
+                    result = new HistoryTableResult(parseResult, computeTrendJsons(parseResult));
+                    // a window ending at a build in progress would not be recomputed once it completes
+                    if (cached != null && !parseResult.hasTimedOut && (newest == null || !newest.isBuilding())) {
+                        cached.putWindow(window, result);
+                    }
+                }
             }
-            result = new HistoryTableResult(parseResult, computeTrendJsons(parseResult));
             cachedResult = new SoftReference<>(result);
             return result;
         }
     }
 
-    static int parallelism = Math.min(Runtime.getRuntime().availableProcessors(), Math.max(4, (int)
-            (Runtime.getRuntime().availableProcessors() * 0.75 * 0.75)));
-    static ExecutorService executor =
-            Executors.newFixedThreadPool(Math.max(4, (int) (Runtime.getRuntime().availableProcessors() * 0.75 * 0.75)));
     static long MAX_TIME_ELAPSED_RETRIEVING_HISTORY_NS =
             SystemProperties.getLong(History.class.getName() + ".MAX_TIME_ELAPSED_RETRIEVING_HISTORY_MS", 15000L)
                     * 1000000L;
+    /**
+     * Threads of the {@link HistoryExecutor} one request may take at a time, by default half of them.
+     */
     static int MAX_THREADS_RETRIEVING_HISTORY =
             SystemProperties.getInteger(History.class.getName() + ".MAX_THREADS_RETRIEVING_HISTORY", -1);
 
-    private HistoryParseResult getHistoryFromFileStorage(int start, int end, int interval) {
-        TestObject testObject = getTestObject();
-        RunList<?> builds = testObject.getRun().getParent().getBuilds();
+    /**
+     * Number of builds read in parallel before checking the time budget and handing the summaries on.
+     */
+    static int BATCH_SIZE =
+            SystemProperties.getInteger(History.class.getName() + ".BATCH_SIZE", Math.max(8, 2 * HistoryExecutor.THREADS));
+
+    private HistoryParseResult getHistoryFromFileStorage(
+            int start, int end, int interval, @CheckForNull HistoryCache.TestHistory cached) {
         final int requestedCount = end - start;
-        final AtomicBoolean hasTimedOut = new AtomicBoolean(false);
         final AtomicInteger parsedCount = new AtomicInteger(0);
-        final long startedNs = java.lang.System.nanoTime();
-        final AtomicInteger orderedCount = new AtomicInteger(0);
-        List<HistoryTestResultSummary> history = builds.stream()
-                .skip(start)
-                .limit(requestedCount)
-                .filter(build -> {
-                    if (interval == 1) {
-                        return true;
-                    }
-                    int n = orderedCount.getAndIncrement();
-                    return (n % interval) == 0;
-                })
-                .collect(ParallelCollectors.parallel(
-                        build -> {
-                            // Do not navigate too far or for too long, we need to finish the request this year and have
-                            // to think about RAM
-                            if ((java.lang.System.nanoTime() - startedNs) > MAX_TIME_ELAPSED_RETRIEVING_HISTORY_NS) {
-                                hasTimedOut.set(true);
-                                return null;
-                            }
-                            parsedCount.incrementAndGet();
-                            hudson.tasks.test.TestResult resultInRun = testObject.getResultInRun(build);
-                            if (resultInRun == null) {
-                                return null;
-                            }
-
-                            return new HistoryTestResultSummary(
-                                    build,
-                                    resultInRun.getDuration(),
-                                    resultInRun.getFailCount(),
-                                    resultInRun.getSkipCount(),
-                                    resultInRun.getPassCount(),
-                                    resultInRun.getDescription());
-                        },
-                        executor,
+        List<HistoryTestResultSummary> history = new ArrayList<>();
+        int cursor = readHistory(
+                start,
+                Math.max(0, start),
+                end,
+                interval,
+                java.lang.System.nanoTime() + MAX_TIME_ELAPSED_RETRIEVING_HISTORY_NS,
+                cached,
+                parsedCount,
+                history::addAll);
+        HistoryParseResult result = new HistoryParseResult(
+                history, requestedCount, parsedCount.get(), history.size(), cursor < end, start, end, interval);
+        result.cursor = cursor;
+        return result;
+    }
+
+    /**
+     * Receives the summaries of one batch of builds, in build order.
+     */
+    private interface BatchConsumer<E extends Exception> {
+        void accept(List<HistoryTestResultSummary> batch) throws E;
+    }
+
+    /**
+     * Reads the history of the window of builds starting at {@code start}, beginning at {@code from},
+     * one batch at a time so that it can stop between batches once the deadline has passed or the consumer fails,
+     * or when the {@link HistoryExecutor} is too busy to take a batch.
+     *
+     * @param from index of the first build to read, between {@code start} and {@code end}, and not negative
+     * @param deadlineNs {@link java.lang.System#nanoTime()} after which no further batch is started;
+     *                   at least one batch is always read
+     * @param cached builds already summarized are taken from there, and the others added to it
+     * @return index of the first build that has not been read, to continue from; {@code end} once all were read
+     */
+    private <E extends Exception> int readHistory(
+            int start,
+            int from,
+            int end,
+            int interval,
+            long deadlineNs,
+            @CheckForNull HistoryCache.TestHistory cached,
+            AtomicInteger parsedCount,
+            BatchConsumer<E> consumer)
+            throws E {
+        TestObject testObject = getTestObject();
+        final HistoryIndex index = HistoryIndex.isIndexed(testObject)
+                ? HistoryIndex.of(testObject.getRun().getParent())
+                : null;
+        // the counts and duration of whole results are kept in the trend store, without reading any file per build
+        final TestResultTrendStore trend = testObject instanceof TestResult && TestResultTrendStore.isEnabled()
+                ? TestResultTrendStore.ofIfReady(testObject.getRun().getParent())
+                : null;
+        final String id = testObject.getId();
+        Iterator<? extends Run<?, ?>> builds = testObject.getRun().getParent().getBuilds().stream()
+                .skip(from)
+                .limit(Math.max(0, end - from))
+                .iterator();
+        HistoryExecutor.Request request = HistoryExecutor.get()
+                .newRequest(
                         MAX_THREADS_RETRIEVING_HISTORY < 1
-                                ? parallelism
-                                : Math.min(parallelism, MAX_THREADS_RETRIEVING_HISTORY)))
-                .join()
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
-        return new HistoryParseResult(
-                history, requestedCount, parsedCount.get(), history.size(), hasTimedOut.get(), start, end, interval);
+                                ? HistoryExecutor.THREADS / 2
+                                : MAX_THREADS_RETRIEVING_HISTORY);
+        int position = from;
+        try {
+            while (builds.hasNext()) {
+                // Do not navigate too far or for too long, we need to finish the request this year and have
+                // to think about RAM
+                if (position > from && java.lang.System.nanoTime() - deadlineNs > 0) {
+                    return position;
+                }
+                int batchStart = position;
+                List<Future<HistoryTestResultSummary>> batch = new ArrayList<>();
+                while (batch.size() < BATCH_SIZE && builds.hasNext()) {
+                    Run<?, ?> build = builds.next();
+                    if ((position++ - start) % interval == 0) {
+                        HistoryCache.Entry entry = cached == null ? null : cached.get(build);
+                        if (entry != null) {
+                            batch.add(CompletableFuture.completedFuture(entry.toSummary(build)));
+                        } else {
+                            batch.add(request.submit(() -> {
+                                HistoryTestResultSummary summary =
+                                        summarize(build, testObject, trend, index, id);
+                                if (cached != null) {
+                                    cached.put(build, HistoryCache.Entry.of(summary));
+                                }
+                                return summary;
+                            }));
+                        }
+                    }
+                }
+                List<HistoryTestResultSummary> summaries = new ArrayList<>(batch.size());
+                for (Future<HistoryTestResultSummary> f : batch) {
+                    try {
+                        HistoryTestResultSummary summary = f.get();
+                        if (summary != null) {
+                            summaries.add(summary);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return batchStart;
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof RejectedExecutionException) {
+                            LOGGER.fine(() -> "Too busy to read the history of " + testObject + " from " + batchStart);
+                            return batchStart;
+                        } else if (cause instanceof RuntimeException re) {
+                            throw re;
+                        } else if (cause instanceof Error err) {
+                            throw err;
+                        }
+                        throw new IllegalStateException(cause);
+                    }
+                }
+                parsedCount.addAndGet(batch.size());
+                consumer.accept(summaries);
+            }
+            return end;
+        } finally {
+            // nothing left to do when all went well, otherwise stop what was started for this request
+            request.cancel();
+        }
+    }
+
+    @CheckForNull
+    private static HistoryTestResultSummary summarize(
+            Run<?, ?> build,
+            TestObject testObject,
+            @CheckForNull TestResultTrendStore trend,
+            @CheckForNull HistoryIndex index,
+            String id) {
+        TestResultTrendStore.Point point = trend == null ? null : trend.getPoint(build.getNumber());
+        if (point != null && point.duration() >= 0) {
+            TestResultAction action = build.getAction(TestResultAction.class);
+            return new HistoryTestResultSummary(
+                    build,
+                    point.duration(),
+                    point.failCount(),
+                    point.skipCount(),
+                    point.passCount(),
+                    action == null ? null : action.lookUpDescription(id));
+        }
+        if (index != null) {
+            try {
+                HistoryIndex.Row row = index.find(build.getNumber(), id);
+                if (row == null) {
+                    return null;
+                }
+                TestResultAction action = build.getAction(TestResultAction.class);
+                return new HistoryTestResultSummary(
+                        build,
+                        row.duration(),
+                        row.failCount(),
+                        row.skipCount(),
+                        row.passCount(),
+                        action == null ? null : action.lookUpDescription(id));
+            } catch (NoSuchFileException e) {
+                // not indexed yet, load it below
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read test history index of " + build, e);
+            }
+        }
+        hudson.tasks.test.TestResult resultInRun = testObject.getResultInRun(build);
+        if (resultInRun == null) {
+            return null;
+        }
+        if (index != null) {
+            index(index, build);
+        }
+        return new HistoryTestResultSummary(
+                build,
+                resultInRun.getDuration(),
+                resultInRun.getFailCount(),
+                resultInRun.getSkipCount(),
+                resultInRun.getPassCount(),
+                resultInRun.getDescription());
+    }
+
+    /**
+     * Streams the history of the builds a page could not show within its time budget, continuing at {@code cursor}.
+     * Each line is a JSON object for one build, flushed batch by batch as builds are read.
+     * The last line holds the {@code cursor} to continue from, which is {@code end} when done.
+     * Reading stops as soon as the client has gone away.
+     */
+    public void doRows(
+            StaplerResponse2 rsp,
+            @QueryParameter int start,
+            @QueryParameter int cursor,
+            @QueryParameter int end,
+            @QueryParameter int interval)
+            throws IOException {
+        rsp.setContentType("application/x-ndjson;charset=UTF-8");
+        OutputStream out = rsp.getOutputStream();
+        int from = Math.max(0, Math.max(start, cursor));
+        int next = end;
+        if (getPluggableStorage() == null && from < end) {
+            next = readHistory(
+                    start,
+                    from,
+                    end,
+                    Math.max(1, interval),
+                    java.lang.System.nanoTime() + MAX_TIME_ELAPSED_RETRIEVING_HISTORY_NS,
+                    HistoryCache.get(testObject.getRun().getParent(), testObject.getId()),
+                    new AtomicInteger(),
+                    batch -> {
+                        for (HistoryTestResultSummary h : batch) {
+                            writeLine(out, toJson(h));
+                        }
+                        out.flush(); // fails once the client has disconnected, which stops reading
+                    });
+        }
+        ObjectNode last = MAPPER.createObjectNode();
+        last.put("cursor", next);
+        writeLine(out, last);
+        out.flush();
+    }
+
+    private static ObjectNode toJson(HistoryTestResultSummary h) throws IOException {
+        ObjectNode row = MAPPER.createObjectNode();
+        row.put("number", h.getRun().getNumber());
+        row.put("fullDisplayName", h.getFullDisplayName());
+        row.put("url", h.getUrl());
+        row.put("duration", h.getDuration());
+        row.put("durationString", h.getDurationString());
+        row.put("failCount", h.getFailCount());
+        row.put("skipCount", h.getSkipCount());
+        row.put("totalCount", h.getTotalCount());
+        row.put("badness", h.getBadness());
+        if (h.getDescription() != null) {
+            row.put("description", Jenkins.get().getMarkupFormatter().translate(h.getDescription()));
+        }
+        return row;
+    }
+
+    private static void writeLine(OutputStream out, ObjectNode json) throws IOException {
+        out.write(MAPPER.writeValueAsBytes(json));
+        out.write('\n');
+    }
+
+    /**
+     * Indexes a build whose result had to be loaded anyway, so the next history request does not load it again.
+     */
+    private static void index(HistoryIndex index, Run<?, ?> build) {
+        TestResultAction action = build.getAction(TestResultAction.class);
+        if (action == null || build.isBuilding()) {
+            return;
+        }
+        TestResult result = action.getResult();
+        if (result.getPluggableStorage() != null) {
+            return;
+        }
+        try {
+            index.write(build, result);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to index test results of " + build, e);
+        }
     }
 
     @SuppressWarnings("unused") // Called by jelly view
@@ -742,6 +1047,84 @@ public class History {
         }
     }
 
+    // https://skemman.is/handle/1946/15343 (Sveinn Steinarsson, Downsampling Time Series for Visual Representation)
+    static class LargestTriangleThreeBuckets {
+        /**
+         * Chooses about {@code threshold} of the given points that keep the shape of the line through all of them.
+         * The first and last points are kept; the others are split into buckets, and from each bucket the point
+         * forming the largest triangle with the point chosen before and the average of the next bucket is kept.
+         * A bucket with points to {@code keep} also keeps the one of them with the largest triangle,
+         * so there may be up to twice as many points as asked for.
+         *
+         * @param xs increasing x values of the points
+         * @return indices of the chosen points, in increasing order
+         */
+        static int[] select(double[] xs, double[] ys, boolean[] keep, int threshold) {
+            int n = xs.length;
+            if (xs.length != ys.length || xs.length != keep.length) {
+                throw new IllegalArgumentException("Array lengths do not match: " + xs.length + ", " + ys.length
+                        + " and " + keep.length);
+            }
+            if (threshold < 3 || n <= threshold) {
+                int[] all = new int[n];
+                for (int i = 0; i < n; i++) {
+                    all[i] = i;
+                }
+                return all;
+            }
+            int[] selected = new int[2 * threshold];
+            int count = 0;
+            selected[count++] = 0;
+            double every = (double) (n - 2) / (threshold - 2);
+            int a = 0;
+            for (int bucket = 0; bucket < threshold - 2; bucket++) {
+                int nextStart = (int) Math.floor((bucket + 1) * every) + 1;
+                int nextEnd = Math.min((int) Math.floor((bucket + 2) * every) + 1, n);
+                double avgX = 0, avgY = 0;
+                if (nextStart >= nextEnd) {
+                    avgX = xs[n - 1];
+                    avgY = ys[n - 1];
+                } else {
+                    for (int i = nextStart; i < nextEnd; i++) {
+                        avgX += xs[i];
+                        avgY += ys[i];
+                    }
+                    avgX /= nextEnd - nextStart;
+                    avgY /= nextEnd - nextStart;
+                }
+
+                int start = (int) Math.floor(bucket * every) + 1;
+                int end = Math.min((int) Math.floor((bucket + 1) * every) + 1, n - 1);
+                int best = start;
+                double bestArea = -1;
+                int bestKept = -1;
+                double bestKeptArea = -1;
+                for (int i = start; i < end; i++) {
+                    // twice the area, which does not change which one is the largest
+                    double area = Math.abs((xs[a] - avgX) * (ys[i] - ys[a]) - (xs[a] - xs[i]) * (avgY - ys[a]));
+                    if (area > bestArea) {
+                        bestArea = area;
+                        best = i;
+                    }
+                    if (keep[i] && area > bestKeptArea) {
+                        bestKeptArea = area;
+                        bestKept = i;
+                    }
+                }
+                if (bestKept >= 0 && bestKept < best) {
+                    selected[count++] = bestKept;
+                }
+                selected[count++] = best;
+                if (bestKept > best) {
+                    selected[count++] = bestKept;
+                }
+                a = best;
+            }
+            selected[count++] = n - 1;
+            return Arrays.copyOf(selected, count);
+        }
+    }
+
     // https://en.wikipedia.org/wiki/Simple_linear_regression
     static class SimpleLinearRegression {
         static double[] coefficients(double[] xs, double[] ys) {
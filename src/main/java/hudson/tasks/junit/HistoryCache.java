@@ -0,0 +1,173 @@
+package hudson.tasks.junit;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * History of test objects shared by all requests, so that refreshing or paging through a history view
+ * does not read every build again.
+ *
+ * <p>
+ * For each test of a job, it keeps the summary of every completed build read so far, and the last few windows
+ * of builds computed from them. A window is only reused as long as the job has no newer build; otherwise it is
+ * recomputed from the summaries, which only leaves the new builds to be read.
+ */
+@Restricted(NoExternalUse.class)
+public final class HistoryCache {
+
+    static boolean ENABLED = SystemProperties.getBoolean(HistoryCache.class.getName() + ".ENABLED", true);
+    /**
+     * Number of tests whose history is kept, least recently used ones are dropped first.
+     */
+    static int MAX_TESTS = SystemProperties.getInteger(HistoryCache.class.getName() + ".MAX_TESTS", 1000);
+
+    private static final int MAX_WINDOWS_PER_TEST = 4;
+
+    private static final Map<String, SoftReference<TestHistory>> tests =
+            Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SoftReference<TestHistory>> eldest) {
+                    return size() > MAX_TESTS;
+                }
+            });
+
+    private HistoryCache() {}
+
+    /**
+     * Summary of a test object in one build, without the build itself so that caching it does not keep builds
+     * in memory.
+     */
+    record Entry(float duration, int failCount, int skipCount, int passCount, String description) {
+        /**
+         * The build has no result for the test.
+         */
+        static final Entry ABSENT = new Entry(0, 0, 0, 0, null);
+
+        static Entry of(@CheckForNull HistoryTestResultSummary summary) {
+            return summary == null
+                    ? ABSENT
+                    : new Entry(
+                            summary.getDuration(),
+                            summary.getFailCount(),
+                            summary.getSkipCount(),
+                            summary.getPassCount(),
+                            summary.getDescription());
+        }
+
+        @CheckForNull
+        HistoryTestResultSummary toSummary(Run<?, ?> run) {
+            return this == ABSENT
+                    ? null
+                    : new HistoryTestResultSummary(run, duration, failCount, skipCount, passCount, description);
+        }
+    }
+
+    /**
+     * Identifies a window of builds of a history view, as of the given newest build of the job.
+     */
+    record Window(int start, int end, int interval, int newestBuild) {}
+
+    /**
+     * What is known about the history of one test.
+     */
+    static final class TestHistory {
+        private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+        private final Map<Window, History.HistoryTableResult> windows =
+                Collections.synchronizedMap(new LinkedHashMap<>(8, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Window, History.HistoryTableResult> eldest) {
+                        return size() > MAX_WINDOWS_PER_TEST;
+                    }
+                });
+
+        @CheckForNull
+        Entry get(Run<?, ?> run) {
+            return entries.get(run.getNumber());
+        }
+
+        void put(Run<?, ?> run, Entry entry) {
+            if (!run.isBuilding()) { // results of running builds may still change
+                entries.put(run.getNumber(), entry);
+            }
+        }
+
+        @CheckForNull
+        History.HistoryTableResult getWindow(Window window) {
+            return windows.get(window);
+        }
+
+        void putWindow(Window window, History.HistoryTableResult result) {
+            windows.put(window, result);
+        }
+    }
+
+    /**
+     * Gets the cached history of a test, creating it if needed.
+     *
+     * @return null if caching is disabled
+     */
+    @CheckForNull
+    static TestHistory get(@NonNull Job<?, ?> job, @NonNull String id) {
+        if (!ENABLED) {
+            return null;
+        }
+        String key = key(job, id);
+        synchronized (tests) {
+            SoftReference<TestHistory> ref = tests.get(key);
+            TestHistory test = ref == null ? null : ref.get();
+            if (test == null) {
+                test = new TestHistory();
+                tests.put(key, new SoftReference<>(test));
+            }
+            return test;
+        }
+    }
+
+    /**
+     * Forgets what is known about a build, for when it was deleted or its test descriptions changed.
+     */
+    public static void invalidate(@NonNull Run<?, ?> run) {
+        String prefix = key(run.getParent(), "");
+        synchronized (tests) {
+            for (Map.Entry<String, SoftReference<TestHistory>> e : tests.entrySet()) {
+                TestHistory test = e.getValue().get();
+                if (test != null && e.getKey().startsWith(prefix)) {
+                    test.entries.remove(run.getNumber());
+                    test.windows.clear();
+                }
+            }
+        }
+    }
+
+    static void clear() {
+        tests.clear();
+    }
+
+    /**
+     * Includes the identity of the job as well as its name,
+     * since a job that was deleted and created again under the same name numbers its builds anew.
+     */
+    private static String key(Job<?, ?> job, String id) {
+        return job.getFullName() + '\0' + System.identityHashCode(job) + '\0' + id;
+    }
+
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            invalidate(run);
+        }
+    }
+}
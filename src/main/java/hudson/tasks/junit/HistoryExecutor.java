@@ -0,0 +1,243 @@
+package hudson.tasks.junit;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Runs the work of {@link History} requests, shared by all of them.
+ *
+ * <p>
+ * At most {@link #THREADS} tasks run at once and at most {@link #QUEUE_SIZE} more wait; further tasks are rejected.
+ * Each request goes through its own {@link Request}, which keeps no more than a few of its tasks in the executor
+ * so that one request for many builds cannot hold up everybody else's, and which can be cancelled when the request
+ * is abandoned.
+ *
+ * <p>
+ * Its load is available over JMX as {@code hudson.tasks.junit:type=HistoryExecutor}.
+ */
+@Restricted(NoExternalUse.class)
+public final class HistoryExecutor implements HistoryExecutorMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(HistoryExecutor.class.getName());
+
+    static int THREADS = SystemProperties.getInteger(
+            HistoryExecutor.class.getName() + ".THREADS",
+            Math.max(4, (int) (Runtime.getRuntime().availableProcessors() * 0.75 * 0.75)));
+    static int QUEUE_SIZE = SystemProperties.getInteger(HistoryExecutor.class.getName() + ".QUEUE_SIZE", 1000);
+    /**
+     * Runs each task on its own virtual thread, with {@link #THREADS} still bounding how many run at once.
+     */
+    static boolean VIRTUAL_THREADS =
+            SystemProperties.getBoolean(HistoryExecutor.class.getName() + ".VIRTUAL_THREADS", false);
+
+    private static final HistoryExecutor INSTANCE = new HistoryExecutor(THREADS, QUEUE_SIZE, VIRTUAL_THREADS);
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(INSTANCE, new ObjectName("hudson.tasks.junit:type=HistoryExecutor"));
+        } catch (JMException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Could not register the history executor with JMX", e);
+        }
+    }
+
+    public static HistoryExecutor get() {
+        return INSTANCE;
+    }
+
+    private final ExecutorService executor;
+    /**
+     * Bounds the tasks running at once with virtual threads, where the executor itself does not.
+     */
+    private final Semaphore running;
+    /**
+     * Bounds the tasks running or waiting.
+     */
+    private final Semaphore admitted;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    HistoryExecutor(int threads, int queueSize, boolean virtualThreads) {
+        this.admitted = new Semaphore(threads + queueSize);
+        if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("junit-history-", 0).factory());
+            this.running = new Semaphore(threads);
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    60,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "junit-history"));
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+            this.running = null;
+        }
+    }
+
+    /**
+     * Starts a request, whose tasks will take no more than {@code maxConcurrency} threads at a time.
+     */
+    public Request newRequest(int maxConcurrency) {
+        return new Request(Math.max(1, maxConcurrency));
+    }
+
+    private void execute(Task<?> task, Runnable onDone) {
+        if (!admitted.tryAcquire()) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Too many test history tasks waiting");
+        }
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                queued.decrementAndGet();
+                try {
+                    if (running != null) {
+                        running.acquireUninterruptibly();
+                    }
+                    active.incrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        active.decrementAndGet();
+                        if (running != null) {
+                            running.release();
+                        }
+                    }
+                } finally {
+                    completed.incrementAndGet();
+                    admitted.release();
+                    onDone.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            admitted.release();
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queued.get();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return completed.get();
+    }
+
+    @Override
+    public long getRejectedTaskCount() {
+        return rejected.get();
+    }
+
+    private static final class Task<T> extends FutureTask<T> {
+        Task(Callable<T> callable) {
+            super(callable);
+        }
+
+        void reject(RejectedExecutionException e) {
+            setException(e);
+        }
+    }
+
+    /**
+     * The tasks of one history request.
+     * Tasks beyond its concurrency wait here rather than in the shared queue.
+     */
+    public final class Request {
+        private final int maxConcurrency;
+        private final Deque<Task<?>> pending = new ArrayDeque<>();
+        private final Set<Task<?>> started = new HashSet<>();
+        private boolean cancelled;
+
+        private Request(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        /**
+         * Submits a task of this request.
+         * If the executor is too busy to take it, the returned future fails with a {@link RejectedExecutionException}.
+         */
+        public synchronized <T> Future<T> submit(Callable<T> callable) {
+            Task<T> task = new Task<>(callable);
+            if (cancelled) {
+                task.cancel(false);
+            } else {
+                pending.add(task);
+                dispatch();
+            }
+            return task;
+        }
+
+        private synchronized void dispatch() {
+            while (started.size() < maxConcurrency && !pending.isEmpty()) {
+                Task<?> task = pending.poll();
+                if (task.isDone()) {
+                    continue;
+                }
+                started.add(task);
+                try {
+                    execute(task, () -> finished(task));
+                } catch (RejectedExecutionException e) {
+                    started.remove(task);
+                    task.reject(e);
+                }
+            }
+        }
+
+        private synchronized void finished(Task<?> task) {
+            started.remove(task);
+            dispatch();
+        }
+
+        /**
+         * Cancels the tasks of this request that have not started.
+         * Those already running are left to complete without interruption, as they may be reading a result that
+         * is then cached for everybody, and which an interrupt would leave broken.
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            for (Task<?> task : pending) {
+                task.cancel(false);
+            }
+            pending.clear();
+        }
+    }
+}
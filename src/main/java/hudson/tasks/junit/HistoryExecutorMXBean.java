@@ -0,0 +1,27 @@
+package hudson.tasks.junit;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Load of the {@link HistoryExecutor}, as published over JMX.
+ */
+@Restricted(NoExternalUse.class)
+public interface HistoryExecutorMXBean {
+    /**
+     * @return the number of tasks running
+     */
+    int getActiveCount();
+
+    /**
+     * @return the number of tasks waiting for a thread, not counting those each request holds back
+     */
+    int getQueueSize();
+
+    long getCompletedTaskCount();
+
+    /**
+     * @return the number of tasks turned away because too many were waiting
+     */
+    long getRejectedTaskCount();
+}
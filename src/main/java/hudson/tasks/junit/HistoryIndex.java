@@ -0,0 +1,291 @@
+package hudson.tasks.junit;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.tasks.test.TestObject;
+import io.jenkins.plugins.junit.storage.FileJunitTestResultStorage;
+import io.jenkins.plugins.junit.storage.JunitTestResultStorage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Per-job index of the status and duration of every test object in every build,
+ * so that the {@link History} of a test does not need to load the full result of each build.
+ *
+ * <p>
+ * Each build gets one file under {@code junit-history} in the job directory, written when the build completes.
+ * It holds one fixed-size row per test object (the result itself, its packages, classes and cases),
+ * sorted by a 64-bit hash of the {@link TestObject#getId() id}, so finding a test in a build is a binary search
+ * over a few reads of the file.
+ */
+@Restricted(NoExternalUse.class)
+public final class HistoryIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(HistoryIndex.class.getName());
+
+    static boolean DISABLED = SystemProperties.getBoolean(HistoryIndex.class.getName() + ".DISABLED", false);
+
+    private static final int MAGIC = 0x4A554849; // JUHI
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int ROW_SIZE = 28;
+
+    private final File dir;
+
+    private HistoryIndex(File dir) {
+        this.dir = dir;
+    }
+
+    public static HistoryIndex of(@NonNull Job<?, ?> job) {
+        return new HistoryIndex(new File(job.getRootDir(), "junit-history"));
+    }
+
+    /**
+     * Whether {@link #find} can answer for the given test object, which is the case for the
+     * objects of a {@link TestResultAction} kept in files.
+     */
+    static boolean isIndexed(TestObject testObject) {
+        if (DISABLED || !(testObject.getTestResultAction() instanceof TestResultAction)) {
+            return false;
+        }
+        return testObject instanceof CaseResult
+                || testObject instanceof ClassResult
+                || testObject instanceof PackageResult
+                || testObject instanceof TestResult;
+    }
+
+    /**
+     * Status and duration of a test object in one build.
+     *
+     * @param failedSince for failed cases, the number of the build they have been failing since, otherwise 0
+     */
+    public record Row(float duration, int passCount, int failCount, int skipCount, int failedSince) {
+
+        static Row of(hudson.tasks.test.TestResult r) {
+            return new Row(
+                    r.getDuration(),
+                    r.getPassCount(),
+                    r.getFailCount(),
+                    r.getSkipCount(),
+                    r instanceof CaseResult c && c.isFailed() ? c.getFailedSince() : 0);
+        }
+    }
+
+    File getFile(int buildNumber) {
+        return new File(dir, buildNumber + ".idx");
+    }
+
+    /**
+     * Looks up a test object in a build.
+     *
+     * @param id the {@link TestObject#getId() id} of the test object
+     * @return the row of the test object, or null if the build has no such test
+     * @throws NoSuchFileException if the build has not been indexed
+     */
+    @CheckForNull
+    public Row find(int buildNumber, @NonNull String id) throws IOException {
+        long key = key(id);
+        try (FileChannel ch = FileChannel.open(getFile(buildNumber).toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(ROW_SIZE);
+            buf.limit(HEADER_SIZE);
+            readFully(ch, buf, 0);
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                throw new IOException("Unrecognized test history index " + getFile(buildNumber));
+            }
+            int count = buf.getInt(8);
+            if (ch.size() < HEADER_SIZE + (long) count * ROW_SIZE) {
+                throw new IOException("Truncated test history index " + getFile(buildNumber));
+            }
+            int lo = 0, hi = count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                buf.clear();
+                readFully(ch, buf, HEADER_SIZE + (long) mid * ROW_SIZE);
+                int cmp = Long.compare(buf.getLong(0), key);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return new Row(buf.getFloat(8), buf.getInt(12), buf.getInt(16), buf.getInt(20), buf.getInt(24));
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Looks up many test objects in a build at once, reading its index through.
+     *
+     * @param keys {@link #key keys} of the ids of the test objects
+     * @return the rows of the test objects the build has, by key
+     * @throws NoSuchFileException if the build has not been indexed
+     */
+    @NonNull
+    Map<Long, Row> findAll(int buildNumber, @NonNull Set<Long> keys) throws IOException {
+        Map<Long, Row> rows = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(getFile(buildNumber).toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized test history index " + getFile(buildNumber));
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count && rows.size() < keys.size(); i++) {
+                long key = in.readLong();
+                Row row = new Row(in.readFloat(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                if (keys.contains(key)) {
+                    rows.put(key, row);
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated test history index " + getFile(buildNumber), e);
+        }
+        return rows;
+    }
+
+    /**
+     * Writes the index of a build, replacing any previous one.
+     */
+    public void write(@NonNull Run<?, ?> run, @NonNull TestResult result) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        entries.add(new Entry(result));
+        for (PackageResult pr : result.getChildren()) {
+            entries.add(new Entry(pr));
+            for (ClassResult cr : pr.getChildren()) {
+                entries.add(new Entry(cr));
+                for (CaseResult c : cr.getChildren()) {
+                    entries.add(new Entry(c));
+                }
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::key));
+        List<Entry> unique = new ArrayList<>(entries.size());
+        for (Entry e : entries) {
+            // the same id twice, or a hash collision: keep the first
+            if (unique.isEmpty() || unique.get(unique.size() - 1).key() != e.key()) {
+                unique.add(e);
+            }
+        }
+
+        Files.createDirectories(dir.toPath());
+        Path tmp = Files.createTempFile(dir.toPath(), run.getNumber() + ".", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(unique.size());
+                for (Entry e : unique) {
+                    Row row = e.row();
+                    out.writeLong(e.key());
+                    out.writeFloat(row.duration());
+                    out.writeInt(row.passCount());
+                    out.writeInt(row.failCount());
+                    out.writeInt(row.skipCount());
+                    out.writeInt(row.failedSince());
+                }
+            }
+            Path target = getFile(run.getNumber()).toPath();
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public void delete(int buildNumber) throws IOException {
+        Files.deleteIfExists(getFile(buildNumber).toPath());
+    }
+
+    private record Entry(long key, Row row) {
+        Entry(hudson.tasks.test.TestResult r) {
+            this(key(r.getId()), Row.of(r));
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the id; collisions are unlikely enough among the ids of one build.
+     */
+    static long key(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            h = (h ^ (c & 0xff)) * 0x100000001b3L;
+            h = (h ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of test history index");
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * Indexes the results of builds as they complete and forgets those of deleted builds.
+     */
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            // pluggable storage answers history queries itself, its results are not even loaded
+            if (DISABLED || !(JunitTestResultStorage.find() instanceof FileJunitTestResultStorage)) {
+                return;
+            }
+            TestResultAction action = run.getAction(TestResultAction.class);
+            if (action == null) {
+                return;
+            }
+            try {
+                of(run.getParent()).write(run, action.getResult());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to index test results of " + run, e);
+            }
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            try {
+                of(run.getParent()).delete(run.getNumber());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to delete test history index of " + run, e);
+            }
+        }
+    }
+}
@@ -37,6 +37,8 @@ import hudson.tasks.test.TestResultParser;
 import io.jenkins.plugins.junit.storage.JunitTestResultStorage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.MasterToSlaveFileCallable;
@@ -223,7 +225,6 @@ public class JUnitParser extends TestResultParser {
             final long nowSlave = System.currentTimeMillis();
             FileSet fs = Util.createFileSet(ws, testResults);
             DirectoryScanner ds = fs.getDirectoryScanner();
-            TestResult result;
             String[] files = ds.getIncludedFiles();
             if (files.length > 0) {
                 // not sure we can rely seriously on those timestamp so let's take the smaller one...
@@ -235,27 +236,41 @@ public class JUnitParser extends TestResultParser {
                             + ",nowSlave:"
                             + nowSlave + ",nowMaster:" + nowMaster);
                 }
-                result = new TestResult(
-                        filesTimestamp,
-                        ds,
-                        stdioRetention,
-                        keepProperties,
-                        keepTestNames,
-                        pipelineTestDetails,
-                        skipOldReports);
-                result.tally();
+                return parse(filesTimestamp, ds);
             } else {
                 if (this.allowEmptyResults) {
                     listener.getLogger().println(Messages.JUnitResultArchiver_NoTestReportFound());
-                    result = new TestResult();
+                    return handle(new TestResult());
                 } else {
                     // no test result. Most likely a configuration error or fatal problem
                     throw new AbortException(Messages.JUnitResultArchiver_NoTestReportFound());
                 }
             }
+        }
+
+        /**
+         * Parses all report files into one result, then handles it.
+         */
+        protected T parse(long filesTimestamp, DirectoryScanner ds) throws IOException {
+            TestResult result = new TestResult(
+                    filesTimestamp,
+                    ds,
+                    stdioRetention,
+                    keepProperties,
+                    keepTestNames,
+                    pipelineTestDetails,
+                    skipOldReports);
+            result.tally();
             return handle(result);
         }
 
+        /**
+         * Creates an empty result, with the same options as {@link #parse}, to parse report files into.
+         */
+        protected TestResult newResult() {
+            return new TestResult(stdioRetention, keepProperties, keepTestNames, skipOldReports);
+        }
+
         protected abstract T handle(TestResult result) throws IOException;
     }
 
@@ -317,6 +332,50 @@ public class JUnitParser extends TestResultParser {
             this.publisher = publisher;
         }
 
+        /**
+         * Publishes suites as report files are parsed when the publisher is able to,
+         * so that only a batch of them is in memory at once.
+         */
+        @Override
+        protected TestResultSummary parse(long filesTimestamp, DirectoryScanner ds) throws IOException {
+            if (!(publisher instanceof JunitTestResultStorage.StreamingRemotePublisher streaming)) {
+                return super.parse(filesTimestamp, ds);
+            }
+            int failed = 0;
+            int skipped = 0;
+            int passed = 0;
+            float duration = 0;
+            TestResult batch = newResult();
+            for (String file : ds.getIncludedFiles()) {
+                batch.parse(filesTimestamp, List.of(new File(ds.getBasedir(), file)), super.pipelineTestDetails);
+                if (batch.getAddedCaseCount() < streaming.getBatchSize()) {
+                    continue;
+                }
+                TestResultSummary summary = publish(streaming, batch);
+                failed += summary.getFailCount();
+                skipped += summary.getSkipCount();
+                passed += summary.getPassCount();
+                duration += summary.getDuration();
+                batch = newResult();
+            }
+            if (!batch.getSuites().isEmpty()) {
+                TestResultSummary summary = publish(streaming, batch);
+                failed += summary.getFailCount();
+                skipped += summary.getSkipCount();
+                passed += summary.getPassCount();
+                duration += summary.getDuration();
+            }
+            streaming.finish(super.listener);
+            return new TestResultSummary(failed, skipped, passed, failed + skipped + passed, duration);
+        }
+
+        private TestResultSummary publish(JunitTestResultStorage.StreamingRemotePublisher streaming, TestResult batch)
+                throws IOException {
+            batch.tally();
+            streaming.publishSuites(new ArrayList<>(batch.getSuites()), super.listener);
+            return new TestResultSummary(batch);
+        }
+
         @Override
         protected TestResultSummary handle(TestResult result) throws IOException {
             publisher.publish(result, super.listener);
@@ -51,6 +51,7 @@ import hudson.util.ListBoxModel;
 import io.jenkins.plugins.junit.checks.JUnitChecksPublisher;
 import io.jenkins.plugins.junit.storage.FileJunitTestResultStorage;
 import io.jenkins.plugins.junit.storage.JunitTestResultStorage;
+import io.jenkins.plugins.junit.storage.TestResultImplCache;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -222,7 +223,7 @@ public class JUnitResultArchiver extends Recorder implements SimpleBuildStep, JU
                 action = new TestResultAction(build, result, listener);
             } else {
                 appending = true;
-                result.freeze(action);
+                result.freeze(action, true);
                 action.mergeResult(result, listener);
             }
             action.setHealthScaleFactor(task.getHealthScaleFactor()); // overwrites previous value if appending
@@ -290,6 +291,8 @@ public class JUnitResultArchiver extends Recorder implements SimpleBuildStep, JU
                             task.isSkipOldReports(),
                             task.isKeepTestNames())
                     .summarizeResult(testResults, build, pipelineTestDetails, workspace, launcher, listener, storage);
+            // trends and histories of other builds include these results too
+            TestResultImplCache.invalidate(build.getParent().getFullName());
         }
 
         synchronized (build) {
@@ -302,7 +305,7 @@ public class JUnitResultArchiver extends Recorder implements SimpleBuildStep, JU
             } else {
                 appending = true;
                 if (storage instanceof FileJunitTestResultStorage) {
-                    result.freeze(action);
+                    result.freeze(action, true);
                     action.mergeResult(result, listener);
                 }
             }
@@ -310,6 +313,8 @@ public class JUnitResultArchiver extends Recorder implements SimpleBuildStep, JU
                 assert storage instanceof FileJunitTestResultStorage;
                 // Cannot do this above since the result has not yet been frozen.
                 summary = new TestResultSummary(result);
+            } else {
+                action.addSummary(summary, result);
             }
             action.setHealthScaleFactor(task.getHealthScaleFactor()); // overwrites previous value if appending
             if (summary.getTotalCount() == 0 && /* maybe a secondary effect */ build.getResult() != Result.FAILURE) {
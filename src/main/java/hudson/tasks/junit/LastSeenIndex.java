@@ -0,0 +1,216 @@
+package hudson.tasks.junit;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * The last builds of a job each test case was seen in, updated as builds complete or are deleted,
+ * so that {@link CaseResult#getPreviousResult()} can go straight to the build that has the previous result of a case
+ * instead of looking through previous builds one by one.
+ *
+ * <p>
+ * For each case it keeps the last two builds that had it, keyed by the {@link HistoryIndex#key hash} of its id.
+ * It only knows about builds completed since it was started, from {@link #getSince()} on; older builds still
+ * need to be looked through. Everything is kept in {@code junit-history/last-seen.bin} in the job directory by a
+ * {@link SidecarStore}.
+ */
+@Restricted(NoExternalUse.class)
+public final class LastSeenIndex {
+
+    static boolean DISABLED = SystemProperties.getBoolean(LastSeenIndex.class.getName() + ".DISABLED", false);
+
+    /**
+     * Returned by {@link #previousBuild} when no build since {@link #getSince()} has the case.
+     */
+    static final int NONE = 0;
+    /**
+     * Returned by {@link #previousBuild} when the index cannot tell.
+     */
+    static final int UNKNOWN = -1;
+
+    private static final int MAGIC = 0x4A554C53; // JULS
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "last-seen.bin";
+
+    private static final SidecarStore<LastSeenIndex> store = new SidecarStore<>(
+            FILE_NAME, "last seen tests", file -> new LastSeenIndex(), LastSeenIndex::load, LastSeenIndex::save);
+
+    /**
+     * First build recorded, 0 if none yet.
+     */
+    private int since;
+
+    private final Map<Long, Seen> cases = new HashMap<>();
+
+    LastSeenIndex() {}
+
+    /**
+     * Gets the index of a job, loading it on first use.
+     */
+    @NonNull
+    public static LastSeenIndex of(@NonNull Job<?, ?> job) {
+        return store.get(job);
+    }
+
+    /**
+     * The first build this index knows about, 0 if none.
+     */
+    synchronized int getSince() {
+        return since;
+    }
+
+    /**
+     * Finds the last build before the given one that had a case.
+     *
+     * @param id the {@link hudson.tasks.test.TestObject#getId() id} of the case
+     * @param buildNumber the build whose previous result is looked for
+     * @return the number of the build, {@link #NONE} if no build from {@link #getSince()} on had it,
+     *     or {@link #UNKNOWN} if previous builds have to be looked through
+     */
+    synchronized int previousBuild(@NonNull String id, int buildNumber) {
+        if (since == 0 || buildNumber < since) {
+            return UNKNOWN;
+        }
+        Seen seen = cases.get(HistoryIndex.key(id));
+        if (seen == null) {
+            return buildNumber > since ? NONE : UNKNOWN;
+        }
+        if (seen.last > 0 && seen.last < buildNumber) {
+            return seen.last;
+        }
+        if (seen.last == buildNumber) {
+            return seen.before;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Adds the cases of a completed build.
+     */
+    synchronized void record(int buildNumber, @NonNull TestResult result) {
+        if (since == 0) {
+            since = buildNumber;
+        }
+        for (PackageResult pr : result.getChildren()) {
+            for (ClassResult cr : pr.getChildren()) {
+                for (CaseResult c : cr.getChildren()) {
+                    long key = HistoryIndex.key(c.getId());
+                    Seen seen = cases.get(key);
+                    if (seen == null) {
+                        cases.put(key, new Seen(buildNumber, buildNumber > since ? NONE : UNKNOWN));
+                    } else if (seen.last == UNKNOWN) {
+                        seen.last = buildNumber;
+                    } else if (buildNumber > seen.last) {
+                        seen.before = seen.last;
+                        seen.last = buildNumber;
+                    } else if (buildNumber < seen.last && seen.before != UNKNOWN && buildNumber > seen.before) {
+                        seen.before = buildNumber; // builds completing out of order
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets a deleted build.
+     */
+    synchronized void forget(int buildNumber) {
+        for (Iterator<Seen> it = cases.values().iterator(); it.hasNext(); ) {
+            Seen seen = it.next();
+            if (seen.last == buildNumber) {
+                if (seen.before == NONE) {
+                    it.remove();
+                } else {
+                    // only the last two builds are known, so what was before that is not
+                    seen.last = seen.before;
+                    seen.before = UNKNOWN;
+                }
+            } else if (seen.before == buildNumber) {
+                seen.before = UNKNOWN;
+            }
+        }
+    }
+
+    synchronized void load(File file) throws IOException {
+        SidecarStore.read(file, MAGIC, VERSION, (in, version) -> {
+            since = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                cases.put(in.readLong(), new Seen(in.readInt(), in.readInt()));
+            }
+        });
+    }
+
+    synchronized void save(File file) throws IOException {
+        SidecarStore.write(file, MAGIC, VERSION, out -> {
+            out.writeInt(since);
+            out.writeInt(cases.size());
+            for (Map.Entry<Long, Seen> e : cases.entrySet()) {
+                out.writeLong(e.getKey());
+                out.writeInt(e.getValue().last);
+                out.writeInt(e.getValue().before);
+            }
+        });
+    }
+
+    /**
+     * Last two builds that had a case: {@link #UNKNOWN} if not known,
+     * and for {@link #before}, {@link #NONE} if no earlier build from {@link #since} on had it.
+     */
+    private static final class Seen {
+        int last;
+        int before;
+
+        Seen(int last, int before) {
+            this.last = last;
+            this.before = before;
+        }
+    }
+
+    /**
+     * Records the cases of builds as they complete and forgets those of deleted builds.
+     * Changes are written a little later, so that deleting many builds at once writes the index once.
+     */
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            if (DISABLED) {
+                return;
+            }
+            TestResultAction action = run.getAction(TestResultAction.class);
+            if (action == null) {
+                return;
+            }
+            TestResult result = action.getResult();
+            if (result.getPluggableStorage() != null) {
+                return;
+            }
+            Job<?, ?> job = run.getParent();
+            of(job).record(run.getNumber(), result);
+            store.saveLater(job);
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            if (DISABLED || run.getAction(TestResultAction.class) == null) {
+                return;
+            }
+            Job<?, ?> job = run.getParent();
+            of(job).forget(run.getNumber());
+            store.saveLater(job);
+        }
+    }
+}
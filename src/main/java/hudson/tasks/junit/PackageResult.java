@@ -23,16 +23,19 @@
  */
 package hudson.tasks.junit;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.model.Run;
 import hudson.tasks.test.MetaTabulatedResult;
 import hudson.tasks.test.TestResult;
 import io.jenkins.plugins.junit.storage.TestResultImpl;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import org.kohsuke.stapler.StaplerRequest2;
 import org.kohsuke.stapler.StaplerResponse2;
 import org.kohsuke.stapler.export.Exported;
@@ -51,6 +54,11 @@ public final class PackageResult extends MetaTabulatedResult implements Comparab
      */
     private final Map<String, ClassResult> classes = new TreeMap<>();
 
+    /**
+     * {@link #classes} keyed by their {@link ClassResult#getSafeName()}, built by {@link #assignSafeNames()}.
+     */
+    private transient volatile Map<String, ClassResult> classesBySafeName;
+
     private int passCount, failCount, skipCount;
     private final hudson.tasks.junit.TestResult parent;
     private float duration;
@@ -78,18 +86,28 @@ public final class PackageResult extends MetaTabulatedResult implements Comparab
         return packageName;
     }
 
+    /**
+     * Unique among the packages of the {@link hudson.tasks.junit.TestResult} once it has been tallied.
+     */
     @Override
-    public synchronized String getSafeName() {
-        if (safeName != null) {
-            return safeName;
-        }
-        Collection<PackageResult> siblings = parent == null ? Collections.emptyList() : parent.getChildren();
-        return safeName = uniquifyName(siblings, safe(getName()));
+    public String getSafeName() {
+        String name = safeName;
+        return name != null ? name : safe(packageName);
+    }
+
+    @CheckForNull
+    String getAssignedSafeName() {
+        return safeName;
+    }
+
+    void setSafeName(String safeName) {
+        this.safeName = safeName;
+        resetId();
     }
 
     @Override
     public TestResult findCorrespondingResult(String id) {
-        String myID = safe(getName());
+        String myID = getSafeName();
 
         int base = id.indexOf(myID);
         String className = id; // fall back value
@@ -171,10 +189,78 @@ public final class PackageResult extends MetaTabulatedResult implements Comparab
         }
     }
 
+    /**
+     * @param name the {@link ClassResult#getSafeName()} of the class, or else its short name
+     */
     public ClassResult getClassResult(String name) {
+        Map<String, ClassResult> bySafeName = classesBySafeName;
+        if (bySafeName == null) {
+            bySafeName = assignSafeNames();
+        }
+        ClassResult c = bySafeName.get(name);
+        return c != null ? c : classes.get(name);
+    }
+
+    /**
+     * @param name the short name of the class
+     */
+    ClassResult getClassResultByName(String name) {
         return classes.get(name);
     }
 
+    /**
+     * Gives each class a URL-safe name that is unique among the classes of this package,
+     * keeping the names classes were already given.
+     */
+    synchronized Map<String, ClassResult> assignSafeNames() {
+        Map<String, ClassResult> bySafeName = assignSafeNames(
+                classes.values(), ClassResult::getName, ClassResult::getAssignedSafeName, ClassResult::setSafeName);
+        classesBySafeName = bySafeName;
+        return bySafeName;
+    }
+
+    /**
+     * Gives each of some siblings a URL-safe name that is unique among them, keeping the names already given.
+     *
+     * <p>
+     * Names that are URL-safe as they are go to their owners first, and the others get a numbered suffix
+     * in the order of the siblings if they have to, so that the same results get the same names in every build.
+     *
+     * @return the siblings keyed by their names
+     */
+    static <T> Map<String, T> assignSafeNames(
+            Collection<T> siblings,
+            Function<T, String> name,
+            Function<T, String> assigned,
+            BiConsumer<T, String> assign) {
+        Map<String, T> bySafeName = new HashMap<>();
+        for (T t : siblings) {
+            String n = assigned.apply(t);
+            if (n != null) {
+                bySafeName.putIfAbsent(n, t);
+            }
+        }
+        for (T t : siblings) {
+            String n = name.apply(t);
+            if (assigned.apply(t) == null && safe(n).equals(n) && !bySafeName.containsKey(n)) {
+                assign.accept(t, n);
+                bySafeName.put(n, t);
+            }
+        }
+        for (T t : siblings) {
+            if (assigned.apply(t) == null) {
+                String base = safe(name.apply(t));
+                String n = base;
+                for (int i = 2; bySafeName.containsKey(n); i++) {
+                    n = base + '_' + i;
+                }
+                assign.accept(t, n);
+                bySafeName.put(n, t);
+            }
+        }
+        return bySafeName;
+    }
+
     @Exported(name = "child")
     @Override
     public Collection<ClassResult> getChildren() {
@@ -296,10 +382,11 @@ public final class PackageResult extends MetaTabulatedResult implements Comparab
     }
 
     public void add(CaseResult r) {
-        String n = r.getSimpleName(), sn = safe(n);
-        ClassResult c = getClassResult(sn);
+        String n = r.getSimpleName();
+        ClassResult c = classes.get(n);
         if (c == null) {
-            classes.put(sn, c = new ClassResult(this, n));
+            classes.put(n, c = new ClassResult(this, n));
+            classesBySafeName = null;
         }
         c.add(r);
         duration += r.getDuration();
@@ -314,6 +401,7 @@ public final class PackageResult extends MetaTabulatedResult implements Comparab
         failCount = 0;
         skipCount = 0;
         duration = 0;
+        assignSafeNames();
 
         for (ClassResult cr : classes.values()) {
             cr.tally();
@@ -324,8 +412,32 @@ public final class PackageResult extends MetaTabulatedResult implements Comparab
         }
     }
 
+    /**
+     * Recount my children after cases were added to some of them only.
+     *
+     * @param changed the classes cases were added to; the others keep their counts
+     */
+    void tally(Collection<ClassResult> changed) {
+        passCount = 0;
+        failCount = 0;
+        skipCount = 0;
+        duration = 0;
+        assignSafeNames();
+
+        for (ClassResult cr : changed) {
+            cr.tally();
+        }
+        for (ClassResult cr : classes.values()) {
+            passCount += cr.getPassCount();
+            failCount += cr.getFailCount();
+            skipCount += cr.getSkipCount();
+            duration += cr.getDuration();
+        }
+    }
+
     void freeze() {
         passCount = failCount = skipCount = 0;
+        assignSafeNames();
         for (ClassResult cr : classes.values()) {
             cr.freeze();
             passCount += cr.getPassCount();
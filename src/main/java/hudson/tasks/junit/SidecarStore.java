@@ -0,0 +1,300 @@
+package hudson.tasks.junit;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.init.Terminator;
+import hudson.model.Job;
+import hudson.util.AtmostOneThreadExecutor;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Keeps what is recorded about the tests of jobs in a file of each job, under {@code junit-history} in the job
+ * directory, and in memory for the jobs it was used for last.
+ *
+ * <p>
+ * At most {@link #MAX_JOBS} jobs are kept in memory per kind of file, least recently used ones are dropped first.
+ * Changes are written {@link #SAVE_DELAY_MS} after the first one, on one thread shared by all kinds of files,
+ * so that builds completing or being deleted in quick succession are written once and do not wait for it.
+ * Jobs with changes that were not written yet are not dropped, and are written when Jenkins stops.
+ *
+ * @param <T> what is recorded for one job
+ */
+@Restricted(NoExternalUse.class)
+public final class SidecarStore<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(SidecarStore.class.getName());
+
+    /**
+     * Number of jobs kept in memory per kind of file.
+     */
+    static int MAX_JOBS = SystemProperties.getInteger(SidecarStore.class.getName() + ".MAX_JOBS", 32);
+
+    /**
+     * How long changes are collected before they are written, in milliseconds.
+     */
+    static long SAVE_DELAY_MS = SystemProperties.getLong(SidecarStore.class.getName() + ".SAVE_DELAY_MS", 5000L);
+
+    private static final ExecutorService writer =
+            new AtmostOneThreadExecutor(new NamingThreadFactory(new DaemonThreadFactory(), "junit-history-writer"));
+
+    private static final List<SidecarStore<?>> stores = new CopyOnWriteArrayList<>();
+
+    /**
+     * Reads what is recorded for a job from its file, or writes it there.
+     */
+    @FunctionalInterface
+    public interface FileIO<T> {
+        void apply(T value, File file) throws IOException;
+    }
+
+    /**
+     * Reads the contents of a file, after its header.
+     */
+    @FunctionalInterface
+    public interface Reader {
+        void read(DataInputStream in, int version) throws IOException;
+    }
+
+    /**
+     * Writes the contents of a file, after its header.
+     */
+    @FunctionalInterface
+    public interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private final String fileName;
+    private final String description;
+    private final Function<File, T> factory;
+    private final FileIO<T> load;
+    private final FileIO<T> save;
+
+    /**
+     * Guarded by this store, in access order.
+     */
+    private final Map<Job<?, ?>, T> resident = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Jobs whose changes are waiting to be written, guarded by this store.
+     */
+    private final Set<Job<?, ?>> scheduled = new HashSet<>();
+    /**
+     * Jobs whose changes are being written, guarded by this store.
+     */
+    private final Set<Job<?, ?>> writing = new HashSet<>();
+
+    /**
+     * @param fileName name of the file in {@code junit-history}
+     * @param description what is recorded, for log messages
+     * @param factory creates what is recorded for a job from the file it is kept in, without reading it
+     * @param load reads what is recorded for a job, when the job is first used
+     * @param save writes what is recorded for a job
+     */
+    public SidecarStore(
+            @NonNull String fileName,
+            @NonNull String description,
+            @NonNull Function<File, T> factory,
+            @NonNull FileIO<T> load,
+            @NonNull FileIO<T> save) {
+        this.fileName = fileName;
+        this.description = description;
+        this.factory = factory;
+        this.load = load;
+        this.save = save;
+        stores.add(this);
+    }
+
+    @NonNull
+    public File getFile(@NonNull Job<?, ?> job) {
+        return new File(new File(job.getRootDir(), "junit-history"), fileName);
+    }
+
+    /**
+     * Whether what is recorded for a job is in memory.
+     */
+    public synchronized boolean isResident(@NonNull Job<?, ?> job) {
+        return resident.containsKey(job);
+    }
+
+    /**
+     * Gets what is recorded for a job, reading it on first use.
+     */
+    @NonNull
+    public T get(@NonNull Job<?, ?> job) {
+        synchronized (this) {
+            T value = resident.get(job);
+            if (value != null) {
+                return value;
+            }
+        }
+        // not holding up other jobs while reading the file
+        File file = getFile(job);
+        T value = factory.apply(file);
+        try {
+            load.apply(value, file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load " + description + " of " + job, e);
+            value = factory.apply(file);
+        }
+        synchronized (this) {
+            T other = resident.putIfAbsent(job, value);
+            if (other != null) {
+                return other;
+            }
+            trim(job);
+            return value;
+        }
+    }
+
+    /**
+     * Writes what is recorded for a job after a while, along with further changes made until then.
+     */
+    public void saveLater(@NonNull Job<?, ?> job) {
+        synchronized (this) {
+            if (!resident.containsKey(job) || !scheduled.add(job)) {
+                return;
+            }
+        }
+        Timer.get().schedule(() -> writer.submit(() -> save(job)), SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void save(Job<?, ?> job) {
+        T value;
+        synchronized (this) {
+            if (!scheduled.remove(job)) {
+                return; // written already
+            }
+            value = resident.get(job);
+            writing.add(job);
+        }
+        try {
+            if (job.getRootDir().isDirectory()) { // unless the job was deleted meanwhile
+                save.apply(value, getFile(job));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to save " + description + " of " + job, e);
+        } finally {
+            synchronized (this) {
+                writing.remove(job);
+                trim(null);
+            }
+        }
+    }
+
+    /**
+     * Drops the least recently used jobs beyond {@link #MAX_JOBS}, except those with changes not written yet.
+     *
+     * @param keep a job that was just added, which is kept too
+     */
+    private void trim(Job<?, ?> keep) {
+        int excess = resident.size() - Math.max(1, MAX_JOBS);
+        for (Iterator<Job<?, ?>> it = resident.keySet().iterator(); excess > 0 && it.hasNext(); ) {
+            Job<?, ?> job = it.next();
+            if (job != keep && !scheduled.contains(job) && !writing.contains(job)) {
+                it.remove();
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Writes the changes that are waiting to be written right away.
+     */
+    public void flush() {
+        List<Job<?, ?>> jobs;
+        synchronized (this) {
+            jobs = new ArrayList<>(scheduled);
+        }
+        jobs.forEach(this::save);
+    }
+
+    /**
+     * Writes the changes that are waiting to be written, and drops all jobs from memory.
+     */
+    public void clear() {
+        flush();
+        synchronized (this) {
+            resident.clear();
+        }
+    }
+
+    @Terminator
+    public static void flushAll() {
+        for (SidecarStore<?> store : stores) {
+            store.flush();
+        }
+    }
+
+    /**
+     * Reads a file written by {@link #write}.
+     *
+     * @param version the current version of the file; files of earlier versions are read too
+     * @return false if there is no such file
+     * @throws IOException if the file is not of this kind or version
+     */
+    public static boolean read(@NonNull File file, int magic, int version, @NonNull Reader reader)
+            throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            int v;
+            if (in.readInt() != magic || (v = in.readInt()) < 1 || v > version) {
+                throw new IOException("Unrecognized " + file);
+            }
+            reader.read(in, v);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces a file at once, so that readers never see it half-written, with a header identifying its kind and
+     * version.
+     */
+    public static void write(@NonNull File file, int magic, int version, @NonNull Writer writer) throws IOException {
+        Path dir = file.toPath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(magic);
+                out.writeInt(version);
+                writer.write(out);
+            }
+            try {
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -40,6 +40,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -150,7 +151,7 @@ public final class SuiteResult implements Serializable {
         if (src.cases == null) {
             this.cases = null;
         } else {
-            this.cases = new ArrayList<>();
+            this.cases = new ArrayList<>(src.cases.size());
             for (CaseResult cr : src.cases) {
                 cases.add(new CaseResult(cr));
             }
@@ -160,17 +161,32 @@ public final class SuiteResult implements Serializable {
     }
 
     static SuiteResult parse(final XMLStreamReader reader, String context, String ver) throws XMLStreamException {
+        return parse(reader, context, ver, null);
+    }
+
+    /**
+     * @param classFilter if given, only the cases of the matching classes are kept, and a suite left without cases
+     *                    keeps no output either
+     */
+    static SuiteResult parse(
+            final XMLStreamReader reader, String context, String ver, @CheckForNull Predicate<String> classFilter)
+            throws XMLStreamException {
         SuiteResult r = new SuiteResult("", null, null, null);
         while (reader.hasNext()) {
             final int event = reader.next();
             if (event == XMLStreamReader.END_ELEMENT && reader.getLocalName().equals("suite")) {
+                if (classFilter != null && r.cases.isEmpty()) {
+                    r.stdout = null;
+                    r.stderr = null;
+                    r.properties = Collections.emptyMap();
+                }
                 return r;
             }
             if (event == XMLStreamReader.START_ELEMENT) {
                 final String elementName = reader.getLocalName();
                 switch (elementName) {
                     case "cases":
-                        parseCases(r, reader, context, ver);
+                        parseCases(r, reader, context, ver, classFilter);
                         break;
                     case "file":
                         r.file = reader.getElementText();
@@ -261,7 +277,12 @@ public final class SuiteResult implements Serializable {
         }
     }
 
-    static void parseCases(SuiteResult r, final XMLStreamReader reader, String context, String ver)
+    static void parseCases(
+            SuiteResult r,
+            final XMLStreamReader reader,
+            String context,
+            String ver,
+            @CheckForNull Predicate<String> classFilter)
             throws XMLStreamException {
         while (reader.hasNext()) {
             final int event = reader.next();
@@ -272,7 +293,12 @@ public final class SuiteResult implements Serializable {
                 final String elementName = reader.getLocalName();
                 switch (elementName) {
                     case "case":
-                        r.cases.add(CaseResult.parse(r, reader, context, ver));
+                        CaseResult c = CaseResult.parse(r, reader, context, ver, classFilter);
+                        if (c == null) {
+                            break;
+                        }
+                        c.shareClassName(r.cases.isEmpty() ? null : r.cases.get(r.cases.size() - 1));
+                        r.cases.add(c);
                         break;
                     default:
                         LOGGER.finest(() -> "Unknown field in " + context + ": " + elementName);
@@ -485,6 +511,7 @@ public final class SuiteResult implements Serializable {
             // the other wants to use @classname from <testcase>.
 
             CaseResult caze = new CaseResult(this, e, classname, stdioRetention, keepProperties, keepTestNames);
+            caze.shareClassName(cases.isEmpty() ? null : cases.get(cases.size() - 1));
 
             // If timestamp is present for <testcase> set startTime of new CaseResult.
             String caseStart = e.attributeValue("timestamp");
@@ -47,10 +47,13 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -98,10 +101,15 @@ public final class TestResult extends MetaTabulatedResult {
     private transient Map<String, List<SuiteResult>> suitesByNode;
 
     /**
-     * Results tabulated by package.
+     * Results tabulated by package, keyed by the package name.
      */
     private transient Map<String, PackageResult> byPackages;
 
+    /**
+     * {@link #byPackages} keyed by their {@link PackageResult#getSafeName()}, built by {@link #assignSafeNames()}.
+     */
+    private transient volatile Map<String, PackageResult> packagesBySafeName;
+
     // set during the freeze phase
     private transient AbstractTestResultAction parentAction;
 
@@ -134,6 +142,17 @@ public final class TestResult extends MetaTabulatedResult {
 
     private boolean keepProperties;
 
+    /**
+     * Number of failed cases that passed the last time they ran, as found when the result was recorded,
+     * or -1 if not known.
+     */
+    private transient int regressionCount = -1;
+
+    /**
+     * Number of cases of the suites added to this result, including those merged into a suite of the same name.
+     */
+    private transient int addedCases;
+
     // default 3s as it depends on OS some can be good some not really....
     public static final long FILE_TIME_PRECISION_MARGIN =
             Long.getLong(TestResult.class.getName() + "filetime.precision.margin", 3000);
@@ -262,6 +281,18 @@ public final class TestResult extends MetaTabulatedResult {
         parse(filesTimestamp, results, pipelineTestDetails);
     }
 
+    /**
+     * Creates an empty result, to which report files are then added by
+     * {@link #parse(long, Iterable, PipelineTestDetails)} one after the other.
+     */
+    TestResult(StdioRetention stdioRetention, boolean keepProperties, boolean keepTestNames, boolean skipOldReports) {
+        this.stdioRetention = stdioRetention;
+        this.keepProperties = keepProperties;
+        this.keepTestNames = keepTestNames;
+        impl = null;
+        this.skipOldReports = skipOldReports;
+    }
+
     public TestResult(TestResultImpl impl) {
         this.impl = impl;
         stdioRetention = StdioRetention.DEFAULT; // irrelevant
@@ -320,20 +351,31 @@ public final class TestResult extends MetaTabulatedResult {
     }
 
     void parse(XmlFile f) throws XMLStreamException, IOException {
+        parse(f, null);
+    }
+
+    /**
+     * Reads a persisted result.
+     *
+     * @param classFilter if given, only the cases of the classes whose name it matches are read;
+     *                    all suites are kept, so that the structure of pipeline blocks does not change
+     */
+    void parse(XmlFile f, @CheckForNull Predicate<String> classFilter) throws XMLStreamException, IOException {
         try (Reader r = f.readRaw()) {
             final XMLStreamReader reader = getXmlFactory().createXMLStreamReader(r);
             while (reader.hasNext()) {
                 final int event = reader.next();
                 if (event == XMLStreamReader.START_ELEMENT
                         && reader.getName().getLocalPart().equals("result")) {
-                    parseXmlResult(reader, f.getFile().toString());
+                    parseXmlResult(reader, f.getFile().toString(), classFilter);
                 }
             }
             r.close();
         }
     }
 
-    private void parseXmlResult(final XMLStreamReader reader, String context) throws XMLStreamException {
+    private void parseXmlResult(final XMLStreamReader reader, String context, Predicate<String> classFilter)
+            throws XMLStreamException {
         String ver = reader.getAttributeValue(null, "plugin");
         while (reader.hasNext()) {
             int event = reader.next();
@@ -344,7 +386,7 @@ public final class TestResult extends MetaTabulatedResult {
                 final String elementName = reader.getLocalName();
                 switch (elementName) {
                     case "suites":
-                        parseXmlSuites(reader, context, ver);
+                        parseXmlSuites(reader, context, ver, classFilter);
                         break;
                     case "duration":
                         duration = CaseResult.clampDuration(new TimeToFloat(reader.getElementText()).parse());
@@ -375,7 +417,9 @@ public final class TestResult extends MetaTabulatedResult {
         }
     }
 
-    private void parseXmlSuites(final XMLStreamReader reader, String context, String ver) throws XMLStreamException {
+    private void parseXmlSuites(
+            final XMLStreamReader reader, String context, String ver, Predicate<String> classFilter)
+            throws XMLStreamException {
         while (reader.hasNext()) {
             final int event = reader.next();
             if (event == XMLStreamReader.END_ELEMENT && reader.getLocalName().equals("suites")) {
@@ -385,7 +429,7 @@ public final class TestResult extends MetaTabulatedResult {
                 final String elementName = reader.getLocalName();
                 switch (elementName) {
                     case "suite":
-                        suites.add(SuiteResult.parse(reader, context, ver));
+                        suites.add(SuiteResult.parse(reader, context, ver, classFilter));
                         break;
                     default:
                         LOGGER.finest(() -> "Unknown field in " + context + ": " + elementName);
@@ -522,7 +566,13 @@ public final class TestResult extends MetaTabulatedResult {
         }
     }
 
-    private void add(SuiteResult sr) {
+    /**
+     * Adds a suite, merging it into an existing one of the same identity if there is one.
+     *
+     * @return the suite now holding the cases of {@code sr}; {@code sr} itself unless it was merged
+     */
+    private SuiteResult add(SuiteResult sr) {
+        addedCases += sr.getCases().size();
         long suiteStart = sr.getStartTime();
         for (SuiteResult s : suites) {
             // JENKINS-12457: If a testsuite is distributed over multiple files, merge it into a single SuiteResult:
@@ -541,7 +591,7 @@ public final class TestResult extends MetaTabulatedResult {
 
                 duration += sr.getDuration();
                 s.merge(sr);
-                return;
+                return s;
             }
         }
 
@@ -554,17 +604,136 @@ public final class TestResult extends MetaTabulatedResult {
 
         suites.add(sr);
         duration += sr.getDuration();
+        return sr;
     }
 
     /**
      * Adds the leafNodes from another test result to this one.
+     *
+     * <p>
+     * If this result has already been frozen, only the added cases are counted and filed into
+     * their packages, so merging many small results one after the other does not repeatedly
+     * re-tally everything merged before.
      */
     void merge(TestResult other) {
+        if (suitesByName == null || byPackages == null || failedTests == null) {
+            for (SuiteResult suite : other.suites) {
+                suite.setParent(null); // otherwise freeze ignores it
+                add(suite);
+            }
+            tally();
+            return;
+        }
+
+        boolean hadMultipleBlocks = hasMultipleBlocks();
+        Map<PackageResult, Set<ClassResult>> touched = new HashMap<>();
+        List<CaseResult> newFailures = new ArrayList<>();
+        List<CaseResult> newSkipped = new ArrayList<>();
+        List<CaseResult> newPassed = new ArrayList<>();
         for (SuiteResult suite : other.suites) {
-            suite.setParent(null); // otherwise freeze ignores it
+            SuiteResult s = add(suite);
+            if (s == suite) {
+                suitesByName.merge(
+                        s.getName(),
+                        Collections.singleton(s),
+                        (a, b) -> Stream.concat(a.stream(), b.stream()).collect(Collectors.toList()));
+                if (s.getNodeId() != null) {
+                    addSuiteByNode(s);
+                }
+            }
+            s.setParent(this);
+
+            for (CaseResult cr : suite.getCases()) {
+                cr.setParentAction(this.parentAction);
+                cr.setParentSuiteResult(s);
+                totalTests++;
+                if (cr.isSkipped()) {
+                    skippedTestsCounter++;
+                    newSkipped.add(cr);
+                } else if (!cr.isPassed()) {
+                    newFailures.add(cr);
+                } else {
+                    newPassed.add(cr);
+                }
+
+                String pkg = cr.getPackageName();
+                PackageResult pr = byPackages.get(pkg);
+                if (pr == null) {
+                    byPackages.put(pkg, pr = new PackageResult(this, pkg));
+                }
+
+                if (pr.getStartTime() == -1) {
+                    pr.setStartTime(s.getStartTime());
+                } else if (s.getStartTime() != -1) {
+                    pr.setStartTime(Math.min(pr.getStartTime(), s.getStartTime()));
+                }
+                pr.add(cr);
+                touched.computeIfAbsent(pr, k -> new HashSet<>()).add(pr.getClassResultByName(cr.getSimpleName()));
+            }
+        }
+
+        assignSafeNames();
+        resetSafeNamesIfBlocksChanged(hadMultipleBlocks);
+        touched.forEach(PackageResult::tally);
+
+        failedTests = mergeByAge(failedTests, newFailures);
+        regressionCount =
+                regressionCount < 0 || other.regressionCount < 0 ? -1 : regressionCount + other.regressionCount;
+        synchronized (this) {
+            if (skippedTests != null) {
+                skippedTests = mergeByAge(skippedTests, newSkipped);
+            }
+            if (passedTests != null) {
+                passedTests = mergeByAge(passedTests, newPassed);
+            }
+        }
+    }
+
+    /**
+     * @return the number of failed cases that passed the last time they ran, as found when the result was recorded
+     *     from the {@link HistoryIndex}, or -1 if not known
+     */
+    int getRegressionCount() {
+        return regressionCount;
+    }
+
+    /**
+     * @return the number of cases added so far, e.g. by parsing report files, without counting them again
+     */
+    int getAddedCaseCount() {
+        return addedCases;
+    }
+
+    /**
+     * Merges cases into a list sorted by {@link CaseResult#BY_AGE}, sorting only those added.
+     *
+     * @return {@code sorted} itself if nothing was added, otherwise a new sorted list
+     */
+    private static List<CaseResult> mergeByAge(List<CaseResult> sorted, List<CaseResult> added) {
+        if (added.isEmpty()) {
+            return sorted;
+        }
+        added.sort(CaseResult.BY_AGE);
+        List<CaseResult> merged = new ArrayList<>(sorted.size() + added.size());
+        int i = 0, j = 0;
+        while (i < sorted.size() && j < added.size()) {
+            // stable: existing cases come first among those of the same age
+            merged.add(
+                    CaseResult.BY_AGE.compare(added.get(j), sorted.get(i)) < 0 ? added.get(j++) : sorted.get(i++));
+        }
+        merged.addAll(sorted.subList(i, sorted.size()));
+        merged.addAll(added.subList(j, added.size()));
+        return merged;
+    }
+
+    /**
+     * Appends the suites of a result persisted separately by {@link TestResultAction#mergeResult}
+     * to this result, which must not have been frozen yet.
+     */
+    void addSegment(TestResult segment) {
+        for (SuiteResult suite : segment.suites) {
             add(suite);
         }
-        tally();
     }
 
     private boolean strictEq(Object lhs, Object rhs) {
@@ -967,12 +1136,37 @@ public final class TestResult extends MetaTabulatedResult {
         }
     }
 
+    /**
+     * @param packageName the {@link PackageResult#getSafeName()} of the package, or else its name
+     */
     public PackageResult byPackage(String packageName) {
         if (impl != null) {
             return impl.getPackageResult(packageName);
         }
 
-        return byPackages.get(packageName);
+        Map<String, PackageResult> bySafeName = packagesBySafeName;
+        if (bySafeName == null) {
+            bySafeName = assignSafeNames();
+        }
+        PackageResult pr = bySafeName.get(packageName);
+        return pr != null ? pr : byPackages.get(packageName);
+    }
+
+    /**
+     * Gives each package, and each class of each package, a URL-safe name that is unique among its siblings,
+     * keeping the names they were already given, the same way {@link ClassResult} names its cases.
+     */
+    private synchronized Map<String, PackageResult> assignSafeNames() {
+        Map<String, PackageResult> bySafeName = PackageResult.assignSafeNames(
+                byPackages.values(),
+                PackageResult::getName,
+                PackageResult::getAssignedSafeName,
+                PackageResult::setSafeName);
+        for (PackageResult pr : byPackages.values()) {
+            pr.assignSafeNames();
+        }
+        packagesBySafeName = bySafeName;
+        return bySafeName;
     }
 
     /**
@@ -1053,6 +1247,7 @@ public final class TestResult extends MetaTabulatedResult {
         skippedTests = null;
         passedTests = null;
         byPackages = new TreeMap<>();
+        packagesBySafeName = null;
 
         totalTests = 0;
         skippedTestsCounter = 0;
@@ -1074,10 +1269,10 @@ public final class TestResult extends MetaTabulatedResult {
                 cr.setParentAction(this.parentAction);
                 cr.setParentSuiteResult(s);
                 cr.tally();
-                String pkg = cr.getPackageName(), spkg = safe(pkg);
-                PackageResult pr = byPackage(spkg);
+                String pkg = cr.getPackageName();
+                PackageResult pr = byPackages.get(pkg);
                 if (pr == null) {
-                    byPackages.put(spkg, pr = new PackageResult(this, pkg));
+                    byPackages.put(pkg, pr = new PackageResult(this, pkg));
                 }
 
                 if (pr.getStartTime() == -1) {
@@ -1089,6 +1284,7 @@ public final class TestResult extends MetaTabulatedResult {
             }
         }
 
+        assignSafeNames();
         for (PackageResult pr : byPackages.values()) {
             pr.tally();
             skippedTestsCounter += pr.getSkipCount();
@@ -1106,9 +1302,20 @@ public final class TestResult extends MetaTabulatedResult {
      * and then freeze can be called again.
      */
     public void freeze(TestResultAction parent) {
+        freeze(parent, false);
+    }
+
+    /**
+     * @param recording whether the result is being recorded, in which case since when its failed cases have been
+     *                  failing is computed from the {@link HistoryIndex}, to be saved with it; results read back
+     *                  from disk already have it, or compute it when it is asked for
+     */
+    void freeze(TestResultAction parent, boolean recording) {
         assert impl == null;
         this.parentAction = parent;
-        if (suitesByName == null) {
+        boolean hadMultipleBlocks = hasMultipleBlocks();
+        boolean firstFreeze = suitesByName == null;
+        if (firstFreeze) {
             // freeze for the first time
             suitesByName = new HashMap<>();
             suitesByNode = new HashMap<>();
@@ -1118,6 +1325,7 @@ public final class TestResult extends MetaTabulatedResult {
             skippedTests = null;
             passedTests = null;
             byPackages = new TreeMap<>();
+            packagesBySafeName = null;
         }
 
         for (SuiteResult s : suites) {
@@ -1149,10 +1357,10 @@ public final class TestResult extends MetaTabulatedResult {
                     }
                 }
 
-                String pkg = cr.getPackageName(), spkg = safe(pkg);
-                PackageResult pr = byPackage(spkg);
+                String pkg = cr.getPackageName();
+                PackageResult pr = byPackages.get(pkg);
                 if (pr == null) {
-                    byPackages.put(spkg, pr = new PackageResult(this, pkg));
+                    byPackages.put(pkg, pr = new PackageResult(this, pkg));
                 }
 
                 if (pr.getStartTime() == -1) {
@@ -1164,6 +1372,14 @@ public final class TestResult extends MetaTabulatedResult {
             }
         }
 
+        assignSafeNames();
+        resetSafeNamesIfBlocksChanged(hadMultipleBlocks);
+
+        Run<?, ?> run = recording ? getRun() : null;
+        int regressions = run != null ? CaseResult.computeFailedSince(run, failedTests) : -1;
+        // only the cases frozen now were looked up
+        regressionCount = firstFreeze ? regressions : -1;
+        // sorting computes failedSince of whatever is left, such as old test data without it
         failedTests.sort(CaseResult.BY_AGE);
 
         if (passedTests != null) {
@@ -1179,6 +1395,20 @@ public final class TestResult extends MetaTabulatedResult {
         }
     }
 
+    /**
+     * Case names include the names of their enclosing blocks once there are several blocks,
+     * so the names given to cases so far no longer apply when results from another block were added.
+     */
+    private void resetSafeNamesIfBlocksChanged(boolean hadMultipleBlocks) {
+        if (hadMultipleBlocks != hasMultipleBlocks()) {
+            for (PackageResult pr : byPackages.values()) {
+                for (ClassResult cr : pr.getChildren()) {
+                    cr.resetSafeNames();
+                }
+            }
+        }
+    }
+
     private void addSuiteByNode(SuiteResult s) {
         String nodeId = s.getNodeId();
 
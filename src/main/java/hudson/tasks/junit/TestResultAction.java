@@ -24,8 +24,11 @@
 package hudson.tasks.junit;
 
 import com.thoughtworks.xstream.XStream;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
 import hudson.Util;
 import hudson.XmlFile;
 import hudson.model.AbstractBuild;
@@ -34,6 +37,7 @@ import hudson.model.BuildListener;
 import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
 import hudson.tasks.test.AbstractTestResultAction;
 import hudson.tasks.test.TestObject;
 import hudson.tasks.test.TestResultProjectAction;
@@ -41,21 +45,32 @@ import hudson.util.HeapSpaceStringConverter;
 import hudson.util.XStream2;
 import io.jenkins.plugins.junit.storage.FileJunitTestResultStorage;
 import io.jenkins.plugins.junit.storage.JunitTestResultStorage;
+import io.jenkins.plugins.junit.storage.TestResultImpl;
+import io.jenkins.plugins.junit.storage.TestResultImplCache;
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.tasks.SimpleBuildStep;
 import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.StaplerProxy;
 
 /**
@@ -70,16 +85,45 @@ import org.kohsuke.stapler.StaplerProxy;
 @SuppressFBWarnings(value = "UG_SYNC_SET_UNSYNC_GET", justification = "False positive")
 public class TestResultAction extends AbstractTestResultAction<TestResultAction>
         implements StaplerProxy, SimpleBuildStep.LastBuildAction {
-    private transient WeakReference<TestResult> result;
+    private transient volatile WeakReference<TestResult> result;
 
-    /** null only if there is a {@link JunitTestResultStorage} */
+    /**
+     * The load of {@link #result} in progress, if any, which concurrent readers wait for instead of loading again.
+     */
+    private transient volatile FutureTask<TestResult> loading;
+
+    private transient volatile Thread loadingThread;
+
+    /**
+     * Published copy of the counts below, so that reading them never waits for the result to be loaded or saved.
+     */
+    private transient volatile Counts counts;
+
+    /** null only if recorded into a {@link JunitTestResultStorage} before counts were kept for it */
+    @SuppressFBWarnings(value = "IS2_INCONSISTENT_SYNC", justification = "Persisted form only, readers use counts")
     private @Nullable Integer failCount;
 
+    @SuppressFBWarnings(value = "IS2_INCONSISTENT_SYNC", justification = "Persisted form only, readers use counts")
     private @Nullable Integer skipCount;
     // Hudson < 1.25 didn't set these fields, so use Integer
     // so that we can distinguish between 0 tests vs not-computed-yet.
+    @SuppressFBWarnings(value = "IS2_INCONSISTENT_SYNC", justification = "Persisted form only, readers use counts")
     private @Nullable Integer totalCount;
+    /** In seconds; null if recorded before it was kept. */
+    @SuppressFBWarnings(value = "IS2_INCONSISTENT_SYNC", justification = "Persisted form only, readers use counts")
+    private @Nullable Float duration;
+    /**
+     * Number of tests that failed in this build but passed the last time they ran before,
+     * counted as results are recorded; null if not known yet.
+     */
+    private volatile @Nullable Integer regressionCount;
     private Double healthScaleFactor;
+    /**
+     * Number of results appended by {@link #mergeResult} as separate segment files
+     * next to {@code junitResult.xml}; null or 0 if everything is in that file.
+     * Segments only exist while the build is running, they are merged into that file once it completes.
+     */
+    private @Nullable Integer segments;
     private List<Data> testData = new ArrayList<>();
 
     @Deprecated
@@ -122,17 +166,20 @@ public class TestResultAction extends AbstractTestResultAction<TestResultAction>
      */
     public synchronized void setResult(TestResult result, TaskListener listener) {
         assert JunitTestResultStorage.find() instanceof FileJunitTestResultStorage;
-        result.freeze(this);
+        result.freeze(this, true);
 
-        totalCount = result.getTotalCount();
-        failCount = result.getFailCount();
-        skipCount = result.getSkipCount();
+        setCounts(result);
+        regressionCount = countRegressions(result);
+        save(result, listener);
+    }
 
+    private synchronized void save(TestResult result, TaskListener listener) {
         if (run != null) {
             // persist the data
             try {
                 resultCache.put(getDataFilePath(), new SoftReference<TestResult>(result));
                 getDataFile().write(result);
+                deleteSegments();
             } catch (IOException e) {
                 e.printStackTrace(listener.fatalError("Failed to save the JUnit test result"));
             }
@@ -141,6 +188,127 @@ public class TestResultAction extends AbstractTestResultAction<TestResultAction>
         this.result = new WeakReference<>(result);
     }
 
+    private synchronized void setCounts(TestResult result) {
+        totalCount = result.getTotalCount();
+        failCount = result.getFailCount();
+        skipCount = result.getSkipCount();
+        duration = result.getDuration();
+        counts = new Counts(totalCount, failCount, skipCount, duration);
+    }
+
+    /**
+     * Adds the counts of results published to a {@link JunitTestResultStorage},
+     * so that they can be read without loading the results back from it.
+     *
+     * @param result all results of this build in the storage, including those just published
+     */
+    synchronized void addSummary(TestResultSummary summary, TestResult result) {
+        Counts c = counts;
+        totalCount = (c == null ? 0 : c.total()) + summary.getTotalCount();
+        failCount = (c == null ? 0 : c.fail()) + summary.getFailCount();
+        skipCount = (c == null ? 0 : c.skip()) + summary.getSkipCount();
+        float d = summary.getDuration();
+        duration = c == null ? d : c.duration() < 0 || d < 0 ? -1 : c.duration() + d;
+        counts = new Counts(totalCount, failCount, skipCount, duration);
+        // counted as they are published, from the storage since tests are not looked up on the agent
+        TestResultImpl impl = result.getPluggableStorage();
+        regressionCount = impl == null ? null : countRegressions(impl);
+    }
+
+    /**
+     * Counts the failed tests that passed the last time they ran before.
+     * Results being recorded already know, from looking up since when their tests fail; others are checked per test.
+     */
+    static int countRegressions(TestResult result) {
+        TestResultImpl impl = result.getPluggableStorage();
+        if (impl != null) {
+            return countRegressions(impl);
+        }
+        int known = result.getRegressionCount();
+        if (known >= 0) {
+            return known;
+        }
+        Run<?, ?> run = result.getRun();
+        int regressions = 0;
+        for (CaseResult c : result.getFailedTests()) {
+            // tests that have been failing for longer are not looked up in previous builds
+            if ((run == null || c.getFailedSince() == run.getNumber())
+                    && c.getCondition() == CaseResult.Status.REGRESSION) {
+                regressions++;
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Counts the failed tests of results in a {@link JunitTestResultStorage} that passed in the previous build with
+     * results, going through the tests of both builds at once rather than looking up each test.
+     */
+    private static int countRegressions(TestResultImpl impl) {
+        List<CaseResult> failed = impl.getFailedTests();
+        if (failed.isEmpty()) {
+            return 0;
+        }
+        TestResult previous = impl.getPreviousResult();
+        if (previous == null) {
+            return 0;
+        }
+        Set<String> passed = new HashSet<>();
+        for (CaseResult c : previous.getPassedTests()) {
+            passed.add(c.getFullName());
+        }
+        int regressions = 0;
+        for (CaseResult c : failed) {
+            if (passed.contains(c.getFullName())) {
+                regressions++;
+            }
+        }
+        return regressions;
+    }
+
+    private int getSegmentCount() {
+        return segments == null ? 0 : segments;
+    }
+
+    private void deleteSegments() throws IOException {
+        for (int i = 1; i <= getSegmentCount(); i++) {
+            Files.deleteIfExists(getSegmentFile(i).getFile().toPath());
+        }
+        segments = null;
+    }
+
+    /**
+     * Rewrites {@code junitResult.xml} with the segments {@link #mergeResult} appended to it,
+     * so that a completed build keeps its whole result in that file, as earlier versions and other tools expect.
+     */
+    void compactSegments(TaskListener listener) {
+        if (run == null || getSegmentCount() == 0) {
+            return;
+        }
+        // not holding the lock while the result may still be loading
+        TestResult r = load();
+        if (r == null) {
+            return; // the segments are still read along with the file
+        }
+        synchronized (this) {
+            int count = getSegmentCount();
+            if (count == 0) {
+                return;
+            }
+            try {
+                getDataFile().write(r);
+                segments = null;
+                run.save();
+                // only once the build no longer refers to them
+                for (int i = 1; i <= count; i++) {
+                    Files.deleteIfExists(getSegmentFile(i).getFile().toPath());
+                }
+            } catch (IOException e) {
+                e.printStackTrace(listener.error("Failed to save the JUnit test result"));
+            }
+        }
+    }
+
     @Deprecated
     public void setResult(TestResult result, BuildListener listener) {
         setResult(result, (TaskListener) listener);
@@ -150,35 +318,70 @@ public class TestResultAction extends AbstractTestResultAction<TestResultAction>
         return new XmlFile(XSTREAM, new File(run.getRootDir(), "junitResult.xml"));
     }
 
+    private XmlFile getSegmentFile(int segment) {
+        return new XmlFile(XSTREAM, new File(run.getRootDir(), "junitResult-" + segment + ".xml"));
+    }
+
     private String getDataFilePath() {
         return Paths.get(run.getRootDir().getAbsolutePath(), "junitResult.xml").toString();
     }
 
     @Override
-    public synchronized TestResult getResult() {
-        long started = System.nanoTime();
+    public TestResult getResult() {
         JunitTestResultStorage storage = JunitTestResultStorage.find();
         if (!(storage instanceof FileJunitTestResultStorage)) {
-            TestResult result = new TestResult(storage.load(run.getParent().getFullName(), run.getNumber()));
+            TestResult result = new TestResult(
+                    TestResultImplCache.load(storage, run.getParent().getFullName(), run.getNumber()));
             result.setParentAction(this);
             return result;
         }
-        TestResult r;
-        if (result == null) {
-            r = load();
-            result = new WeakReference<>(r);
-        } else {
-            r = result.get();
+        while (true) {
+            WeakReference<TestResult> ref = result;
+            TestResult r = ref == null ? null : ref.get();
+            if (r != null) {
+                return r;
+            }
+            FutureTask<TestResult> task = loading;
+            if (task != null && loadingThread == Thread.currentThread()) {
+                return load(); // reentrant call while loading, waiting for ourselves would never return
+            }
+            if (task == null) {
+                FutureTask<TestResult> mine = new FutureTask<>(this::loadAndPublish);
+                if (!LOADING.compareAndSet(this, null, mine)) {
+                    continue; // somebody else just started loading
+                }
+                loadingThread = Thread.currentThread();
+                try {
+                    mine.run();
+                } finally {
+                    loadingThread = null;
+                    LOADING.compareAndSet(this, mine, null);
+                }
+                task = mine;
+            }
+            return awaitLoad(task);
         }
+    }
 
+    private TestResult loadAndPublish() {
+        long started = System.nanoTime();
+        WeakReference<TestResult> before = result;
+        TestResult r = load();
         if (r == null) {
-            r = load();
-            result = new WeakReference<>(r);
+            // remembered nowhere, so that the next request tries again
+            r = new TestResult();
+            r.freeze(this);
+            return r;
         }
-        if (totalCount == null) {
-            totalCount = r.getTotalCount();
-            failCount = r.getFailCount();
-            skipCount = r.getSkipCount();
+        synchronized (this) {
+            TestResult newer = result == before ? null : result.get();
+            if (newer != null) {
+                return newer; // set while we were loading
+            }
+            result = new WeakReference<>(r);
+            if (counts == null) {
+                setCounts(r);
+            }
         }
         long d = System.nanoTime() - started;
         if (d > TimeUnit.MILLISECONDS.toNanos(500)) {
@@ -187,40 +390,103 @@ public class TestResultAction extends AbstractTestResultAction<TestResultAction>
         return r;
     }
 
-    @Override
-    public synchronized int getFailCount() {
-        JunitTestResultStorage storage = JunitTestResultStorage.find();
-        if (!(storage instanceof FileJunitTestResultStorage)) {
-            return new TestResult(storage.load(run.getParent().getFullName(), run.getNumber())).getFailCount();
+    private static TestResult awaitLoad(FutureTask<TestResult> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
-        if (totalCount == null) {
-            getResult(); // this will compute the result
+    }
+
+    private Counts getCounts() {
+        Counts c = counts;
+        if (c == null) {
+            JunitTestResultStorage storage = JunitTestResultStorage.find();
+            if (!(storage instanceof FileJunitTestResultStorage)) {
+                // recorded before counts were kept for a storage
+                TestResultImpl impl =
+                        TestResultImplCache.load(storage, run.getParent().getFullName(), run.getNumber());
+                synchronized (this) {
+                    totalCount = impl.getTotalCount();
+                    failCount = impl.getFailCount();
+                    skipCount = impl.getSkipCount();
+                    c = counts = new Counts(totalCount, failCount, skipCount, -1);
+                }
+                saveLazilyCounted();
+                return c;
+            }
+            getResult(); // this will compute the counts
+            c = counts;
         }
-        return failCount;
+        return c;
     }
 
     @Override
-    public synchronized int getSkipCount() {
-        JunitTestResultStorage storage = JunitTestResultStorage.find();
-        if (!(storage instanceof FileJunitTestResultStorage)) {
-            return new TestResult(storage.load(run.getParent().getFullName(), run.getNumber())).getSkipCount();
-        }
-        if (totalCount == null) {
-            getResult(); // this will compute the result
-        }
-        return skipCount;
+    public int getFailCount() {
+        return getCounts().fail();
     }
 
     @Override
-    public synchronized int getTotalCount() {
-        JunitTestResultStorage storage = JunitTestResultStorage.find();
-        if (!(storage instanceof FileJunitTestResultStorage)) {
-            return new TestResult(storage.load(run.getParent().getFullName(), run.getNumber())).getTotalCount();
+    public int getSkipCount() {
+        return getCounts().skip();
+    }
+
+    @Override
+    public int getTotalCount() {
+        return getCounts().total();
+    }
+
+    /**
+     * Gets how long the tests took, in seconds.
+     */
+    public float getDuration() {
+        float d = getCounts().duration();
+        return d >= 0 ? d : getResult().getDuration();
+    }
+
+    /**
+     * Gets the number of tests that failed in this build but passed the last time they ran before.
+     * It is counted as results are recorded, so this only goes through the tests of builds recorded before that.
+     */
+    public int getRegressionCount() {
+        Integer c = regressionCount;
+        if (c == null) {
+            c = countRegressions(getResult());
+            regressionCount = c;
+            saveLazilyCounted();
         }
-        if (totalCount == null) {
-            getResult(); // this will compute the result
+        return c;
+    }
+
+    /**
+     * Saves what was counted for a build recorded before it was kept with it, so that it is counted only once.
+     */
+    private void saveLazilyCounted() {
+        if (run != null && !run.isBuilding()) {
+            try {
+                run.save();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to save " + run, e);
+            }
         }
-        return totalCount;
     }
 
     @Override
@@ -248,17 +514,137 @@ public class TestResultAction extends AbstractTestResultAction<TestResultAction>
         return getResult().getSkippedTests();
     }
 
+    /**
+     * Whether the counts of this build are known without loading its result,
+     * which is not the case of builds recorded by older versions until their result is loaded.
+     */
+    @Restricted(NoExternalUse.class)
+    public boolean hasCounts() {
+        return counts != null;
+    }
+
+    /**
+     * Reads the result of this build as recorded by the file storage, whatever storage is configured now,
+     * so that it can be imported into another one.
+     * That includes the segments appended by {@link #mergeResult} while the build is running.
+     *
+     * @return null if this build has no {@code junitResult.xml}, or it could not be read
+     */
+    @CheckForNull
+    @Restricted(NoExternalUse.class)
+    public TestResult loadFromFile() {
+        return getDataFile().exists() ? parseOnly() : null;
+    }
+
+    /**
+     * @return null if it could not be read
+     */
+    @CheckForNull
     private TestResult parseOnly() {
         XmlFile df = getDataFile();
-        TestResult r;
         try {
-            r = new TestResult();
+            TestResult r = new TestResult();
             r.parse(df);
+            for (int i = 1; i <= getSegmentCount(); i++) {
+                TestResult segment = new TestResult();
+                segment.parse(getSegmentFile(i));
+                r.addSegment(segment);
+            }
+            return r;
         } catch (Exception e) {
             logger.log(Level.WARNING, "Failed to load " + df, e);
-            r = new TestResult(); // return a dummy
+            return null;
+        }
+    }
+
+    /**
+     * Finds a test of this build without loading the whole result when it is not in memory already:
+     * only the cases of its class, or of its package, are read from disk.
+     */
+    @Override
+    public hudson.tasks.test.TestResult findCorrespondingResult(String id) {
+        if (TARGETED_LOOKUP_ENABLED && id != null && !isInMemory()) {
+            Predicate<String> classFilter = classFilter(id);
+            if (classFilter != null && JunitTestResultStorage.find() instanceof FileJunitTestResultStorage) {
+                TestResult partial = loadClasses(classFilter);
+                if (partial != null) {
+                    return partial.findCorrespondingResult(id);
+                }
+            }
+        }
+        return super.findCorrespondingResult(id);
+    }
+
+    /**
+     * Gets the result of this build as far as the cases of one class are concerned,
+     * reading only those when the result is not in memory.
+     */
+    @NonNull
+    TestResult getResultForClass(String className) {
+        if (TARGETED_LOOKUP_ENABLED
+                && !isInMemory()
+                && JunitTestResultStorage.find() instanceof FileJunitTestResultStorage) {
+            TestResult partial = loadClasses(className::equals);
+            if (partial != null) {
+                return partial;
+            }
+        }
+        return getResult();
+    }
+
+    private boolean isInMemory() {
+        WeakReference<TestResult> ref = result;
+        if ((ref != null && ref.get() != null) || loading != null) {
+            return true;
+        }
+        SoftReference<TestResult> cached = RESULT_CACHE_ENABLED ? resultCache.get(getDataFilePath()) : null;
+        return cached != null && cached.get() != null;
+    }
+
+    /**
+     * Matches the class names of the cases below the package or class with the given id.
+     *
+     * @return null if the id is that of a whole result, or not one of a {@link TestResult}
+     */
+    @CheckForNull
+    static Predicate<String> classFilter(String id) {
+        String[] parts = id.split("/", 4);
+        if (parts.length < 2 || !parts[0].equals("junit")) {
+            return null;
+        }
+        String packageName = parts[1];
+        String simpleName = parts.length > 2 ? parts[2] : null;
+        return className -> {
+            int idx = className.lastIndexOf('.');
+            return TestObject.safe(idx < 0 ? "(root)" : className.substring(0, idx))
+                            .equals(packageName)
+                    && (simpleName == null
+                            || TestObject.safe(className.substring(idx + 1)).equals(simpleName));
+        };
+    }
+
+    /**
+     * Reads the cases of some classes only, along with all suites.
+     * The counts of the result only cover those classes, so it must not be used beyond them.
+     *
+     * @return null if it could not be read
+     */
+    @CheckForNull
+    private TestResult loadClasses(Predicate<String> classFilter) {
+        try {
+            TestResult r = new TestResult();
+            r.parse(getDataFile(), classFilter);
+            for (int i = 1; i <= getSegmentCount(); i++) {
+                TestResult segment = new TestResult();
+                segment.parse(getSegmentFile(i), classFilter);
+                r.addSegment(segment);
+            }
+            r.freeze(this);
+            return r;
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Failed to read part of " + getDataFile() + ", loading all of it", e);
+            return null;
         }
-        return r;
     }
 
     static ConcurrentHashMap<String, SoftReference<TestResult>> resultCache = new ConcurrentHashMap<>();
@@ -272,10 +658,21 @@ public class TestResultAction extends AbstractTestResultAction<TestResultAction>
             SystemProperties.getInteger(TestResultAction.class.getName() + ".LARGE_RESULT_CACHE_THRESHOLD", 10000);
     static boolean RESULT_CACHE_ENABLED =
             SystemProperties.getBoolean(TestResultAction.class.getName() + ".RESULT_CACHE_ENABLED", true);
+    static boolean TARGETED_LOOKUP_ENABLED =
+            SystemProperties.getBoolean(TestResultAction.class.getName() + ".TARGETED_LOOKUP_ENABLED", true);
+    /**
+     * Number of results {@link #mergeResult} appends as segment files
+     * before rewriting {@code junitResult.xml} as a whole.
+     */
+    static int MAX_RESULT_SEGMENTS =
+            SystemProperties.getInteger(TestResultAction.class.getName() + ".MAX_RESULT_SEGMENTS", 50);
 
     /**
      * Loads a {@link TestResult} from cache or disk.
+     *
+     * @return null if it could not be read
      */
+    @CheckForNull
     private TestResult load() {
         if (RESULT_CACHE_ENABLED) {
             return loadCached();
@@ -286,13 +683,17 @@ public class TestResultAction extends AbstractTestResultAction<TestResultAction>
     /**
      * Loads a {@link TestResult} from disk, fallback.
      */
+    @CheckForNull
     private TestResult loadFallback() {
         TestResult r;
         try {
             r = (TestResult) getDataFile().read();
+            for (int i = 1; i <= getSegmentCount(); i++) {
+                r.addSegment((TestResult) getSegmentFile(i).read());
+            }
         } catch (IOException e) {
             logger.log(Level.WARNING, "Failed to load " + getDataFile(), e);
-            r = new TestResult(); // return a dummy
+            return null;
         }
         r.freeze(this);
         return r;
@@ -301,6 +702,7 @@ public class TestResultAction extends AbstractTestResultAction<TestResultAction>
     /**
      * Loads a {@link TestResult} from cache or disk, optimized.
      */
+    @CheckForNull
     private TestResult loadCached() {
         if (resultCache.size() > LARGE_RESULT_CACHE_THRESHOLD) {
             boolean doCleanup = false;
@@ -320,14 +722,21 @@ public class TestResultAction extends AbstractTestResultAction<TestResultAction>
                 });
             }
         }
-        TestResult r;
         String k = getDataFilePath();
-        r = resultCache
-                .computeIfAbsent(k, path -> new SoftReference<TestResult>(parseOnly()))
-                .get();
-        if (r == null) {
+        // results that could not be read are not cached, so that they are read again next time
+        SoftReference<TestResult> ref = resultCache.computeIfAbsent(k, path -> {
+            TestResult parsed = parseOnly();
+            return parsed == null ? null : new SoftReference<>(parsed);
+        });
+        TestResult r = ref == null ? null : ref.get();
+        if (r == null && ref != null) {
             r = parseOnly();
-            resultCache.replace(k, new SoftReference<TestResult>(r));
+            if (r != null) {
+                resultCache.replace(k, ref, new SoftReference<>(r));
+            }
+        }
+        if (r == null) {
+            return null;
         }
         r = new TestResult(r);
         r.freeze(this);
@@ -387,11 +796,38 @@ public class TestResultAction extends AbstractTestResultAction<TestResultAction>
 
     /**
      * Merges an additional test result into this one.
+     *
+     * <p>
+     * Only the additional result is counted and persisted, as a segment next to {@code junitResult.xml},
+     * until {@link #MAX_RESULT_SEGMENTS} segments have accumulated and the whole result is rewritten.
+     * It is rewritten anyway once the build completes, so that segments are never left behind.
      */
     public void mergeResult(TestResult additionalResult, TaskListener listener) {
+        // not holding the lock while the result may still be loading
         TestResult original = getResult();
-        original.merge(additionalResult);
-        setResult(original, listener);
+        synchronized (this) {
+            Integer before = regressionCount;
+            // only those of the additional result, unless they were never counted for this build
+            int regressions = before == null ? -1 : before + countRegressions(additionalResult);
+            original.merge(additionalResult);
+            setCounts(original);
+            regressionCount = regressions >= 0 ? regressions : countRegressions(original);
+            if (run == null || getSegmentCount() >= MAX_RESULT_SEGMENTS) {
+                save(original, listener);
+                return;
+            }
+
+            try {
+                resultCache.put(getDataFilePath(), new SoftReference<TestResult>(original));
+                int segment = getSegmentCount() + 1;
+                getSegmentFile(segment).write(additionalResult);
+                segments = segment;
+            } catch (IOException e) {
+                e.printStackTrace(listener.fatalError("Failed to save the JUnit test result"));
+            }
+
+            this.result = new WeakReference<>(original);
+        }
     }
 
     /**
@@ -418,14 +854,40 @@ public class TestResultAction extends AbstractTestResultAction<TestResultAction>
         if (testData == null) {
             testData = new ArrayList<>(0);
         }
+        if (totalCount != null && failCount != null && skipCount != null) {
+            counts = new Counts(totalCount, failCount, skipCount, duration != null ? duration : -1);
+        }
 
         return this;
     }
 
     public Widget getWidget() {
-        return new Widget(getResult());
+        return new Widget(this);
+    }
+
+    /**
+     * Merges the segments of results into {@code junitResult.xml} as builds complete.
+     */
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            TestResultAction action = run.getAction(TestResultAction.class);
+            if (action != null && JunitTestResultStorage.find() instanceof FileJunitTestResultStorage) {
+                action.compactSegments(listener);
+            }
+        }
     }
 
+    /**
+     * @param duration in seconds, or -1 if not known
+     */
+    private record Counts(int total, int fail, int skip, float duration) {}
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<TestResultAction, FutureTask> LOADING =
+            AtomicReferenceFieldUpdater.newUpdater(TestResultAction.class, FutureTask.class, "loading");
+
     private static final Logger logger = Logger.getLogger(TestResultAction.class.getName());
 
     static final XStream XSTREAM = new XStream2();
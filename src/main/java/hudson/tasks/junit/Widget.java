@@ -1,7 +1,9 @@
 package hudson.tasks.junit;
 
+import hudson.Util;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntSupplier;
 
 public class Widget {
 
@@ -9,9 +11,36 @@ public class Widget {
     private final List<String> lines = new ArrayList<>();
 
     public Widget(TestResult result) {
-        int failCount = result.getFailCount();
+        this(
+                result.getFailCount(),
+                result.getPassCount(),
+                result.getSkipCount(),
+                result.getTotalCount(),
+                () -> TestResultAction.countRegressions(result),
+                result.getDurationString());
+    }
+
+    /**
+     * Shows the counts kept by the action, without loading its test results.
+     */
+    Widget(TestResultAction action) {
+        this(
+                action.getFailCount(),
+                action.getTotalCount() - action.getFailCount() - action.getSkipCount(),
+                action.getSkipCount(),
+                action.getTotalCount(),
+                action::getRegressionCount,
+                Util.getTimeSpanString((long) (action.getDuration() * 1000)));
+    }
+
+    private Widget(
+            int failCount,
+            int passCount,
+            int skipCount,
+            int totalCount,
+            IntSupplier regressionCount,
+            String durationString) {
         boolean isFailed = failCount > 0;
-        int totalCount = result.getTotalCount();
 
         this.symbol = isFailed ? "symbol-status-red" : "symbol-status-blue";
 
@@ -19,19 +48,9 @@ public class Widget {
 
         if (isFailed) {
             lines.add(Messages.Widget_Failed(failCount));
-            counts.add(Messages.Widget_Passed(result.getPassCount()));
-
-            long regressions = result.getSuites().stream()
-                    .flatMap(e -> e.getCases().stream())
-                    .filter(e -> {
-                        var previousResult = e.getPreviousResult();
-                        if (previousResult == null) {
-                            return false;
-                        }
-                        return e.isPassed();
-                    })
-                    .count();
+            counts.add(Messages.Widget_Passed(passCount));
 
+            int regressions = regressionCount.getAsInt();
             if (regressions > 0) {
                 lines.add(Messages.Widget_Regression(regressions));
             }
@@ -40,15 +59,15 @@ public class Widget {
             lines.add(Messages.Widget_AllTestsPassing());
         }
 
-        if (result.getSkipCount() > 0) {
-            counts.add(Messages.Widget_Skipped(result.getSkipCount()));
+        if (skipCount > 0) {
+            counts.add(Messages.Widget_Skipped(skipCount));
         }
 
         counts.add(Messages.Widget_Total(totalCount));
 
         lines.add(String.join(", ", counts));
 
-        lines.add(Messages.Widget_Took(result.getDurationString()));
+        lines.add(Messages.Widget_Took(durationString));
     }
 
     public String getSymbol() {
@@ -36,6 +36,7 @@ import hudson.model.HealthReportingAction;
 import hudson.model.Project;
 import hudson.model.ResultTrend;
 import hudson.model.Run;
+import hudson.tasks.junit.HistoryCache;
 import hudson.util.Area;
 import hudson.util.ChartUtil;
 import hudson.util.ColorPalette;
@@ -189,14 +190,13 @@ public abstract class AbstractTestResultAction<T extends AbstractTestResultActio
 
     @Override
     public Badge getBadge() {
-        if (getFailCount() == 0) {
+        int failCount = getFailCount();
+        if (failCount == 0) {
             return null;
         }
 
         return new Badge(
-                String.valueOf(getFailCount()),
-                Messages.AbstractTestResultAction_Badge(getFailCount()),
-                Badge.Severity.DANGER);
+                String.valueOf(failCount), Messages.AbstractTestResultAction_Badge(failCount), Badge.Severity.DANGER);
     }
 
     @Override
@@ -353,21 +353,14 @@ public abstract class AbstractTestResultAction<T extends AbstractTestResultActio
             return;
         }
 
-        if (req.checkIfModified(run.getTimestamp(), rsp)) {
-            return;
-        }
-
-        ChartUtil.generateGraph(req, rsp, createChart(req, buildDataSet(req)), calcDefaultSize());
+        TrendGraphCache.serve(req, rsp, run, false, calcDefaultSize(), () -> createChart(req, buildDataSet(req)));
     }
 
     /**
      * Generates a clickable map HTML for {@link #doGraph(StaplerRequest, StaplerResponse)}.
      */
     public void doGraphMap(StaplerRequest req, StaplerResponse rsp) throws IOException {
-        if (req.checkIfModified(run.getTimestamp(), rsp)) {
-            return;
-        }
-        ChartUtil.generateClickableMap(req, rsp, createChart(req, buildDataSet(req)), calcDefaultSize());
+        TrendGraphCache.serve(req, rsp, run, true, calcDefaultSize(), () -> createChart(req, buildDataSet(req)));
     }
 
     /**
@@ -522,8 +515,19 @@ public abstract class AbstractTestResultAction<T extends AbstractTestResultActio
         return descriptions.get(object.getId());
     }
 
+    /**
+     * Like {@link #getDescription(TestObject)}, for a test object of this run that is known only by its id.
+     */
+    @Restricted(NoExternalUse.class)
+    public String lookUpDescription(String id) {
+        return descriptions.get(id);
+    }
+
     protected void setDescription(TestObject object, String description) {
         descriptions.put(object.getId(), description);
+        if (run != null) {
+            HistoryCache.invalidate(run);
+        }
     }
 
     public Object readResolve() {
@@ -558,35 +562,35 @@ public abstract class AbstractTestResultAction<T extends AbstractTestResultActio
             }
             Run prev = run.getPreviousBuild();
             AbstractTestResultAction<?> trP = prev == null ? null : prev.getAction(AbstractTestResultAction.class);
+            // only counts are compared, so neither result has to be loaded when they are kept with the build
+            int failN = trN.getFailCount();
             if (trP == null) {
-                if (trN.getFailCount() > 0) {
+                if (failN > 0) {
                     return new Run.Summary(
-                            worseOverride != null ? worseOverride : true,
-                            Messages.Run_Summary_TestFailures(trN.getFailCount()));
+                            worseOverride != null ? worseOverride : true, Messages.Run_Summary_TestFailures(failN));
                 }
             } else {
-                if (trN.getFailCount() != 0) {
-                    if (trP.getFailCount() == 0) {
+                if (failN != 0) {
+                    int failP = trP.getFailCount();
+                    if (failP == 0) {
                         return new Run.Summary(
                                 worseOverride != null ? worseOverride : true,
-                                Messages.Run_Summary_TestsStartedToFail(trN.getFailCount()));
+                                Messages.Run_Summary_TestsStartedToFail(failN));
                     }
-                    if (trP.getFailCount() < trN.getFailCount()) {
+                    if (failP < failN) {
                         return new Run.Summary(
                                 worseOverride != null ? worseOverride : true,
-                                Messages.Run_Summary_MoreTestsFailing(
-                                        trN.getFailCount() - trP.getFailCount(), trN.getFailCount()));
+                                Messages.Run_Summary_MoreTestsFailing(failN - failP, failN));
                     }
-                    if (trP.getFailCount() > trN.getFailCount()) {
+                    if (failP > failN) {
                         return new Run.Summary(
                                 worseOverride != null ? worseOverride : false,
-                                Messages.Run_Summary_LessTestsFailing(
-                                        trP.getFailCount() - trN.getFailCount(), trN.getFailCount()));
+                                Messages.Run_Summary_LessTestsFailing(failP - failN, failN));
                     }
 
                     return new Run.Summary(
                             worseOverride != null ? worseOverride : false,
-                            Messages.Run_Summary_TestsStillFailing(trN.getFailCount()));
+                            Messages.Run_Summary_TestsStillFailing(failN));
                 }
             }
             return null;
@@ -0,0 +1,97 @@
+package hudson.tasks.test;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * The last completed build of each job that has test results, so that finding it does not go through
+ * the builds without test results that came after it.
+ *
+ * <p>
+ * It is looked for once per job after a restart, then kept current as builds complete or are deleted.
+ */
+@Restricted(NoExternalUse.class)
+public final class LastTestResultBuild {
+
+    static boolean DISABLED = SystemProperties.getBoolean(LastTestResultBuild.class.getName() + ".DISABLED", false);
+
+    /**
+     * Number of the build of each job, 0 if the job has none.
+     */
+    private static final Map<Job<?, ?>, Integer> numbers = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private LastTestResultBuild() {}
+
+    /**
+     * Gets the test results of the last completed build of a job that has some.
+     */
+    @CheckForNull
+    public static AbstractTestResultAction<?> getAction(@NonNull Job<?, ?> job) {
+        if (DISABLED) {
+            return find(job);
+        }
+        Integer number = numbers.get(job);
+        if (number != null) {
+            if (number == 0) {
+                return null;
+            }
+            Run<?, ?> run = job.getBuildByNumber(number);
+            AbstractTestResultAction<?> action = run == null ? null : run.getAction(AbstractTestResultAction.class);
+            if (action != null) {
+                return action;
+            }
+        }
+        AbstractTestResultAction<?> action = find(job);
+        int found = action == null ? 0 : action.run.getNumber();
+        // a build may have completed meanwhile
+        numbers.merge(job, found, Math::max);
+        return action;
+    }
+
+    @CheckForNull
+    private static AbstractTestResultAction<?> find(Job<?, ?> job) {
+        /*
+        Any build with test results should be considered.
+        Nowadays pipeline builds can be failed, even though just a substage failed, whereas other stages do produce test results.
+        Using UNSTABLE is not feasible for this, as that does not mark a build as containing a failure for other systems that list the Jenkins builds externally.
+        */
+        for (Run<?, ?> b = job.getLastBuild(); b != null; b = b.getPreviousBuild()) {
+            AbstractTestResultAction<?> a = b.getAction(AbstractTestResultAction.class);
+            if (a != null && !b.isBuilding()) {
+                return a;
+            }
+        }
+        return null;
+    }
+
+    static void clear() {
+        numbers.clear();
+    }
+
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            if (run.getAction(AbstractTestResultAction.class) != null) {
+                // jobs not looked at since a restart are left for getAction to look through
+                numbers.computeIfPresent(run.getParent(), (job, number) -> Math.max(number, run.getNumber()));
+            }
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            numbers.computeIfPresent(run.getParent(), (job, number) -> number == run.getNumber() ? null : number);
+        }
+    }
+}
@@ -99,6 +99,14 @@ public abstract class TestObject extends hudson.tasks.junit.TestObject {
         return id;
     }
 
+    /**
+     * Forgets the cached {@link #getId()}, for when the safe name it is built from has changed.
+     */
+    @Restricted(NoExternalUse.class)
+    protected final void resetId() {
+        id = null;
+    }
+
     @Override
     public String getUrl() {
         return getRun().getUrl() + getTestResultAction().getUrlName() + "/" + getId();
@@ -8,11 +8,11 @@ import hudson.tasks.junit.HistoryTestResultSummary;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 public class TestObjectIterable implements Iterable<BuildResult<TestObject>> {
     private final TestObject latestAction;
-    private final List<TestObject> items;
+    private final List<HistoryTestResultSummary> results;
 
     /**
      * Creates a new iterator that selects action of the given type {@code actionType}.
@@ -22,31 +22,35 @@ public class TestObjectIterable implements Iterable<BuildResult<TestObject>> {
      */
     public TestObjectIterable(final TestObject baseline) {
         this.latestAction = baseline;
-        this.items = null;
+        this.results = null;
     }
 
+    /**
+     * Iterates over the builds of a history, looking up the test object in each build only as it is iterated to.
+     */
     public TestObjectIterable(final TestObject baseline, List<HistoryTestResultSummary> results) {
         this.latestAction = baseline;
-        this.items = results.stream()
-                .map(r -> (TestObject) baseline.getResultInRun(r.getRun()))
-                .filter(r -> r != null)
-                .collect(Collectors.toList());
+        this.results = results;
     }
 
     @NonNull
     @Override
     public Iterator<BuildResult<TestObject>> iterator() {
-        if (items == null) {
+        if (results == null) {
             return new TestResultActionIterator(latestAction);
         }
-        return items.stream()
-                .map(t -> {
+        return results.stream()
+                .map(r -> {
+                    TestObject t = (TestObject) latestAction.getResultInRun(r.getRun());
+                    if (t == null) {
+                        return null;
+                    }
                     Run<?, ?> run = t.getRun();
                     int buildTimeInSeconds = (int) (run.getTimeInMillis() / 1000);
                     Build build = new Build(run.getNumber(), run.getDisplayName(), buildTimeInSeconds);
                     return new BuildResult<>(build, t);
                 })
-                .collect(Collectors.toList())
+                .filter(Objects::nonNull)
                 .iterator();
     }
 
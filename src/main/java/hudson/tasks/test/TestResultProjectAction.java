@@ -31,6 +31,7 @@ import hudson.model.AbstractProject;
 import hudson.model.Action;
 import hudson.model.Job;
 import hudson.model.Run;
+import hudson.tasks.junit.FlakinessIndex;
 import hudson.tasks.junit.JUnitResultArchiver;
 import hudson.tasks.junit.TrendTestResultSummary;
 import io.jenkins.plugins.echarts.AsyncConfigurableTrendChart;
@@ -38,16 +39,23 @@ import io.jenkins.plugins.echarts.AsyncTrendChart;
 import io.jenkins.plugins.junit.storage.FileJunitTestResultStorage;
 import io.jenkins.plugins.junit.storage.JunitTestResultStorage;
 import io.jenkins.plugins.junit.storage.TestResultImpl;
+import io.jenkins.plugins.junit.storage.TestResultImplCache;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.Ancestor;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerRequest2;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.StaplerResponse2;
 import org.kohsuke.stapler.bind.JavaScriptMethod;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ObjectNode;
 
 /**
  * Project action object from test reporter, such as {@link JUnitResultArchiver},
@@ -60,6 +68,7 @@ import org.kohsuke.stapler.bind.JavaScriptMethod;
  */
 public class TestResultProjectAction implements Action, AsyncTrendChart, AsyncConfigurableTrendChart {
     private static final JacksonFacade JACKSON_FACADE = new JacksonFacade();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
 
     /**
      * Project that owns this action.
@@ -102,21 +111,7 @@ public class TestResultProjectAction implements Action, AsyncTrendChart, AsyncCo
     }
 
     public AbstractTestResultAction getLastTestResultAction() {
-        /*
-        Any build with test results should be considered.
-        Nowadays pipeline builds can be failed, even though just a substage failed, whereas other stages do produce test results.
-        Using UNSTABLE is not feasible for this, as that does not mark a build as containing a failure for other systems that list the Jenkins builds externally.
-        */
-        Run<?, ?> b = job.getLastBuild();
-        while (b != null) {
-            AbstractTestResultAction a = b.getAction(AbstractTestResultAction.class);
-            if (a != null && (!b.isBuilding())) {
-                return a;
-            }
-            b = b.getPreviousBuild();
-        }
-
-        return null;
+        return LastTestResultBuild.getAction(job);
     }
 
     @Deprecated
@@ -130,8 +125,8 @@ public class TestResultProjectAction implements Action, AsyncTrendChart, AsyncCo
 
         JunitTestResultStorage storage = JunitTestResultStorage.find();
         if (!(storage instanceof FileJunitTestResultStorage)) {
-            TestResultImpl pluggableStorage =
-                    storage.load(lastCompletedBuild.getParent().getFullName(), lastCompletedBuild.getNumber());
+            TestResultImpl pluggableStorage = TestResultImplCache.load(
+                    storage, lastCompletedBuild.getParent().getFullName(), lastCompletedBuild.getNumber());
             List<TrendTestResultSummary> summary = pluggableStorage.getTrendTestResultSummary();
             if (summary.isEmpty()) {
                 return new LinesChartModel();
@@ -139,6 +134,15 @@ public class TestResultProjectAction implements Action, AsyncTrendChart, AsyncCo
             return new TestResultTrendChart().create(summary, passedColor);
         }
 
+        TestResultTrendStore trend = TestResultTrendStore.isEnabled() ? TestResultTrendStore.of(job) : null;
+        // while the store is filled in, from the builds as before
+        if (trend != null && trend.isReady()) {
+            if (trend.isEmpty()) {
+                return new LinesChartModel();
+            }
+            return new TestResultTrendChart().createFromTrend(trend.getBuildResults(), configuration, passedColor);
+        }
+
         TestResultActionIterable buildHistory = createBuildHistory(lastCompletedBuild);
         if (buildHistory == null) {
             return new LinesChartModel();
@@ -153,16 +157,9 @@ public class TestResultProjectAction implements Action, AsyncTrendChart, AsyncCo
         if (lastCompletedBuild == null) {
             return null;
         }
-        AbstractTestResultAction<?> action = lastCompletedBuild.getAction(AbstractTestResultAction.class);
+        AbstractTestResultAction<?> action = LastTestResultBuild.getAction(job);
         if (action == null) {
-            Run<?, ?> currentBuild = lastCompletedBuild;
-            while (action == null) {
-                currentBuild = currentBuild.getPreviousBuild();
-                if (currentBuild == null) {
-                    return null;
-                }
-                action = currentBuild.getAction(AbstractTestResultAction.class);
-            }
+            return null;
         }
         return new TestResultActionIterable(action);
     }
@@ -230,6 +227,32 @@ public class TestResultProjectAction implements Action, AsyncTrendChart, AsyncCo
 
     private static final String FAILURE_ONLY_COOKIE = "TestResultAction_failureOnly";
 
+    /**
+     * Lists the flakiest tests of the job as JSON, flakiest first.
+     *
+     * @param top maximum number of tests to list, 20 by default
+     */
+    @Restricted(NoExternalUse.class)
+    public void doFlaky(final StaplerResponse2 rsp, @QueryParameter final int top) throws IOException {
+        ArrayNode tests = MAPPER.createArrayNode();
+        for (FlakinessIndex.Flakiness f : FlakinessIndex.of(job).top(top > 0 ? top : 20)) {
+            ObjectNode test = tests.addObject();
+            test.put("id", f.id());
+            test.put("name", f.name());
+            test.put("url", job.getUrl() + f.lastBuild() + "/testReport/" + f.id());
+            test.put("flakiness", f.flakiness());
+            test.put("recentRuns", f.recentRuns());
+            test.put("flips", f.flips());
+            test.put("runs", f.runs());
+            test.put("failures", f.failures());
+            test.put("flakyFailures", f.flakyFailures());
+            test.put("rerunFailures", f.rerunFailures());
+            test.put("lastBuild", f.lastBuild());
+        }
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getOutputStream().write(MAPPER.writeValueAsBytes(tests));
+    }
+
     @Override
     @Deprecated
     public String getBuildTrendModel() {
@@ -239,12 +262,28 @@ public class TestResultProjectAction implements Action, AsyncTrendChart, AsyncCo
     @JavaScriptMethod
     @Override
     public String getConfigurableBuildTrendModel(final String configuration) {
+        return TrendChartCache.get(job, "trend", configuration, () -> computeBuildTrendModel(configuration));
+    }
+
+    private String computeBuildTrendModel(final String configuration) {
         TestResultTrendChart.PassedColor useBlue = JACKSON_FACADE.getBoolean(configuration, "useBlue", false)
                 ? TestResultTrendChart.PassedColor.BLUE
                 : TestResultTrendChart.PassedColor.GREEN;
         return new JacksonFacade().toJson(createChartModel(ChartModelConfiguration.fromJson(configuration), useBlue));
     }
 
+    /**
+     * Serves the same model as {@link #getConfigurableBuildTrendModel} to plain HTTP GET requests,
+     * which can be made conditional on the chart having changed.
+     */
+    @Restricted(NoExternalUse.class)
+    public void doTrendModel(
+            final StaplerRequest2 req, final StaplerResponse2 rsp, @QueryParameter final String configuration)
+            throws IOException {
+        String config = configuration != null ? configuration : "{}";
+        TrendChartCache.serve(req, rsp, job, "trend", config, () -> computeBuildTrendModel(config));
+    }
+
     @Override
     public boolean isTrendVisible() {
         return true;
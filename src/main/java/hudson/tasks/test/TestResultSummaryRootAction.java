@@ -0,0 +1,158 @@
+package hudson.tasks.test;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.Extension;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.RootAction;
+import hudson.tasks.junit.TestResultAction;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.verb.GET;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Latest test result counts of many jobs in one request, for dashboards that would otherwise ask each job.
+ *
+ * <p>
+ * {@code GET /junit-summary/?job=a&job=folder/b} lists the given jobs, and {@code ?folder=folder} all jobs
+ * within a folder, both of them only as far as the user may read them, and no more than {@link #MAX_JOBS} of them;
+ * {@code truncated} tells when some were left out. Counts are read from the {@link TestResultTrendStore} of each
+ * job, so no test result is loaded, and the response is written as the jobs are gone through.
+ * Jobs whose store is not filled in yet have their counts read from their last build with test results instead,
+ * rather than having the store filled in for the request; they are listed without counts only if that build
+ * predates counts being kept with the build, so that its test results would have to be loaded.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class TestResultSummaryRootAction implements RootAction {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Number of jobs listed at most per request.
+     */
+    static int MAX_JOBS = SystemProperties.getInteger(TestResultSummaryRootAction.class.getName() + ".MAX_JOBS", 500);
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "junit-summary";
+    }
+
+    @GET
+    public void doIndex(StaplerRequest2 req, StaplerResponse2 rsp) throws IOException {
+        Jenkins jenkins = Jenkins.get();
+        // items the user may not read are left out as if they did not exist
+        Set<Job<?, ?>> jobs = new LinkedHashSet<>();
+        boolean truncated = false;
+        String[] names = req.getParameterValues("job");
+        if (names != null) {
+            for (String name : names) {
+                Job<?, ?> job = jenkins.getItemByFullName(name, Job.class);
+                if (job == null) {
+                    continue;
+                }
+                if (jobs.size() >= MAX_JOBS) {
+                    truncated = true;
+                    break;
+                }
+                jobs.add(job);
+            }
+        }
+        String folder = req.getParameter("folder");
+        if (folder != null && !truncated) {
+            Object group = folder.isEmpty() ? jenkins : jenkins.getItemByFullName(folder);
+            if (group instanceof ItemGroup<?> g) {
+                // going through the items lazily, so as to stop at the limit
+                for (Job<?, ?> job : g.allItems(Job.class)) {
+                    if (jobs.size() >= MAX_JOBS) {
+                        truncated = true;
+                        break;
+                    }
+                    jobs.add(job);
+                }
+            }
+        }
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.setHeader("Cache-Control", "private, no-cache");
+        try (JsonGenerator out = MAPPER.createGenerator(rsp.getOutputStream())) {
+            out.writeStartObject();
+            out.writeName("jobs");
+            out.writeStartArray();
+            for (Job<?, ?> job : jobs) {
+                write(out, job);
+                // let the dashboard see the first jobs while the others are gone through
+                out.flush();
+            }
+            out.writeEndArray();
+            out.writeName("truncated");
+            out.writeBoolean(truncated);
+            out.writeEndObject();
+        }
+    }
+
+    private static void write(JsonGenerator out, Job<?, ?> job) {
+        out.writeStartObject();
+        out.writeName("name");
+        out.writeString(job.getFullName());
+        out.writeName("url");
+        out.writeString(job.getUrl());
+        Summary summary = summarize(job);
+        if (summary != null) {
+            out.writeName("build");
+            out.writeNumber(summary.build());
+            out.writeName("total");
+            out.writeNumber(summary.total());
+            out.writeName("failed");
+            out.writeNumber(summary.failed());
+            out.writeName("skipped");
+            out.writeNumber(summary.skipped());
+            out.writeName("passed");
+            out.writeNumber(summary.total() - summary.failed() - summary.skipped());
+        }
+        out.writeEndObject();
+    }
+
+    private record Summary(int build, int total, int failed, int skipped) {}
+
+    /**
+     * @return null if the job has no build with test results, or none whose counts can be read without loading them
+     */
+    @CheckForNull
+    private static Summary summarize(Job<?, ?> job) {
+        if (TestResultTrendStore.isEnabled()) {
+            TestResultTrendStore store = TestResultTrendStore.ofIfReady(job);
+            if (store != null) {
+                TestResultTrendStore.Point point = store.getLatest();
+                return point == null
+                        ? null
+                        : new Summary(point.number(), point.getTotalCount(), point.failCount(), point.skipCount());
+            }
+        }
+        AbstractTestResultAction<?> action = LastTestResultBuild.getAction(job);
+        if (action == null || (action instanceof TestResultAction a && !a.hasCounts())) {
+            return null;
+        }
+        return new Summary(
+                action.run.getNumber(), action.getTotalCount(), action.getFailCount(), action.getSkipCount());
+    }
+}
@@ -1,13 +1,22 @@
 package hudson.tasks.test;
 
+import edu.hm.hafner.echarts.Build;
+import edu.hm.hafner.echarts.BuildResult;
 import edu.hm.hafner.echarts.ChartModelConfiguration;
 import edu.hm.hafner.echarts.LineSeries;
 import edu.hm.hafner.echarts.LinesChartModel;
 import edu.hm.hafner.echarts.LinesDataSet;
+import edu.hm.hafner.echarts.SeriesBuilder;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Run;
+import hudson.tasks.junit.HistoryTestResultSummary;
 import hudson.tasks.junit.TrendTestResultSummary;
 import io.jenkins.plugins.echarts.JenkinsPalette;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 public class TestResultTrendChart {
     enum PassedColor {
@@ -40,6 +49,37 @@ public class TestResultTrendChart {
         return getLinesChartModel(dataSet, passedColor);
     }
 
+    LinesChartModel createFromTrend(
+            final List<BuildResult<TestResultTrendStore.Point>> results,
+            final ChartModelConfiguration configuration,
+            final PassedColor passedColor) {
+        LinesDataSet dataSet = new TestResultTrendStore.PointSeriesBuilder().createDataSet(configuration, results);
+
+        return getLinesChartModel(dataSet, passedColor);
+    }
+
+    /**
+     * Creates the trend of a test object from the counts its history already has for each build,
+     * so that the test object does not have to be looked up in each of them.
+     *
+     * @param history newest first
+     */
+    @Restricted(NoExternalUse.class)
+    public LinesChartModel createFromHistory(
+            @NonNull final List<HistoryTestResultSummary> history, final ChartModelConfiguration configuration) {
+        Iterable<BuildResult<HistoryTestResultSummary>> results = () -> history.stream()
+                .map(summary -> {
+                    Run<?, ?> run = summary.getRun();
+                    Build build =
+                            new Build(run.getNumber(), run.getDisplayName(), (int) (run.getTimeInMillis() / 1000));
+                    return new BuildResult<>(build, summary);
+                })
+                .iterator();
+        LinesDataSet dataSet = new HistorySeriesBuilder().createDataSet(configuration, results);
+
+        return getLinesChartModel(dataSet, PassedColor.GREEN);
+    }
+
     public LinesChartModel createFromTestObject(final Iterable results, final ChartModelConfiguration configuration) {
         return createFromTestObject(results, configuration, PassedColor.GREEN);
     }
@@ -74,4 +114,16 @@ public class TestResultTrendChart {
 
         return model;
     }
+
+    private static class HistorySeriesBuilder extends SeriesBuilder<HistoryTestResultSummary> {
+        @Override
+        protected Map<String, Integer> computeSeries(HistoryTestResultSummary summary) {
+            Map<String, Integer> series = new HashMap<>();
+            series.put(TestResultTrendSeriesBuilder.TOTALS_KEY, summary.getTotalCount());
+            series.put(TestResultTrendSeriesBuilder.PASSED_KEY, summary.getPassCount());
+            series.put(TestResultTrendSeriesBuilder.FAILED_KEY, summary.getFailCount());
+            series.put(TestResultTrendSeriesBuilder.SKIPPED_KEY, summary.getSkipCount());
+            return series;
+        }
+    }
 }
@@ -0,0 +1,494 @@
+package hudson.tasks.test;
+
+import edu.hm.hafner.echarts.Build;
+import edu.hm.hafner.echarts.BuildResult;
+import edu.hm.hafner.echarts.SeriesBuilder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.tasks.junit.HistoryIndex;
+import hudson.tasks.junit.SidecarStore;
+import hudson.tasks.junit.TestResultAction;
+import hudson.util.AtmostOneThreadExecutor;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import io.jenkins.plugins.junit.storage.FileJunitTestResultStorage;
+import io.jenkins.plugins.junit.storage.JunitTestResultStorage;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Counts and duration of the test results of the builds of a job, updated as builds complete or are deleted,
+ * so that the trend chart of the job does not need to load any build.
+ *
+ * <p>
+ * Points are appended to {@code junit-history/trend.bin} in the job directory as builds complete. The file is
+ * rewritten a little after builds are deleted, or once it holds twice {@link #CAPACITY} points, keeping the newest
+ * ones. Only the stores of recently used jobs are kept in memory, by a {@link SidecarStore}.
+ * For jobs with builds from before the store existed, it is filled in from those builds in the background the first
+ * time it is used, and is not {@link #isReady() ready} until then. Only builds whose counts were kept with them are
+ * filled in, so that no test result is loaded.
+ */
+@Restricted(NoExternalUse.class)
+public final class TestResultTrendStore {
+
+    private static final Logger LOGGER = Logger.getLogger(TestResultTrendStore.class.getName());
+
+    static boolean DISABLED = SystemProperties.getBoolean(TestResultTrendStore.class.getName() + ".DISABLED", false);
+
+    /**
+     * Number of builds kept, newest first.
+     */
+    static int CAPACITY = SystemProperties.getInteger(TestResultTrendStore.class.getName() + ".CAPACITY", 10_000);
+
+    private static final int MAGIC = 0x4A555452; // JUTR
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "trend.bin";
+
+    /**
+     * Only creates the trend of a job, which is read when it is first used, so that it can be filled in instead.
+     */
+    private static final SidecarStore<TestResultTrendStore> store = new SidecarStore<>(
+            FILE_NAME, "test result trend", TestResultTrendStore::new, (s, file) -> {}, (s, file) -> s.save());
+
+    /**
+     * Fills in stores one at a time, so that first visits to many jobs do not go through all their builds at once.
+     */
+    private static final ExecutorService filler =
+            new AtmostOneThreadExecutor(new NamingThreadFactory(new DaemonThreadFactory(), "junit-trend-fill"));
+
+    private final File file;
+    private final TreeMap<Integer, Point> points = new TreeMap<>();
+    /**
+     * Number of points in the file, including those of builds that were trimmed since.
+     */
+    private int written;
+    /**
+     * When the points last changed, in milliseconds; it increases with every change, so that it identifies them.
+     */
+    private long lastModified;
+    private boolean initialized;
+    /**
+     * Whether the points were loaded, or filled in from the builds.
+     */
+    private boolean ready;
+    /**
+     * Builds deleted while the points were being filled in, which must not be filled in.
+     */
+    private final Set<Integer> deleted = new HashSet<>();
+
+    TestResultTrendStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets the trend of a job, loading it on first use.
+     */
+    @NonNull
+    public static TestResultTrendStore of(@NonNull Job<?, ?> job) {
+        TestResultTrendStore trend = store.get(job);
+        // only holding the lock of this job while reading its file
+        trend.init(job);
+        return trend;
+    }
+
+    private synchronized void init(Job<?, ?> job) {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        try {
+            if (!load()) {
+                filler.submit(() -> fill(job));
+                return;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load test result trend of " + job, e);
+        }
+        ready = true;
+    }
+
+    /**
+     * Gets the trend of a job if it can be read right away, without it being filled in from the builds of the job.
+     *
+     * @return null if the job has no trend store yet, or it is being filled in
+     */
+    @CheckForNull
+    public static TestResultTrendStore ofIfReady(@NonNull Job<?, ?> job) {
+        if (!store.isResident(job) && !store.getFile(job).exists()) {
+            return null;
+        }
+        TestResultTrendStore trend = of(job);
+        return trend.isReady() ? trend : null;
+    }
+
+    /**
+     * Gets the trend of a job once it is filled in.
+     */
+    @NonNull
+    static TestResultTrendStore awaitReady(@NonNull Job<?, ?> job) throws InterruptedException {
+        TestResultTrendStore trend = of(job);
+        synchronized (trend) {
+            while (!trend.ready) {
+                trend.wait();
+            }
+        }
+        return trend;
+    }
+
+    /**
+     * Writes the trends of all jobs with changes waiting to be written.
+     */
+    static void flush() {
+        store.flush();
+    }
+
+    static void clear() {
+        store.clear();
+    }
+
+    /**
+     * Whether the trend can be shown from this store rather than from the builds.
+     */
+    static boolean isEnabled() {
+        return !DISABLED && JunitTestResultStorage.find() instanceof FileJunitTestResultStorage;
+    }
+
+    /**
+     * Counts and duration of the test results of one build.
+     *
+     * @param displayName the display name of the build, null if it is the default one
+     * @param duration in seconds, or -1 if not known
+     */
+    public record Point(
+            int number,
+            @CheckForNull String displayName,
+            long timestamp,
+            int passCount,
+            int failCount,
+            int skipCount,
+            float duration) {
+
+        static Point of(Run<?, ?> run, AbstractTestResultAction<?> action, float duration) {
+            String displayName = run.getDisplayName();
+            return new Point(
+                    run.getNumber(),
+                    displayName.equals("#" + run.getNumber()) ? null : displayName,
+                    run.getTimeInMillis(),
+                    action.getTotalCount() - action.getFailCount() - action.getSkipCount(),
+                    action.getFailCount(),
+                    action.getSkipCount(),
+                    duration);
+        }
+
+        public int getTotalCount() {
+            return passCount + failCount + skipCount;
+        }
+
+        @NonNull
+        public String getDisplayName() {
+            return displayName != null ? displayName : "#" + number;
+        }
+
+        Build toBuild() {
+            return new Build(number, getDisplayName(), (int) (timestamp / 1000));
+        }
+    }
+
+    /**
+     * Whether the points cover all builds of the job.
+     * A store is not ready while it is being filled in from the builds that completed before it existed.
+     */
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * When the points last changed, so that what is computed from them can be cached until then.
+     */
+    public synchronized long getLastModified() {
+        return lastModified;
+    }
+
+    private void touch() {
+        lastModified = Math.max(lastModified + 1, System.currentTimeMillis());
+    }
+
+    /**
+     * Whether no build has test results.
+     */
+    public synchronized boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    /**
+     * Gets the point of the last build with test results.
+     */
+    @CheckForNull
+    public synchronized Point getLatest() {
+        Map.Entry<Integer, Point> last = points.lastEntry();
+        return last != null ? last.getValue() : null;
+    }
+
+    /**
+     * Gets the point of a build.
+     *
+     * @return null if the build has no test results, or is older than the points kept
+     */
+    @CheckForNull
+    public synchronized Point getPoint(int number) {
+        return points.get(number);
+    }
+
+    /**
+     * Gets the points of the trend, newest first.
+     */
+    @NonNull
+    public synchronized List<Point> getPoints() {
+        return new ArrayList<>(points.descendingMap().values());
+    }
+
+    /**
+     * Gets the points of the trend, newest first, as the builds a {@link SeriesBuilder} expects.
+     */
+    @NonNull
+    public List<BuildResult<Point>> getBuildResults() {
+        List<BuildResult<Point>> results = new ArrayList<>();
+        for (Point point : getPoints()) {
+            results.add(new BuildResult<>(point.toBuild(), point));
+        }
+        return results;
+    }
+
+    /**
+     * @return the duration of a test object in a build, or -1 if the index does not have it
+     */
+    private static float indexedDuration(HistoryIndex index, int number, String id) {
+        try {
+            HistoryIndex.Row row = index.find(number, id);
+            return row != null ? row.duration() : -1;
+        } catch (IOException e) {
+            return -1; // not indexed
+        }
+    }
+
+    synchronized void add(@NonNull Point point) {
+        points.put(point.number(), point);
+        while (points.size() > CAPACITY) {
+            points.pollFirstEntry();
+        }
+        touch();
+        if (!ready) {
+            return; // saved once filled in
+        }
+        try {
+            if (written >= 2 * CAPACITY) {
+                save();
+            } else {
+                append(point);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save test result trend " + file, e);
+        }
+    }
+
+    /**
+     * @return whether the file needs to be rewritten
+     */
+    synchronized boolean remove(int number) {
+        if (!ready) {
+            deleted.add(number);
+        }
+        if (points.remove(number) != null) {
+            touch();
+            return ready; // otherwise saved once filled in
+        }
+        return false;
+    }
+
+    /**
+     * Adds the builds of a job that completed before the store existed, without holding up those that complete
+     * or are deleted meanwhile.
+     */
+    private void fill(Job<?, ?> job) {
+        Map<Integer, Point> filled = new HashMap<>();
+        try {
+            HistoryIndex index = HistoryIndex.of(job);
+            for (Run<?, ?> run = job.getLastBuild();
+                    run != null && filled.size() < CAPACITY;
+                    run = run.getPreviousBuild()) {
+                if (run.isBuilding()) {
+                    continue;
+                }
+                AbstractTestResultAction<?> action = run.getAction(AbstractTestResultAction.class);
+                if (action == null || (action instanceof TestResultAction a && !a.hasCounts())) {
+                    continue; // not loading its result to count it
+                }
+                // nor just for its duration
+                float duration =
+                        action instanceof TestResultAction ? indexedDuration(index, run.getNumber(), "junit") : -1;
+                filled.put(run.getNumber(), Point.of(run, action, duration));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to fill in test result trend of " + job, e);
+        }
+        synchronized (this) {
+            // builds that completed meanwhile are already there
+            filled.keySet().removeAll(deleted);
+            deleted.clear();
+            filled.forEach(points::putIfAbsent);
+            while (points.size() > CAPACITY) {
+                points.pollFirstEntry();
+            }
+            touch();
+            ready = true;
+            notifyAll();
+            try {
+                save();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to save test result trend " + file, e);
+            }
+        }
+    }
+
+    /**
+     * @return false if nothing was stored yet
+     */
+    synchronized boolean load() throws IOException {
+        boolean found = SidecarStore.read(file, MAGIC, VERSION, (in, version) -> {
+            while (true) {
+                Point point;
+                try {
+                    point = read(in);
+                } catch (EOFException e) {
+                    break; // including what a crash left half-written
+                }
+                points.put(point.number(), point);
+                written++;
+            }
+        });
+        if (!found) {
+            return false;
+        }
+        while (points.size() > CAPACITY) {
+            points.pollFirstEntry();
+        }
+        lastModified = file.lastModified();
+        return true;
+    }
+
+    private synchronized void append(Point point) throws IOException {
+        if (!file.exists()) {
+            save();
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file.toPath(), StandardOpenOption.APPEND)))) {
+            write(out, point);
+        }
+        written++;
+    }
+
+    synchronized void save() throws IOException {
+        SidecarStore.write(file, MAGIC, VERSION, out -> {
+            for (Point point : points.values()) {
+                write(out, point);
+            }
+        });
+        written = points.size();
+    }
+
+    private static void write(DataOutputStream out, Point point) throws IOException {
+        out.writeInt(point.number());
+        out.writeUTF(point.displayName() != null ? point.displayName() : "");
+        out.writeLong(point.timestamp());
+        out.writeInt(point.passCount());
+        out.writeInt(point.failCount());
+        out.writeInt(point.skipCount());
+        out.writeFloat(point.duration());
+    }
+
+    private static Point read(DataInputStream in) throws IOException {
+        int number = in.readInt();
+        String displayName = in.readUTF();
+        return new Point(
+                number,
+                displayName.isEmpty() ? null : displayName,
+                in.readLong(),
+                in.readInt(),
+                in.readInt(),
+                in.readInt(),
+                in.readFloat());
+    }
+
+    /**
+     * Computes the series of the trend chart from the points of the store,
+     * as {@link TestResultTrendSeriesBuilder} does from the builds.
+     */
+    static class PointSeriesBuilder extends SeriesBuilder<Point> {
+        @Override
+        protected Map<String, Integer> computeSeries(Point point) {
+            Map<String, Integer> series = new HashMap<>();
+            series.put(TestResultTrendSeriesBuilder.TOTALS_KEY, point.getTotalCount());
+            series.put(TestResultTrendSeriesBuilder.PASSED_KEY, point.passCount());
+            series.put(TestResultTrendSeriesBuilder.FAILED_KEY, point.failCount());
+            series.put(TestResultTrendSeriesBuilder.SKIPPED_KEY, point.skipCount());
+            return series;
+        }
+    }
+
+    /**
+     * Adds builds to the trend as they complete and removes them as they are deleted,
+     * rewriting the file a little later so that deleting many builds at once rewrites it once.
+     */
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            if (!isEnabled()) {
+                return;
+            }
+            AbstractTestResultAction<?> action = run.getAction(AbstractTestResultAction.class);
+            if (action == null) {
+                return;
+            }
+            // the result of a build that just completed is most likely still in memory
+            float duration = action.getResult() instanceof TestResult r ? r.getDuration() : -1;
+            of(run.getParent()).add(Point.of(run, action, duration));
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            if (DISABLED || run.getAction(AbstractTestResultAction.class) == null) {
+                return;
+            }
+            Job<?, ?> job = run.getParent();
+            if ((store.isResident(job) || store.getFile(job).exists()) && of(job).remove(run.getNumber())) {
+                store.saveLater(job);
+            }
+        }
+    }
+}
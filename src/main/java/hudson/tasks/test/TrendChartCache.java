@@ -0,0 +1,174 @@
+package hudson.tasks.test;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Job;
+import hudson.model.Run;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+
+/**
+ * Trend chart models already serialized to JSON, shared by all requests,
+ * so that polling a chart that did not change neither goes through builds nor serializes it again.
+ *
+ * <p>
+ * A chart is identified by the job, what it shows and its configuration, and is valid as long as the job has
+ * the same last build and its {@link TestResultTrendStore} did not change. Older versions are simply left for
+ * the least recently used ones to be dropped.
+ */
+@Restricted(NoExternalUse.class)
+public final class TrendChartCache {
+
+    static boolean ENABLED = SystemProperties.getBoolean(TrendChartCache.class.getName() + ".ENABLED", true);
+    /**
+     * Number of charts kept, least recently used ones are dropped first.
+     */
+    static int MAX_CHARTS = SystemProperties.getInteger(TrendChartCache.class.getName() + ".MAX_CHARTS", 500);
+
+    private static final Map<Key, String> charts = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+            return size() > MAX_CHARTS;
+        }
+    });
+
+    private TrendChartCache() {}
+
+    /**
+     * Identifies one version of a chart.
+     * Includes the identity of the job as well as its name,
+     * since a job that was deleted and created again under the same name numbers its builds anew.
+     */
+    record Key(String job, int jobIdentity, String chart, String configuration, int lastBuild, long lastModified) {
+
+        /**
+         * @return null if the chart cannot be cached
+         */
+        @CheckForNull
+        static Key of(Job<?, ?> job, String chart, @CheckForNull String configuration) {
+            if (!ENABLED || !TestResultTrendStore.isEnabled()) {
+                return null;
+            }
+            Run<?, ?> lastBuild = job.getLastBuild();
+            long lastModified = TestResultTrendStore.of(job).getLastModified();
+            if (lastBuild != null) {
+                // a new build may shift the builds a chart shows before it has any results
+                lastModified = Math.max(lastModified, lastBuild.getTimeInMillis());
+            }
+            return new Key(
+                    job.getFullName(),
+                    System.identityHashCode(job),
+                    chart,
+                    String.valueOf(configuration),
+                    lastBuild == null ? 0 : lastBuild.getNumber(),
+                    lastModified);
+        }
+
+        String etag() {
+            return '"' + Integer.toHexString(jobIdentity) + '-' + lastBuild + '-' + lastModified + '-'
+                    + Integer.toHexString((chart + '\0' + configuration).hashCode()) + '"';
+        }
+    }
+
+    /**
+     * Gets the JSON model of a chart, computing it if it is not cached.
+     *
+     * @param chart identifies what the chart shows within the job
+     * @param compute computes the JSON model
+     */
+    @NonNull
+    public static String get(
+            @NonNull Job<?, ?> job,
+            @NonNull String chart,
+            @CheckForNull String configuration,
+            @NonNull Supplier<String> compute) {
+        Key key = Key.of(job, chart, configuration);
+        return key == null ? compute.get() : get(key, compute);
+    }
+
+    private static String get(Key key, Supplier<String> compute) {
+        String json = charts.get(key);
+        if (json == null) {
+            // computed outside of the lock, at worst twice
+            json = compute.get();
+            charts.put(key, json);
+        }
+        return json;
+    }
+
+    /**
+     * Serves the JSON model of a chart over HTTP, answering conditional requests for an unchanged chart
+     * with 304 Not Modified without computing it.
+     */
+    public static void serve(
+            @NonNull StaplerRequest2 req,
+            @NonNull StaplerResponse2 rsp,
+            @NonNull Job<?, ?> job,
+            @NonNull String chart,
+            @CheckForNull String configuration,
+            @NonNull Supplier<String> compute)
+            throws IOException {
+        Key key = Key.of(job, chart, configuration);
+        String json;
+        if (key == null) {
+            json = compute.get();
+        } else {
+            String etag = key.etag();
+            rsp.setHeader("ETag", etag);
+            rsp.setDateHeader("Last-Modified", key.lastModified());
+            rsp.setHeader("Cache-Control", "private, no-cache");
+            if (isNotModified(req, etag, key.lastModified())) {
+                rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            json = get(key, compute);
+        }
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getOutputStream().write(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isNotModified(StaplerRequest2 req, String etag, long lastModified) {
+        return isNotModified(
+                req.getHeader("If-None-Match"), () -> req.getDateHeader("If-Modified-Since"), etag, lastModified);
+    }
+
+    /**
+     * Whether a conditional request asks for a version that is still current, by its {@code If-None-Match} header
+     * or otherwise its {@code If-Modified-Since} header.
+     */
+    static boolean isNotModified(
+            @CheckForNull String ifNoneMatch, LongSupplier ifModifiedSince, String etag, long lastModified) {
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals(etag) || tag.equals("W/" + etag) || tag.equals("*")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long since;
+        try {
+            since = ifModifiedSince.getAsLong();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have a precision of a second
+        return since >= 0 && lastModified / 1000 <= since / 1000;
+    }
+
+    static void clear() {
+        charts.clear();
+    }
+}
@@ -0,0 +1,230 @@
+package hudson.tasks.test;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.util.Area;
+import hudson.util.ChartUtil;
+import jakarta.servlet.http.HttpServletResponse;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.imageio.ImageIO;
+import jenkins.util.SystemProperties;
+import org.jfree.chart.ChartRenderingInfo;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Rendered trend graphs and their clickable maps for {@link AbstractTestResultAction#doGraph} and
+ * {@link AbstractTestResultAction#doGraphMap}, shared by all requests, so that polling them does not go through
+ * builds and render the same graph again.
+ *
+ * <p>
+ * A graph is identified by its build, size and request parameters, and is valid as long as the
+ * {@link TestResultTrendStore} of the job did not change, i.e. no build recorded test results or was deleted since.
+ */
+@Restricted(NoExternalUse.class)
+final class TrendGraphCache {
+
+    static boolean ENABLED = SystemProperties.getBoolean(TrendGraphCache.class.getName() + ".ENABLED", true);
+    /**
+     * Number of graphs and maps kept, least recently used ones are dropped first.
+     */
+    static int MAX_GRAPHS = SystemProperties.getInteger(TrendGraphCache.class.getName() + ".MAX_GRAPHS", 200);
+
+    /**
+     * Number of bytes of graphs and maps kept, least recently used ones are dropped first.
+     */
+    static long MAX_BYTES =
+            SystemProperties.getLong(TrendGraphCache.class.getName() + ".MAX_BYTES", 32L * 1024 * 1024);
+
+    /**
+     * Largest width or height of a graph, larger ones are drawn at this size.
+     */
+    private static final int MAX_SIZE = 3000;
+
+    /**
+     * Graphs with more pixels than this are drawn without scaling.
+     */
+    private static final long MAX_AREA = 10_000_000;
+
+    /**
+     * In access order, guarded by itself.
+     */
+    private static final Map<Key, byte[]> graphs = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Size of the graphs and maps kept, guarded by {@link #graphs}.
+     */
+    private static long bytes;
+
+    private TrendGraphCache() {}
+
+    /**
+     * Identifies one version of a graph or of its map.
+     * Includes the identity of the job as well as its name,
+     * since a job that was deleted and created again under the same name numbers its builds anew.
+     */
+    record Key(
+            String job,
+            int jobIdentity,
+            int build,
+            long lastModified,
+            boolean map,
+            int width,
+            int height,
+            double scale,
+            boolean failureOnly,
+            String rel) {
+
+        String etag() {
+            return '"' + Integer.toHexString(jobIdentity) + '-' + build + '-' + lastModified + '-'
+                    + Integer.toHexString(hashCode()) + '"';
+        }
+    }
+
+    /**
+     * Serves the PNG image of a graph, or its clickable map, answering conditional requests for an unchanged graph
+     * with 304 Not Modified without drawing it.
+     *
+     * @param run the build the graph is for
+     * @param map whether to serve the clickable map rather than the image
+     * @param chart creates the graph
+     */
+    static void serve(
+            StaplerRequest req,
+            StaplerResponse rsp,
+            Run<?, ?> run,
+            boolean map,
+            Area defaultSize,
+            Supplier<JFreeChart> chart)
+            throws IOException {
+        if (!ENABLED || !TestResultTrendStore.isEnabled()) {
+            if (req.checkIfModified(run.getTimestamp(), rsp)) {
+                return;
+            }
+            if (map) {
+                ChartUtil.generateClickableMap(req, rsp, chart.get(), defaultSize);
+            } else {
+                ChartUtil.generateGraph(req, rsp, chart.get(), defaultSize);
+            }
+            return;
+        }
+
+        int width = size(intParameter(req, "width", defaultSize.width), defaultSize.width);
+        int height = size(intParameter(req, "height", defaultSize.height), defaultSize.height);
+        double scale = map ? 1 : Math.max(1, Math.min(3, doubleParameter(req, "scale", 1)));
+        if ((long) (width * scale) * (long) (height * scale) > MAX_AREA) {
+            scale = 1;
+        }
+
+        Job<?, ?> job = run.getParent();
+        Key key = new Key(
+                job.getFullName(),
+                System.identityHashCode(job),
+                run.getNumber(),
+                TestResultTrendStore.of(job).getLastModified(),
+                map,
+                width,
+                height,
+                scale,
+                Boolean.parseBoolean(req.getParameter("failureOnly")),
+                String.valueOf(req.getParameter("rel")));
+        String etag = key.etag();
+        long lastModified = Math.max(run.getTimeInMillis(), key.lastModified());
+        rsp.setHeader("ETag", etag);
+        rsp.setDateHeader("Last-Modified", lastModified);
+        rsp.setHeader("Cache-Control", "private, no-cache");
+        if (TrendChartCache.isNotModified(
+                req.getHeader("If-None-Match"), () -> req.getDateHeader("If-Modified-Since"), etag, lastModified)) {
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] content;
+        synchronized (graphs) {
+            content = graphs.get(key);
+        }
+        if (content == null) {
+            // drawn outside of the lock, at worst twice
+            content = render(chart.get(), map, width, height, scale);
+            put(key, content);
+        }
+        rsp.setContentType(map ? "text/plain;charset=UTF-8" : "image/png");
+        rsp.getOutputStream().write(content);
+    }
+
+    /**
+     * Keeps a graph, dropping the least recently used ones beyond {@link #MAX_GRAPHS} or {@link #MAX_BYTES}.
+     */
+    private static void put(Key key, byte[] content) {
+        if (content.length > MAX_BYTES) {
+            return;
+        }
+        synchronized (graphs) {
+            byte[] old = graphs.put(key, content);
+            bytes += content.length - (old == null ? 0 : old.length);
+            for (Iterator<byte[]> it = graphs.values().iterator();
+                    it.hasNext() && (graphs.size() > MAX_GRAPHS || bytes > MAX_BYTES); ) {
+                bytes -= it.next().length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Draws a graph the way {@link ChartUtil#generateGraph} and {@link ChartUtil#generateClickableMap} do, which
+     * cannot be used here as they write it to the response rather than returning it to be kept.
+     */
+    private static byte[] render(JFreeChart chart, boolean map, int width, int height, double scale)
+            throws IOException {
+        if (map) {
+            ChartRenderingInfo info = new ChartRenderingInfo();
+            chart.createBufferedImage(width, height, info);
+            return (ChartUtilities.getImageMap("map", info) + '\n').getBytes(StandardCharsets.UTF_8);
+        }
+        BufferedImage image =
+                chart.createBufferedImage((int) (width * scale), (int) (height * scale), width, height, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "PNG", out);
+        return out.toByteArray();
+    }
+
+    private static int intParameter(StaplerRequest req, String name, int defaultValue) {
+        String value = req.getParameter(name);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static double doubleParameter(StaplerRequest req, String name, double defaultValue) {
+        String value = req.getParameter(name);
+        try {
+            return value != null ? Double.parseDouble(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static int size(int requested, int defaultSize) {
+        return requested <= 0 ? defaultSize : Math.min(requested, MAX_SIZE);
+    }
+
+    static void clear() {
+        synchronized (graphs) {
+            graphs.clear();
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package io.jenkins.plugins.junit.storage;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import io.jenkins.plugins.junit.storage.EmbeddedRemotePublisher.Case;
+import io.jenkins.plugins.junit.storage.EmbeddedRemotePublisher.Suite;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.database.Database;
+import org.jenkinsci.plugins.database.h2.LocalH2Database;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * The H2 database of {@link EmbeddedJunitTestResultStorage}, in {@code $JENKINS_HOME/junit-storage/}.
+ *
+ * <p>
+ * Each build with results has a row in {@code builds} holding its counts, so that trends and histories read one
+ * row per build; its {@code suites} and {@code cases} reference it and are deleted along with it.
+ * Cases are indexed by build and status, by build and package, and by build and name, which is how they are
+ * queried, and each failed case records the build it has been failing since when it is added.
+ */
+@Restricted(NoExternalUse.class)
+final class EmbeddedDatabase {
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS builds ("
+                + "id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "job VARCHAR NOT NULL, "
+                + "build INT NOT NULL, "
+                + "total INT DEFAULT 0 NOT NULL, "
+                + "failed INT DEFAULT 0 NOT NULL, "
+                + "skipped INT DEFAULT 0 NOT NULL, "
+                + "duration REAL DEFAULT 0 NOT NULL, "
+                + "CONSTRAINT builds_job_build UNIQUE (job, build))",
+        "CREATE TABLE IF NOT EXISTS suites ("
+                + "id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "build_id BIGINT NOT NULL REFERENCES builds (id) ON DELETE CASCADE, "
+                + "name VARCHAR NOT NULL, "
+                + "node_id VARCHAR, "
+                + "duration REAL NOT NULL, "
+                + "stdout CLOB, "
+                + "stderr CLOB)",
+        "CREATE TABLE IF NOT EXISTS cases ("
+                + "id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "build_id BIGINT NOT NULL REFERENCES builds (id) ON DELETE CASCADE, "
+                + "suite_id BIGINT NOT NULL REFERENCES suites (id) ON DELETE CASCADE, "
+                + "package VARCHAR NOT NULL, "
+                + "class_name VARCHAR NOT NULL, "
+                + "test_name VARCHAR NOT NULL, "
+                + "status TINYINT NOT NULL, "
+                + "duration REAL NOT NULL, "
+                + "failed_since INT, "
+                + "error_details CLOB, "
+                + "skipped_message CLOB, "
+                + "stack_trace CLOB, "
+                + "stdout CLOB, "
+                + "stderr CLOB)",
+        "CREATE INDEX IF NOT EXISTS suites_build_name ON suites (build_id, name)",
+        "CREATE INDEX IF NOT EXISTS suites_build_node ON suites (build_id, node_id)",
+        "CREATE INDEX IF NOT EXISTS cases_build_status ON cases (build_id, status)",
+        "CREATE INDEX IF NOT EXISTS cases_build_package ON cases (build_id, package, status)",
+        "CREATE INDEX IF NOT EXISTS cases_build_test ON cases (build_id, class_name, test_name)",
+    };
+
+    private static EmbeddedDatabase instance;
+
+    private final File file;
+    private final Database database;
+
+    private EmbeddedDatabase(File file) {
+        this.file = file;
+        this.database = new LocalH2Database(file, false);
+    }
+
+    /**
+     * Gets the database of this Jenkins, creating it the first time.
+     */
+    static synchronized EmbeddedDatabase get() throws SQLException {
+        File file = new File(Jenkins.get().getRootDir(), "junit-storage/results");
+        if (instance == null || !instance.file.equals(file)) {
+            EmbeddedDatabase database = new EmbeddedDatabase(file);
+            try (Connection connection = database.connection();
+                    Statement statement = connection.createStatement()) {
+                for (String sql : SCHEMA) {
+                    statement.execute(sql);
+                }
+            }
+            instance = database;
+        }
+        return instance;
+    }
+
+    Connection connection() throws SQLException {
+        return database.getDataSource().getConnection();
+    }
+
+    /**
+     * Adds suites to the results of a build, which may already have some, e.g. from another step of a Pipeline.
+     */
+    void add(String job, int build, List<Suite> suites) throws SQLException {
+        try (Connection connection = connection()) {
+            connection.setAutoCommit(false);
+            try {
+                add(connection, job, build, suites);
+                connection.commit();
+            } catch (SQLException | RuntimeException x) {
+                connection.rollback();
+                throw x;
+            }
+        }
+    }
+
+    private static void add(Connection connection, String job, int build, List<Suite> suites) throws SQLException {
+        try (PreparedStatement statement =
+                connection.prepareStatement("MERGE INTO builds (job, build) KEY (job, build) VALUES (?, ?)")) {
+            statement.setString(1, job);
+            statement.setInt(2, build);
+            statement.executeUpdate();
+        }
+        long buildId = buildId(connection, job, build);
+        Long previousBuildId = previousBuildId(connection, job, build);
+
+        int total = 0;
+        int failed = 0;
+        int skipped = 0;
+        float duration = 0;
+        try (PreparedStatement insertSuite = connection.prepareStatement(
+                        "INSERT INTO suites (build_id, name, node_id, duration, stdout, stderr)"
+                                + " VALUES (?, ?, ?, ?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS);
+                PreparedStatement insertCase = connection.prepareStatement("INSERT INTO cases (build_id, suite_id,"
+                        + " package, class_name, test_name, status, duration, failed_since, error_details,"
+                        + " skipped_message, stack_trace, stdout, stderr)"
+                        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                PreparedStatement failedSince = connection.prepareStatement("SELECT failed_since FROM cases"
+                        + " WHERE build_id = ? AND class_name = ? AND test_name = ? AND status = "
+                        + EmbeddedRemotePublisher.FAILED);
+                PreparedStatement findSuite = connection.prepareStatement("SELECT id FROM suites"
+                        + " WHERE build_id = ? AND name = ? AND node_id IS NOT DISTINCT FROM ? LIMIT 1");
+                PreparedStatement extendSuite =
+                        connection.prepareStatement("UPDATE suites SET duration = duration + ? WHERE id = ?")) {
+            for (Suite suite : suites) {
+                // parts of a suite, from several files or batches, are merged into one as in the file storage
+                Long existing = findSuite(findSuite, buildId, suite);
+                long suiteId;
+                if (existing != null) {
+                    suiteId = existing;
+                    extendSuite.setFloat(1, suite.duration());
+                    extendSuite.setLong(2, suiteId);
+                    extendSuite.executeUpdate();
+                } else {
+                    insertSuite.setLong(1, buildId);
+                    insertSuite.setString(2, suite.name());
+                    setString(insertSuite, 3, suite.nodeId());
+                    insertSuite.setFloat(4, suite.duration());
+                    setString(insertSuite, 5, suite.stdout());
+                    setString(insertSuite, 6, suite.stderr());
+                    insertSuite.executeUpdate();
+                    try (ResultSet keys = insertSuite.getGeneratedKeys()) {
+                        keys.next();
+                        suiteId = keys.getLong(1);
+                    }
+                }
+                duration += suite.duration();
+
+                for (Case c : suite.cases()) {
+                    insertCase.setLong(1, buildId);
+                    insertCase.setLong(2, suiteId);
+                    insertCase.setString(3, packageName(c.className()));
+                    insertCase.setString(4, c.className());
+                    insertCase.setString(5, c.testName());
+                    insertCase.setInt(6, c.status());
+                    insertCase.setFloat(7, c.duration());
+                    if (c.status() == EmbeddedRemotePublisher.FAILED) {
+                        insertCase.setInt(8, failedSince(failedSince, previousBuildId, c, build));
+                        failed++;
+                    } else {
+                        insertCase.setNull(8, Types.INTEGER);
+                        if (c.status() == EmbeddedRemotePublisher.SKIPPED) {
+                            skipped++;
+                        }
+                    }
+                    setString(insertCase, 9, c.errorDetails());
+                    setString(insertCase, 10, c.skippedMessage());
+                    setString(insertCase, 11, c.stackTrace());
+                    // the suite keeps the output of its first part, so cases of later parts keep the one of theirs
+                    setString(insertCase, 12, existing != null && c.stdout() == null ? suite.stdout() : c.stdout());
+                    setString(insertCase, 13, existing != null && c.stderr() == null ? suite.stderr() : c.stderr());
+                    insertCase.addBatch();
+                    total++;
+                }
+                insertCase.executeBatch();
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE builds SET total = total + ?,"
+                + " failed = failed + ?, skipped = skipped + ?, duration = duration + ? WHERE id = ?")) {
+            statement.setInt(1, total);
+            statement.setInt(2, failed);
+            statement.setInt(3, skipped);
+            statement.setFloat(4, duration);
+            statement.setLong(5, buildId);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * @return the suite of the same name and node already added for the build, if any
+     */
+    @CheckForNull
+    private static Long findSuite(PreparedStatement statement, long buildId, Suite suite) throws SQLException {
+        statement.setLong(1, buildId);
+        statement.setString(2, suite.name());
+        setString(statement, 3, suite.nodeId());
+        try (ResultSet result = statement.executeQuery()) {
+            return result.next() ? result.getLong(1) : null;
+        }
+    }
+
+    /**
+     * A case failing since the previous build with results is still failing since then, otherwise it is failing
+     * since this build.
+     */
+    private static int failedSince(PreparedStatement statement, @CheckForNull Long previousBuildId, Case c, int build)
+            throws SQLException {
+        if (previousBuildId == null) {
+            return build;
+        }
+        statement.setLong(1, previousBuildId);
+        statement.setString(2, c.className());
+        statement.setString(3, c.testName());
+        try (ResultSet result = statement.executeQuery()) {
+            if (result.next()) {
+                int since = result.getInt(1);
+                if (!result.wasNull()) {
+                    return since;
+                }
+            }
+            return build;
+        }
+    }
+
+    /**
+     * Recomputes since when the failed cases of the builds of a job following a given one fail, as results of that
+     * build or of earlier ones were added after theirs.
+     */
+    void updateFailedSince(String job, int build) throws SQLException {
+        try (Connection connection = connection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement later = connection.prepareStatement(
+                            "SELECT id, build FROM builds WHERE job = ? AND build > ? ORDER BY build");
+                    PreparedStatement update = connection.prepareStatement("UPDATE cases c SET failed_since = COALESCE("
+                            + "(SELECT MIN(p.failed_since) FROM cases p WHERE p.build_id = ?"
+                            + " AND p.class_name = c.class_name AND p.test_name = c.test_name AND p.status = "
+                            + EmbeddedRemotePublisher.FAILED + "), ?) WHERE c.build_id = ? AND c.status = "
+                            + EmbeddedRemotePublisher.FAILED)) {
+                long previousBuildId = buildId(connection, job, build);
+                later.setString(1, job);
+                later.setInt(2, build);
+                try (ResultSet result = later.executeQuery()) {
+                    // in order, as each build fails since when the previous one did
+                    while (result.next()) {
+                        long buildId = result.getLong(1);
+                        update.setLong(1, previousBuildId);
+                        update.setInt(2, result.getInt(2));
+                        update.setLong(3, buildId);
+                        update.executeUpdate();
+                        previousBuildId = buildId;
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException x) {
+                connection.rollback();
+                throw x;
+            }
+        }
+    }
+
+    private static long buildId(Connection connection, String job, int build) throws SQLException {
+        try (PreparedStatement statement =
+                connection.prepareStatement("SELECT id FROM builds WHERE job = ? AND build = ?")) {
+            statement.setString(1, job);
+            statement.setInt(2, build);
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next()) {
+                    throw new SQLException("No results of " + job + " #" + build);
+                }
+                return result.getLong(1);
+            }
+        }
+    }
+
+    @CheckForNull
+    private static Long previousBuildId(Connection connection, String job, int build) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT id FROM builds WHERE job = ? AND build < ? ORDER BY build DESC LIMIT 1")) {
+            statement.setString(1, job);
+            statement.setInt(2, build);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getLong(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Whether a build has results in the database.
+     */
+    boolean contains(String job, int build) throws SQLException {
+        try (Connection connection = connection();
+                PreparedStatement statement =
+                        connection.prepareStatement("SELECT 1 FROM builds WHERE job = ? AND build = ?")) {
+            statement.setString(1, job);
+            statement.setInt(2, build);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next();
+            }
+        }
+    }
+
+    /**
+     * Deletes the results of a build.
+     */
+    void delete(String job, int build) throws SQLException {
+        try (Connection connection = connection();
+                PreparedStatement statement =
+                        connection.prepareStatement("DELETE FROM builds WHERE job = ? AND build = ?")) {
+            statement.setString(1, job);
+            statement.setInt(2, build);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Deletes the results of all builds of a job.
+     */
+    void delete(String job) throws SQLException {
+        try (Connection connection = connection();
+                PreparedStatement statement = connection.prepareStatement("DELETE FROM builds WHERE job = ?")) {
+            statement.setString(1, job);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Moves the results of a job that was renamed or moved.
+     */
+    void rename(String oldJob, String newJob) throws SQLException {
+        try (Connection connection = connection();
+                PreparedStatement statement = connection.prepareStatement("UPDATE builds SET job = ? WHERE job = ?")) {
+            statement.setString(1, newJob);
+            statement.setString(2, oldJob);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Same as {@link hudson.tasks.junit.CaseResult#getPackageName}.
+     */
+    static String packageName(String className) {
+        int idx = className.lastIndexOf('.');
+        return idx < 0 ? "(root)" : className.substring(0, idx);
+    }
+
+    private static void setString(PreparedStatement statement, int index, @CheckForNull String value)
+            throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.VARCHAR);
+        } else {
+            statement.setString(index, value);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package io.jenkins.plugins.junit.storage;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.tasks.junit.TestResult;
+import hudson.tasks.junit.TestResultAction;
+import hudson.util.FormValidation;
+import io.jenkins.plugins.junit.storage.EmbeddedRemotePublisher.Suite;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Stores test results in an H2 database within {@code $JENKINS_HOME}, so that they can be queried without loading
+ * whole results, and without running a database server.
+ * Available when the Database H2 plugin is installed.
+ *
+ * <p>
+ * Results recorded before this storage was chosen can be imported from their {@code junitResult.xml} files.
+ *
+ * @see EmbeddedDatabase
+ */
+@Extension(optional = true)
+@Restricted(Beta.class)
+public class EmbeddedJunitTestResultStorage extends JunitTestResultStorage {
+
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedJunitTestResultStorage.class.getName());
+
+    @DataBoundConstructor
+    public EmbeddedJunitTestResultStorage() {}
+
+    private static EmbeddedDatabase database() throws IOException {
+        try {
+            return EmbeddedDatabase.get();
+        } catch (SQLException x) {
+            throw new IOException("Failed to open the test result database", x);
+        }
+    }
+
+    @Override
+    public RemotePublisher createRemotePublisher(Run<?, ?> build) throws IOException {
+        return new EmbeddedRemotePublisher(
+                new SinkImpl(database(), build.getParent().getFullName(), build.getNumber()));
+    }
+
+    @Override
+    public TestResultImpl load(String job, int build) {
+        try {
+            return new EmbeddedTestResultImpl(database(), job, build, Collections.emptyList());
+        } catch (IOException x) {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    private static final class SinkImpl implements EmbeddedRemotePublisher.Sink {
+        private final String job;
+        private final int build;
+        /**
+         * Null once closed, so that an agent still holding the sink can no longer write to the database.
+         */
+        private volatile EmbeddedDatabase database;
+
+        SinkImpl(EmbeddedDatabase database, String job, int build) {
+            this.database = database;
+            this.job = job;
+            this.build = build;
+        }
+
+        @Override
+        public void add(List<Suite> suites) throws IOException {
+            EmbeddedDatabase database = this.database;
+            if (database == null) {
+                throw new IOException("Test results of " + job + " #" + build + " were already saved");
+            }
+            try {
+                database.add(job, build, suites);
+            } catch (SQLException x) {
+                throw new IOException("Failed to save test results of " + job + " #" + build, x);
+            }
+        }
+
+        @Override
+        public void close() {
+            database = null;
+        }
+    }
+
+    /**
+     * Imports the results of all completed builds that have none in the database yet from their
+     * {@code junitResult.xml}, oldest builds of each job first, so that failing tests are known to have been failing
+     * since the right build, which is then updated for the later builds that already had results.
+     */
+    static void migrate() throws IOException {
+        migrate(TaskListener.NULL, null);
+    }
+
+    /**
+     * @param progress told about each job gone through, if any
+     */
+    static void migrate(TaskListener listener, @CheckForNull EmbeddedResultImport progress) throws IOException {
+        if (!isConfigured()) {
+            throw new IOException("Test results are not stored in the embedded database");
+        }
+        EmbeddedDatabase database = database();
+        @SuppressWarnings("rawtypes")
+        List<Job> jobs = Jenkins.get().getAllItems(Job.class);
+        if (progress != null) {
+            progress.started(jobs.size());
+        }
+        for (Job<?, ?> job : jobs) {
+            String name = job.getFullName();
+            int imported = 0;
+            int oldestImported = 0;
+            // one build loaded after the other, rather than all builds of the job at once
+            for (Run<?, ?> build = job.getFirstBuild(); build != null; build = build.getNextBuild()) {
+                TestResultAction action = build.getAction(TestResultAction.class);
+                try {
+                    // builds in progress record their results into the database themselves
+                    if (action == null || build.isBuilding() || database.contains(name, build.getNumber())) {
+                        continue;
+                    }
+                    TestResult result = action.loadFromFile();
+                    if (result != null) {
+                        new EmbeddedRemotePublisher(new SinkImpl(database, name, build.getNumber()))
+                                .publish(result, TaskListener.NULL);
+                        if (imported++ == 0) {
+                            oldestImported = build.getNumber();
+                        }
+                    }
+                } catch (IOException | SQLException x) {
+                    LOGGER.log(Level.WARNING, "Failed to import test results of " + build, x);
+                    listener.error("Failed to import test results of " + build + ": " + x);
+                }
+            }
+            if (imported > 0) {
+                try {
+                    database.updateFailedSince(name, oldestImported);
+                } catch (SQLException x) {
+                    LOGGER.log(Level.WARNING, "Failed to update since when tests of " + name + " fail", x);
+                }
+                TestResultImplCache.invalidate(name);
+                listener.getLogger().println("Imported test results of " + imported + " builds of " + name);
+            }
+            if (progress != null) {
+                progress.jobDone(imported);
+            }
+        }
+    }
+
+    @Extension(optional = true)
+    @Symbol("embedded")
+    public static class DescriptorImpl extends JunitTestResultStorageDescriptor {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.EmbeddedJunitTestResultStorage_displayName();
+        }
+
+        @RequirePOST
+        public FormValidation doMigrate() {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            if (!isConfigured()) {
+                return FormValidation.error(Messages.EmbeddedJunitTestResultStorage_notConfigured());
+            }
+            if (!EmbeddedResultImport.get().start()) {
+                return FormValidation.warning(Messages.EmbeddedJunitTestResultStorage_migrationRunning());
+            }
+            return FormValidation.ok(Messages.EmbeddedJunitTestResultStorage_migrationStarted());
+        }
+    }
+
+    /**
+     * Whether results are currently stored by this storage, which is the only case its database is opened.
+     */
+    private static boolean isConfigured() {
+        return JunitTestResultStorage.find() instanceof EmbeddedJunitTestResultStorage;
+    }
+
+    @Extension(optional = true)
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            if (isConfigured()) {
+                try {
+                    database().delete(run.getParent().getFullName(), run.getNumber());
+                } catch (IOException | SQLException x) {
+                    LOGGER.log(Level.WARNING, "Failed to delete test results of " + run, x);
+                }
+            }
+        }
+    }
+
+    @Extension(optional = true)
+    public static final class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof Job && isConfigured()) {
+                try {
+                    database().delete(item.getFullName());
+                } catch (IOException | SQLException x) {
+                    LOGGER.log(Level.WARNING, "Failed to delete test results of " + item.getFullName(), x);
+                }
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (item instanceof Job && isConfigured()) {
+                try {
+                    database().rename(oldFullName, newFullName);
+                } catch (IOException | SQLException x) {
+                    LOGGER.log(Level.WARNING, "Failed to move test results of " + oldFullName, x);
+                }
+                TestResultImplCache.invalidate(oldFullName);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package io.jenkins.plugins.junit.storage;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.model.TaskListener;
+import hudson.remoting.Channel;
+import hudson.tasks.junit.CaseResult;
+import hudson.tasks.junit.SuiteResult;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Publishes test results to {@link EmbeddedJunitTestResultStorage} from wherever they were parsed.
+ *
+ * <p>
+ * Only the controller opens the database: suites are sent back to it in batches, as they are parsed, through a
+ * {@link Sink} exported over the channel, each call returning once its suites are written.
+ * The sink is closed once all suites were sent, and then no longer referenced, so that it gets unexported.
+ */
+@Restricted(NoExternalUse.class)
+public final class EmbeddedRemotePublisher implements JunitTestResultStorage.StreamingRemotePublisher {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of test cases sent to the controller at once; a suite is never split.
+     *
+     * @see JunitTestResultStorage.StreamingRemotePublisher#getBatchSize
+     */
+    static int BATCH_SIZE = SystemProperties.getInteger(EmbeddedRemotePublisher.class.getName() + ".BATCH_SIZE", 1000);
+
+    /**
+     * Writes suites of a given build to the database.
+     * Public, as it is called through a proxy once exported.
+     */
+    public interface Sink {
+        void add(List<Suite> suites) throws IOException;
+
+        /**
+         * Called once all suites were added, after which suites can no longer be added.
+         */
+        void close();
+    }
+
+    static final int PASSED = 0;
+    static final int FAILED = 1;
+    static final int SKIPPED = 2;
+
+    public record Suite(
+            String name,
+            @CheckForNull String nodeId,
+            float duration,
+            @CheckForNull String stdout,
+            @CheckForNull String stderr,
+            List<Case> cases)
+            implements Serializable {
+
+        static Suite of(SuiteResult suite) {
+            List<Case> cases = new ArrayList<>(suite.getCases().size());
+            for (CaseResult c : suite.getCases()) {
+                cases.add(Case.of(suite, c));
+            }
+            return new Suite(
+                    suite.getName(),
+                    suite.getNodeId(),
+                    suite.getDuration(),
+                    suite.getStdout(),
+                    suite.getStderr(),
+                    cases);
+        }
+    }
+
+    public record Case(
+            String className,
+            String testName,
+            int status,
+            float duration,
+            @CheckForNull String errorDetails,
+            @CheckForNull String skippedMessage,
+            @CheckForNull String stackTrace,
+            @CheckForNull String stdout,
+            @CheckForNull String stderr)
+            implements Serializable {
+
+        static Case of(SuiteResult suite, CaseResult c) {
+            return new Case(
+                    c.getClassName(),
+                    c.getName(),
+                    c.isSkipped() ? SKIPPED : c.isFailed() ? FAILED : PASSED,
+                    c.getDuration(),
+                    c.getErrorDetails(),
+                    c.isSkipped() ? Objects.toString(c.getSkippedMessage(), "") : null,
+                    c.getErrorStackTrace(),
+                    ownOutput(c.getStdout(), suite.getStdout()),
+                    ownOutput(c.getStderr(), suite.getStderr()));
+        }
+
+        /**
+         * Output of a case is only kept if it is not the one of its suite, which it falls back to.
+         */
+        @CheckForNull
+        private static String ownOutput(String output, String suiteOutput) {
+            return output == null || output.isEmpty() || output.equals(suiteOutput) ? null : output;
+        }
+    }
+
+    @SuppressFBWarnings(value = "SE_BAD_FIELD", justification = "exported over the channel, see writeReplace")
+    private Sink sink;
+    private final int batchSize;
+
+    EmbeddedRemotePublisher(Sink sink) {
+        this(sink, BATCH_SIZE);
+    }
+
+    private EmbeddedRemotePublisher(Sink sink, int batchSize) {
+        this.sink = sink;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Number of cases published so far.
+     */
+    private transient int published;
+    private transient boolean sent;
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void publishSuites(List<SuiteResult> suites, TaskListener listener) throws IOException {
+        if (sink == null) {
+            throw new IllegalStateException("Already finished");
+        }
+        List<Suite> batch = new ArrayList<>(suites.size());
+        for (SuiteResult suite : suites) {
+            Suite s = Suite.of(suite);
+            batch.add(s);
+            published += s.cases().size();
+        }
+        sink.add(batch);
+        sent = true;
+    }
+
+    @Override
+    public void finish(TaskListener listener) throws IOException {
+        if (sink == null) {
+            return;
+        }
+        if (!sent) {
+            // even without any test, so that the build is known to have results
+            sink.add(List.of());
+            sent = true;
+        }
+        sink.close();
+        // the channel unexports the sink once its proxy is no longer referenced here
+        sink = null;
+        listener.getLogger().printf("Saved %d test cases into the embedded database.%n", published);
+    }
+
+    /**
+     * Sent to an agent, calls the {@link Sink} back on the controller.
+     */
+    private Object writeReplace() {
+        Channel channel = Channel.current();
+        return channel == null ? this : new EmbeddedRemotePublisher(channel.export(Sink.class, sink), batchSize);
+    }
+}
@@ -0,0 +1,121 @@
+package io.jenkins.plugins.junit.storage;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.AdministrativeMonitor;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Imports the results of earlier builds into the {@link EmbeddedJunitTestResultStorage} in the background, once
+ * requested from its configuration. Progress is written to the log of this task in {@code $JENKINS_HOME/logs/tasks},
+ * and shown to administrators by {@link Monitor} while it runs.
+ */
+@Extension(optional = true)
+@Restricted(NoExternalUse.class)
+public final class EmbeddedResultImport extends AsyncPeriodicWork {
+
+    private final AtomicBoolean requested = new AtomicBoolean();
+    private volatile boolean running;
+    private volatile int jobs;
+    private volatile int jobsDone;
+    private volatile int buildsImported;
+
+    public EmbeddedResultImport() {
+        super("Embedded test result import");
+    }
+
+    static EmbeddedResultImport get() {
+        return ExtensionList.lookupSingleton(EmbeddedResultImport.class);
+    }
+
+    /**
+     * Only runs once requested, rather than periodically.
+     */
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.DAYS.toMillis(1);
+    }
+
+    /**
+     * Starts importing results, unless it is being done already.
+     *
+     * @return false if results are being imported already
+     */
+    boolean start() {
+        if (!requested.compareAndSet(false, true)) {
+            return false;
+        }
+        doRun();
+        return true;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        if (!requested.get()) {
+            return;
+        }
+        jobs = 0;
+        jobsDone = 0;
+        buildsImported = 0;
+        running = true;
+        try {
+            EmbeddedJunitTestResultStorage.migrate(listener, this);
+            listener.getLogger().println("Imported test results of all builds");
+        } finally {
+            running = false;
+            requested.set(false);
+        }
+    }
+
+    void started(int jobs) {
+        this.jobs = jobs;
+    }
+
+    void jobDone(int buildsImported) {
+        jobsDone++;
+        this.buildsImported += buildsImported;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public int getJobsDone() {
+        return jobsDone;
+    }
+
+    public int getBuildsImported() {
+        return buildsImported;
+    }
+
+    /**
+     * Tells administrators how far the import went while it runs.
+     */
+    @Extension(optional = true)
+    public static final class Monitor extends AdministrativeMonitor {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.EmbeddedResultImport_Monitor_displayName();
+        }
+
+        @Override
+        public boolean isActivated() {
+            return getImporter().isRunning();
+        }
+
+        public EmbeddedResultImport getImporter() {
+            return get();
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package io.jenkins.plugins.junit.storage;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.tasks.junit.CaseResult;
+import hudson.tasks.junit.HistoryTestResultSummary;
+import hudson.tasks.junit.PackageResult;
+import hudson.tasks.junit.SuiteResult;
+import hudson.tasks.junit.TestDurationResultSummary;
+import hudson.tasks.junit.TestResult;
+import hudson.tasks.junit.TestResultSummary;
+import hudson.tasks.junit.TrendTestResultSummary;
+import hudson.tasks.test.PipelineTestDetails;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Results of a build in the {@link EmbeddedDatabase}, possibly only those recorded by some Pipeline nodes.
+ * Counts, trends and histories are read from the {@code builds} table, cases only when they are asked for.
+ */
+@Restricted(NoExternalUse.class)
+final class EmbeddedTestResultImpl implements TestResultImpl {
+
+    /**
+     * Number of builds in a page of {@link #getHistorySummary}.
+     */
+    static final int HISTORY_PAGE_SIZE = 25;
+
+    private static final String BUILD_ID = "(SELECT id FROM builds WHERE job = ? AND build = ?)";
+
+    private static final String CASES = "SELECT c.suite_id, s.name AS suite, c.package, c.class_name, c.test_name,"
+            + " c.status, c.duration, c.error_details, c.skipped_message, c.stack_trace,"
+            + " COALESCE(c.stdout, s.stdout) AS stdout, COALESCE(c.stderr, s.stderr) AS stderr"
+            + " FROM cases c JOIN suites s ON s.id = c.suite_id WHERE ";
+
+    private final EmbeddedDatabase database;
+    private final String job;
+    private final int build;
+    /**
+     * Only the results of suites recorded by these nodes, or all of them if empty.
+     */
+    private final List<String> nodeIds;
+
+    private volatile int[] counts;
+
+    EmbeddedTestResultImpl(EmbeddedDatabase database, String job, int build, List<String> nodeIds) {
+        this.database = database;
+        this.job = job;
+        this.build = build;
+        this.nodeIds = List.copyOf(nodeIds);
+    }
+
+    @FunctionalInterface
+    private interface Querier<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    private <T> T query(Querier<T> querier) {
+        try (Connection connection = database.connection()) {
+            return querier.run(connection);
+        } catch (SQLException x) {
+            throw new IllegalStateException("Failed to read test results of " + job + " #" + build, x);
+        }
+    }
+
+    /**
+     * Condition selecting the cases of this result, to be bound by {@link #bind}.
+     */
+    private String cases() {
+        return "c.build_id = " + BUILD_ID + (nodeIds.isEmpty() ? "" : " AND c.suite_id IN (" + suiteIds() + ")");
+    }
+
+    private String suiteIds() {
+        return "SELECT id FROM suites WHERE build_id = " + BUILD_ID + " AND node_id IN ("
+                + String.join(", ", Collections.nCopies(nodeIds.size(), "?")) + ")";
+    }
+
+    /**
+     * Binds the parameters of {@link #cases}.
+     *
+     * @return the index of the next parameter
+     */
+    private int bind(PreparedStatement statement) throws SQLException {
+        int index = 1;
+        statement.setString(index++, job);
+        statement.setInt(index++, build);
+        if (!nodeIds.isEmpty()) {
+            statement.setString(index++, job);
+            statement.setInt(index++, build);
+            for (String nodeId : nodeIds) {
+                statement.setString(index++, nodeId);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return total, failed and skipped cases
+     */
+    private int[] counts() {
+        int[] c = counts;
+        if (c == null) {
+            counts = c = query(connection -> {
+                if (nodeIds.isEmpty()) {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "SELECT total, failed, skipped FROM builds WHERE job = ? AND build = ?")) {
+                        statement.setString(1, job);
+                        statement.setInt(2, build);
+                        try (ResultSet result = statement.executeQuery()) {
+                            return result.next()
+                                    ? new int[] {result.getInt(1), result.getInt(2), result.getInt(3)}
+                                    : new int[3];
+                        }
+                    }
+                }
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT c.status, COUNT(*) FROM cases c WHERE " + cases() + " GROUP BY c.status")) {
+                    bind(statement);
+                    int[] byStatus = new int[3];
+                    try (ResultSet result = statement.executeQuery()) {
+                        while (result.next()) {
+                            byStatus[result.getInt(1)] = result.getInt(2);
+                        }
+                    }
+                    return new int[] {
+                        byStatus[EmbeddedRemotePublisher.PASSED]
+                                + byStatus[EmbeddedRemotePublisher.FAILED]
+                                + byStatus[EmbeddedRemotePublisher.SKIPPED],
+                        byStatus[EmbeddedRemotePublisher.FAILED],
+                        byStatus[EmbeddedRemotePublisher.SKIPPED]
+                    };
+                }
+            });
+        }
+        return c;
+    }
+
+    @Override
+    public int getTotalCount() {
+        return counts()[0];
+    }
+
+    @Override
+    public int getFailCount() {
+        return counts()[1];
+    }
+
+    @Override
+    public int getSkipCount() {
+        return counts()[2];
+    }
+
+    @Override
+    public int getPassCount() {
+        int[] c = counts();
+        return c[0] - c[1] - c[2];
+    }
+
+    @Override
+    public float getTotalTestDuration() {
+        return query(connection -> {
+            String sql = nodeIds.isEmpty()
+                    ? "SELECT duration FROM builds WHERE job = ? AND build = ?"
+                    : "SELECT SUM(duration) FROM suites WHERE id IN (" + suiteIds() + ")";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                int index = 1;
+                statement.setString(index++, job);
+                statement.setInt(index++, build);
+                for (String nodeId : nodeIds) {
+                    statement.setString(index++, nodeId);
+                }
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next() ? result.getFloat(1) : 0f;
+                }
+            }
+        });
+    }
+
+    @Override
+    public List<CaseResult> getFailedTests() {
+        return readCases(" AND c.status = " + EmbeddedRemotePublisher.FAILED, null).cases;
+    }
+
+    @Override
+    public List<CaseResult> getSkippedTests() {
+        return readCases(" AND c.status = " + EmbeddedRemotePublisher.SKIPPED, null).cases;
+    }
+
+    @Override
+    public List<CaseResult> getPassedTests() {
+        return readCases(" AND c.status = " + EmbeddedRemotePublisher.PASSED, null).cases;
+    }
+
+    @Override
+    public List<CaseResult> getFailedTestsByPackage(String packageName) {
+        return readCases(" AND c.package = ? AND c.status = " + EmbeddedRemotePublisher.FAILED, packageName).cases;
+    }
+
+    @Override
+    public List<CaseResult> getSkippedTestsByPackage(String packageName) {
+        return readCases(" AND c.package = ? AND c.status = " + EmbeddedRemotePublisher.SKIPPED, packageName).cases;
+    }
+
+    @Override
+    public List<CaseResult> getPassedTestsByPackage(String packageName) {
+        return readCases(" AND c.package = ? AND c.status = " + EmbeddedRemotePublisher.PASSED, packageName).cases;
+    }
+
+    @Override
+    public PackageResult getPackageResult(String packageName) {
+        PackageResult packageResult = readCases(" AND c.package = ?", packageName).packages.get(packageName);
+        return packageResult != null ? packageResult : new PackageResult(new TestResult(this), packageName);
+    }
+
+    @Override
+    public List<PackageResult> getAllPackageResults() {
+        return new ArrayList<>(readCases("", null).packages.values());
+    }
+
+    @Override
+    public SuiteResult getSuite(String name) {
+        Tree tree = readSuites(name);
+        return tree.suites.isEmpty() ? null : tree.suites.values().iterator().next();
+    }
+
+    @Override
+    public Collection<SuiteResult> getSuites() {
+        return readSuites(null).suites.values();
+    }
+
+    /**
+     * Reads the cases of this result matching a condition.
+     *
+     * @param condition appended to {@link #cases}
+     * @param packageName bound after the parameters of {@link #cases} if not null
+     */
+    private Tree readCases(String condition, @CheckForNull String packageName) {
+        return query(connection -> {
+            Tree tree = new Tree();
+            tree.readCases(connection, condition, packageName);
+            return tree;
+        });
+    }
+
+    /**
+     * Reads the suites of this result along with their cases.
+     *
+     * @param name the name of the suite to read, or null to read all of them
+     */
+    private Tree readSuites(@CheckForNull String name) {
+        return query(connection -> {
+            Tree tree = new Tree();
+            String sql = "SELECT id, name, node_id, stdout, stderr FROM suites WHERE "
+                    + (nodeIds.isEmpty() ? "build_id = " + BUILD_ID : "id IN (" + suiteIds() + ")")
+                    + (name != null ? " AND name = ?" : "") + " ORDER BY id";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                int index = 1;
+                statement.setString(index++, job);
+                statement.setInt(index++, build);
+                for (String nodeId : nodeIds) {
+                    statement.setString(index++, nodeId);
+                }
+                if (name != null) {
+                    statement.setString(index, name);
+                }
+                try (ResultSet result = statement.executeQuery()) {
+                    while (result.next()) {
+                        PipelineTestDetails details = null;
+                        String nodeId = result.getString("node_id");
+                        if (nodeId != null) {
+                            details = new PipelineTestDetails();
+                            details.setNodeId(nodeId);
+                        }
+                        SuiteResult suite = new SuiteResult(
+                                result.getString("name"),
+                                result.getString("stdout"),
+                                result.getString("stderr"),
+                                details);
+                        suite.setParent(tree.parent);
+                        tree.suites.put(result.getLong("id"), suite);
+                    }
+                }
+            }
+            if (!tree.suites.isEmpty()) {
+                tree.readCases(connection, name != null ? " AND s.name = ?" : "", name);
+            }
+            return tree;
+        });
+    }
+
+    /**
+     * Cases read from the database, put into suites and packages as the file storage does.
+     */
+    private final class Tree {
+
+        final TestResult parent = new TestResult(EmbeddedTestResultImpl.this);
+        final Map<Long, SuiteResult> suites = new TreeMap<>();
+        final Map<String, PackageResult> packages = new TreeMap<>();
+        final List<CaseResult> cases = new ArrayList<>();
+
+        void readCases(Connection connection, String condition, @CheckForNull String parameter) throws SQLException {
+            try (PreparedStatement statement =
+                    connection.prepareStatement(CASES + cases() + condition + " ORDER BY c.id")) {
+                int index = bind(statement);
+                if (parameter != null) {
+                    statement.setString(index, parameter);
+                }
+                try (ResultSet result = statement.executeQuery()) {
+                    while (result.next()) {
+                        add(result);
+                    }
+                }
+            }
+            for (PackageResult packageResult : packages.values()) {
+                packageResult.tally();
+            }
+        }
+
+        private void add(ResultSet result) throws SQLException {
+            SuiteResult suite = suites.get(result.getLong("suite_id"));
+            if (suite == null) {
+                suite = new SuiteResult(result.getString("suite"), null, null, null);
+                suite.setParent(parent);
+                suites.put(result.getLong("suite_id"), suite);
+            }
+            int status = result.getInt("status");
+            String errorDetails = result.getString("error_details");
+            String stackTrace = result.getString("stack_trace");
+            if (status == EmbeddedRemotePublisher.FAILED && errorDetails == null && stackTrace == null) {
+                errorDetails = ""; // otherwise it would pass
+            }
+            CaseResult caseResult = new CaseResult(
+                    suite,
+                    result.getString("class_name"),
+                    result.getString("test_name"),
+                    errorDetails,
+                    result.getString("skipped_message"),
+                    result.getFloat("duration"),
+                    result.getString("stdout"),
+                    result.getString("stderr"),
+                    stackTrace);
+            suite.addCase(caseResult);
+            packages.computeIfAbsent(result.getString("package"), name -> new PackageResult(parent, name))
+                    .add(caseResult);
+            cases.add(caseResult);
+        }
+    }
+
+    @Override
+    public List<TrendTestResultSummary> getTrendTestResultSummary() {
+        List<TrendTestResultSummary> trend = new ArrayList<>();
+        readBuilds(
+                "ORDER BY build",
+                -1,
+                (number, total, failed, skipped, duration) -> trend.add(new TrendTestResultSummary(
+                        number, new TestResultSummary(failed, skipped, total - failed - skipped, total, duration))));
+        return trend;
+    }
+
+    @Override
+    public List<TestDurationResultSummary> getTestDurationResultSummary() {
+        List<TestDurationResultSummary> durations = new ArrayList<>();
+        readBuilds(
+                "ORDER BY build",
+                -1,
+                (number, total, failed, skipped, duration) ->
+                        durations.add(new TestDurationResultSummary(number, duration)));
+        return durations;
+    }
+
+    @Override
+    public List<HistoryTestResultSummary> getHistorySummary(int offset) {
+        Job<?, ?> theJob = Jenkins.get().getItemByFullName(job, Job.class);
+        if (theJob == null) {
+            return Collections.emptyList();
+        }
+        List<HistoryTestResultSummary> history = new ArrayList<>();
+        readBuilds(
+                "ORDER BY build DESC LIMIT " + HISTORY_PAGE_SIZE + " OFFSET ?",
+                offset,
+                (number, total, failed, skipped, duration) -> {
+                    Run<?, ?> run = theJob.getBuildByNumber(number);
+                    if (run != null) {
+                        history.add(
+                                new HistoryTestResultSummary(run, duration, failed, skipped, total - failed - skipped));
+                    }
+                });
+        return history;
+    }
+
+    @FunctionalInterface
+    private interface BuildRow {
+        void accept(int number, int total, int failed, int skipped, float duration);
+    }
+
+    /**
+     * Goes through the builds of the job that have results.
+     *
+     * @param offset bound after the job if not negative
+     */
+    private void readBuilds(String orderBy, int offset, BuildRow row) {
+        query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT build, total, failed, skipped, duration FROM builds WHERE job = ? " + orderBy)) {
+                statement.setString(1, job);
+                if (offset >= 0) {
+                    statement.setInt(2, offset);
+                }
+                try (ResultSet result = statement.executeQuery()) {
+                    while (result.next()) {
+                        row.accept(
+                                result.getInt("build"),
+                                result.getInt("total"),
+                                result.getInt("failed"),
+                                result.getInt("skipped"),
+                                result.getFloat("duration"));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public int getCountOfBuildsWithTestResults() {
+        return query(connection -> {
+            try (PreparedStatement statement =
+                    connection.prepareStatement("SELECT COUNT(*) FROM builds WHERE job = ?")) {
+                statement.setString(1, job);
+                try (ResultSet result = statement.executeQuery()) {
+                    result.next();
+                    return result.getInt(1);
+                }
+            }
+        });
+    }
+
+    @Override
+    public Run<?, ?> getFailedSinceRun(CaseResult caseResult) {
+        Integer failedSince = query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT c.failed_since FROM cases c WHERE "
+                    + cases() + " AND c.class_name = ? AND c.test_name = ? AND c.status = "
+                    + EmbeddedRemotePublisher.FAILED + " LIMIT 1")) {
+                int index = bind(statement);
+                statement.setString(index++, caseResult.getClassName());
+                statement.setString(index, caseResult.getName());
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next() ? result.getObject(1, Integer.class) : null;
+                }
+            }
+        });
+        if (failedSince == null) {
+            return null;
+        }
+        Job<?, ?> theJob = Jenkins.get().getItemByFullName(job, Job.class);
+        return theJob == null ? null : theJob.getBuildByNumber(failedSince);
+    }
+
+    @NonNull
+    @Override
+    public String getJobName() {
+        return job;
+    }
+
+    @Override
+    public int getBuild() {
+        return build;
+    }
+
+    @NonNull
+    @Override
+    public TestResult getResultByNodes(@NonNull List<String> nodeIds) {
+        return new TestResult(new EmbeddedTestResultImpl(database, job, build, nodeIds));
+    }
+
+    @CheckForNull
+    @Override
+    public TestResult getPreviousResult() {
+        Integer previous = query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT build FROM builds WHERE job = ? AND build < ? ORDER BY build DESC LIMIT 1")) {
+                statement.setString(1, job);
+                statement.setInt(2, build);
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next() ? result.getInt(1) : null;
+                }
+            }
+        });
+        return previous == null
+                ? null
+                : new TestResult(new EmbeddedTestResultImpl(database, job, previous, Collections.emptyList()));
+    }
+}
@@ -29,8 +29,11 @@ import hudson.model.AbstractDescribableImpl;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.junit.JUnitParser;
+import hudson.tasks.junit.SuiteResult;
 import hudson.tasks.junit.TestResult;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.jenkinsci.remoting.SerializableOnlyOverRemoting;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.Beta;
@@ -54,6 +57,54 @@ public abstract class JunitTestResultStorage extends AbstractDescribableImpl<Jun
         void publish(TestResult result, TaskListener listener) throws IOException;
     }
 
+    /**
+     * A {@link RemotePublisher} receiving suites while report files are still being parsed,
+     * rather than a whole {@link TestResult} once all of them are, so that the memory needed to publish a result
+     * does not grow with its size.
+     *
+     * <p>
+     * {@link #publishSuites} is called with successive batches of suites, each of about {@link #getBatchSize} cases,
+     * and parsing only goes on once a call returns, so a publisher that sends each batch before returning
+     * keeps no more than one of them in memory. {@link #finish} is called once all batches were published,
+     * including when there were none.
+     * A suite split over several report files is merged only within a batch, so it may be published more than once.
+     */
+    public interface StreamingRemotePublisher extends RemotePublisher {
+
+        /**
+         * Number of cases to publish at once; a batch may hold more when a single report file does.
+         */
+        default int getBatchSize() {
+            return 1000;
+        }
+
+        void publishSuites(List<SuiteResult> suites, TaskListener listener) throws IOException;
+
+        default void finish(TaskListener listener) throws IOException {}
+
+        /**
+         * Publishes a result that was already parsed, in batches as well.
+         */
+        @Override
+        default void publish(TestResult result, TaskListener listener) throws IOException {
+            List<SuiteResult> batch = new ArrayList<>();
+            int cases = 0;
+            for (SuiteResult suite : result.getSuites()) {
+                batch.add(suite);
+                cases += suite.getCases().size();
+                if (cases >= getBatchSize()) {
+                    publishSuites(batch, listener);
+                    batch = new ArrayList<>();
+                    cases = 0;
+                }
+            }
+            if (!batch.isEmpty()) {
+                publishSuites(batch, listener);
+            }
+            finish(listener);
+        }
+    }
+
     public abstract TestResultImpl load(String job, int build);
 
     // for now, AbstractTestResultAction.descriptions and testData are not pluggable
@@ -0,0 +1,306 @@
+package io.jenkins.plugins.junit.storage;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import hudson.tasks.junit.CaseResult;
+import hudson.tasks.junit.HistoryTestResultSummary;
+import hudson.tasks.junit.PackageResult;
+import hudson.tasks.junit.SuiteResult;
+import hudson.tasks.junit.TestDurationResultSummary;
+import hudson.tasks.junit.TestResult;
+import hudson.tasks.junit.TrendTestResultSummary;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * {@link TestResultImpl}s loaded from a {@link JunitTestResultStorage} other than the file one,
+ * each remembering the answers to the queries made to it, so that rendering a page asks the storage each
+ * question once rather than once per count or per test shown.
+ *
+ * <p>
+ * A build is kept for {@link #TTL_SECONDS} at most, since its storage may change behind our back,
+ * and all builds of a job are dropped as soon as results are published for, or a build is deleted from, any of
+ * them, as queries such as trends and histories span builds.
+ * Everything is dropped when another storage is configured.
+ */
+@Restricted(NoExternalUse.class)
+public final class TestResultImplCache {
+
+    static boolean DISABLED = SystemProperties.getBoolean(TestResultImplCache.class.getName() + ".DISABLED", false);
+    /**
+     * How long the results of a build are kept after having been loaded.
+     */
+    static long TTL_SECONDS = SystemProperties.getLong(TestResultImplCache.class.getName() + ".TTL_SECONDS", 60L);
+    /**
+     * Number of builds kept, least recently used ones are dropped first.
+     */
+    static int MAX_BUILDS = SystemProperties.getInteger(TestResultImplCache.class.getName() + ".MAX_BUILDS", 100);
+    /**
+     * Number of tests, suites and packages kept per build in answers listing them;
+     * once reached, further such answers are asked to the storage each time.
+     */
+    static int MAX_ITEMS = SystemProperties.getInteger(TestResultImplCache.class.getName() + ".MAX_ITEMS", 1000);
+
+    private static final Map<Key, Entry> builds = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > MAX_BUILDS;
+        }
+    });
+
+    /**
+     * Storage the cached builds were loaded from, guarded by {@link #builds}.
+     */
+    private static JunitTestResultStorage loadedFrom;
+
+    /**
+     * Number of times builds were dropped, guarded by {@link #builds}, so that results loaded before are not cached
+     * once they were. Counted for all jobs at once, which only misses caching a build loaded meanwhile.
+     */
+    private static long generation;
+
+    private TestResultImplCache() {}
+
+    private record Key(String job, int build) {}
+
+    private record Entry(TestResultImpl impl, long expiresAt) {}
+
+    /**
+     * Loads the results of a build, or gets them from the cache.
+     */
+    public static TestResultImpl load(@NonNull JunitTestResultStorage storage, String job, int build) {
+        if (DISABLED || TTL_SECONDS <= 0) {
+            return storage.load(job, build);
+        }
+        Key key = new Key(job, build);
+        long now = System.nanoTime();
+        Entry entry;
+        long loadedIn;
+        synchronized (builds) {
+            if (storage != loadedFrom) {
+                builds.clear();
+                loadedFrom = storage;
+            }
+            entry = builds.get(key);
+            loadedIn = generation;
+        }
+        if (entry == null || now - entry.expiresAt() >= 0) {
+            // loaded outside of the lock, at worst twice
+            TestResultImpl impl = storage.load(job, build);
+            if (impl == null) {
+                return null;
+            }
+            entry = new Entry(new CachingTestResultImpl(impl), now + TimeUnit.SECONDS.toNanos(TTL_SECONDS));
+            synchronized (builds) {
+                if (storage == loadedFrom && loadedIn == generation) {
+                    builds.put(key, entry);
+                }
+            }
+        }
+        return entry.impl();
+    }
+
+    /**
+     * Drops all builds of a job, as results were just published for one of them or one was deleted.
+     */
+    public static void invalidate(String job) {
+        synchronized (builds) {
+            generation++;
+            builds.keySet().removeIf(key -> key.job().equals(job));
+        }
+    }
+
+    static void clear() {
+        synchronized (builds) {
+            builds.clear();
+            loadedFrom = null;
+        }
+    }
+
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            invalidate(run.getParent().getFullName());
+        }
+    }
+
+    /**
+     * Asks the storage each query once, remembering its answer, including null ones,
+     * except for answers listing more than {@link #MAX_ITEMS} items along with those remembered before.
+     * Answers are shared by all callers, which must not modify them.
+     */
+    static final class CachingTestResultImpl implements TestResultImpl {
+
+        private static final Object NULL = new Object();
+
+        private final TestResultImpl delegate;
+        private final Map<String, Object> answers = new ConcurrentHashMap<>();
+        /**
+         * Number of items in the answers remembered.
+         */
+        private final AtomicInteger items = new AtomicInteger();
+
+        CachingTestResultImpl(TestResultImpl delegate) {
+            this.delegate = delegate;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T answer(String query, Supplier<T> ask) {
+            Object answer = answers.get(query);
+            if (answer == null) {
+                // not computeIfAbsent, so that slow queries do not block others
+                T asked = ask.get();
+                if (asked instanceof Collection<?> c && items.addAndGet(c.size()) > MAX_ITEMS) {
+                    items.addAndGet(-c.size());
+                    return asked;
+                }
+                answers.put(query, asked == null ? NULL : asked);
+                return asked;
+            }
+            return answer == NULL ? null : (T) answer;
+        }
+
+        @Override
+        public int getFailCount() {
+            return answer("failCount", delegate::getFailCount);
+        }
+
+        @Override
+        public int getSkipCount() {
+            return answer("skipCount", delegate::getSkipCount);
+        }
+
+        @Override
+        public int getPassCount() {
+            return answer("passCount", delegate::getPassCount);
+        }
+
+        @Override
+        public int getTotalCount() {
+            return answer("totalCount", delegate::getTotalCount);
+        }
+
+        @Override
+        public List<CaseResult> getFailedTests() {
+            return answer("failedTests", delegate::getFailedTests);
+        }
+
+        @Override
+        public List<CaseResult> getFailedTestsByPackage(String packageName) {
+            return answer("failedTests\0" + packageName, () -> delegate.getFailedTestsByPackage(packageName));
+        }
+
+        @Override
+        public List<CaseResult> getSkippedTests() {
+            return answer("skippedTests", delegate::getSkippedTests);
+        }
+
+        @Override
+        public List<CaseResult> getSkippedTestsByPackage(String packageName) {
+            return answer("skippedTests\0" + packageName, () -> delegate.getSkippedTestsByPackage(packageName));
+        }
+
+        @Override
+        public List<CaseResult> getPassedTests() {
+            return answer("passedTests", delegate::getPassedTests);
+        }
+
+        @Override
+        public List<CaseResult> getPassedTestsByPackage(String packageName) {
+            return answer("passedTests\0" + packageName, () -> delegate.getPassedTestsByPackage(packageName));
+        }
+
+        @Override
+        public PackageResult getPackageResult(String packageName) {
+            return answer("packageResult\0" + packageName, () -> delegate.getPackageResult(packageName));
+        }
+
+        @Override
+        public List<PackageResult> getAllPackageResults() {
+            return answer("allPackageResults", delegate::getAllPackageResults);
+        }
+
+        @Override
+        public List<TrendTestResultSummary> getTrendTestResultSummary() {
+            return answer("trendTestResultSummary", delegate::getTrendTestResultSummary);
+        }
+
+        @Override
+        public List<TestDurationResultSummary> getTestDurationResultSummary() {
+            return answer("testDurationResultSummary", delegate::getTestDurationResultSummary);
+        }
+
+        @Override
+        public List<HistoryTestResultSummary> getHistorySummary(int offset) {
+            return answer("historySummary\0" + offset, () -> delegate.getHistorySummary(offset));
+        }
+
+        @Override
+        public int getCountOfBuildsWithTestResults() {
+            return answer("countOfBuildsWithTestResults", delegate::getCountOfBuildsWithTestResults);
+        }
+
+        @Override
+        public Run<?, ?> getFailedSinceRun(CaseResult caseResult) {
+            return answer("failedSinceRun\0" + caseResult.getId(), () -> delegate.getFailedSinceRun(caseResult));
+        }
+
+        @CheckForNull
+        @Override
+        public Run<?, ?> getRun() {
+            return delegate.getRun();
+        }
+
+        @NonNull
+        @Override
+        public String getJobName() {
+            return delegate.getJobName();
+        }
+
+        @Override
+        public int getBuild() {
+            return delegate.getBuild();
+        }
+
+        @NonNull
+        @Override
+        public TestResult getResultByNodes(@NonNull List<String> nodeIds) {
+            return answer("resultByNodes\0" + String.join("\0", nodeIds), () -> delegate.getResultByNodes(nodeIds));
+        }
+
+        @CheckForNull
+        @Override
+        public TestResult getPreviousResult() {
+            return answer("previousResult", delegate::getPreviousResult);
+        }
+
+        @Override
+        public SuiteResult getSuite(String name) {
+            return answer("suite\0" + name, () -> delegate.getSuite(name));
+        }
+
+        @Override
+        public Collection<SuiteResult> getSuites() {
+            return answer("suites", delegate::getSuites);
+        }
+
+        @Override
+        public float getTotalTestDuration() {
+            return answer("totalTestDuration", delegate::getTotalTestDuration);
+        }
+    }
+}
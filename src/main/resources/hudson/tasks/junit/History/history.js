@@ -8,6 +8,7 @@ var appRootUrl
 var testObjectUrl
 var resultSeries
 var durationSeries
+var descriptionAvailable
 var trendChartId = 'test-trend-chart'
 
 function onBuildWindowChange(changeEvent) {
@@ -17,6 +18,97 @@ function onBuildWindowChange(changeEvent) {
     document.location = `${appRootUrl}${testObjectUrl}/history?start=${start}&count=${c}&interval=${interval}`
 }
 
+function appendHistoryRow(tbody, row) {
+    const tr = document.createElement('tr')
+    tr.style.height = '0px'
+    if (row.failCount > 0) {
+        tr.style.background = `rgba(255, 0, 0, ${0.05 + row.badness * 0.1})`
+    } else if (row.skipCount == 0) {
+        tr.style.background = 'rgba(0, 255, 0, 0.075)'
+    } else {
+        tr.style.background = 'var(--table-body-background)'
+    }
+    const cell = (text) => {
+        const td = document.createElement('td')
+        td.className = 'pane test-result-table-row'
+        td.textContent = text
+        tr.appendChild(td)
+        return td
+    }
+    const link = document.createElement('a')
+    link.href = appRootUrl + row.url
+    link.textContent = row.fullDisplayName
+    cell('').appendChild(link)
+    if (descriptionAvailable) {
+        // already translated by the markup formatter on the server, as in the table rendered by index.jelly
+        cell('').innerHTML = row.description ?? ''
+    }
+    const duration = cell(row.durationString)
+    duration.classList.add('no-wrap')
+    duration.setAttribute('data', row.duration)
+    const fail = cell(row.failCount)
+    if (row.failCount > 0) {
+        fail.style.fontWeight = 'bold'
+        fail.style.color = 'var(--error-color)'
+    }
+    const skip = cell(row.skipCount)
+    if (row.skipCount > 0) {
+        skip.style.fontWeight = 'bold'
+        skip.style.color = 'var(--warning-color)'
+    }
+    cell(row.totalCount)
+}
+
+/**
+ * Fetches the builds the page could not read within its time budget, appending them to the table as they stream in.
+ * Each response is budgeted as well and ends with the cursor to continue from.
+ */
+async function streamRemainingHistory(cursor, shown) {
+    const controller = new AbortController()
+    window.addEventListener('pagehide', () => controller.abort())
+    const tbody = document.querySelector('#testresult tbody')
+    const info = document.getElementById('history-info')
+    const last = Number(end)
+    while (cursor < last) {
+        info.textContent = `Showing ${shown} results, loading more…`
+        const url = `${appRootUrl}${testObjectUrl}/history/rows?start=${start}&cursor=${cursor}&end=${end}&interval=${interval}`
+        let next = cursor
+        try {
+            const rsp = await fetch(url, {signal: controller.signal})
+            const reader = rsp.body.pipeThrough(new TextDecoderStream()).getReader()
+            let buffer = ''
+            for (;;) {
+                const {value, done} = await reader.read()
+                if (done) {
+                    break
+                }
+                buffer += value
+                let newline
+                while ((newline = buffer.indexOf('\n')) >= 0) {
+                    const row = JSON.parse(buffer.substring(0, newline))
+                    buffer = buffer.substring(newline + 1)
+                    if (row.cursor !== undefined) {
+                        next = row.cursor
+                    } else {
+                        appendHistoryRow(tbody, row)
+                        shown++
+                    }
+                }
+            }
+        } catch (e) {
+            if (controller.signal.aborted) {
+                return
+            }
+            console.warn('Failed to load test history', e)
+        }
+        if (next <= cursor) {
+            break
+        }
+        cursor = next
+    }
+    info.textContent = cursor < last ? `Showing ${shown} results from the most recent builds out of ` : ''
+}
+
 function onBuildIntervalChange(changeEvent) {
     let selectObj = changeEvent.target;
     let idx = selectObj.selectedIndex;
@@ -42,6 +134,7 @@ function onBuildIntervalChange(changeEvent) {
             appRootUrl = rootUrl
         }
         testObjectUrl = dataEl.getAttribute("data-testObjectUrl")
+        descriptionAvailable = dataEl.getAttribute("data-description-available") === "true"
 
         trendChartJsonStr = null
         dataEl.setAttribute("data-trendChartJson", "")
@@ -57,7 +150,9 @@ function onBuildIntervalChange(changeEvent) {
         document.getElementById('history-window').value = count
         document.getElementById('history-interval').value = interval
 
-        if (trendChartJson?.status && trendChartJson?.status.buildsWithTestResult < trendChartJson?.status.buildsRequested) {
+        if (trendChartJson?.status?.hasTimedOut && trendChartJson.status.cursor < Number(end)) {
+            streamRemainingHistory(trendChartJson.status.cursor, trendChartJson.status.buildsWithTestResult)
+        } else if (trendChartJson?.status && trendChartJson?.status.buildsWithTestResult < trendChartJson?.status.buildsRequested) {
             let s
             if (trendChartJson.status.hasTimedOut) {
                 s = `Too big. Showing ${trendChartJson.status.buildsWithTestResult} results from the most recent ${trendChartJson.status.buildsParsed} out of `
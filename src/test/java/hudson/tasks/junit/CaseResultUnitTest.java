@@ -26,8 +26,14 @@ package hudson.tasks.junit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
@@ -70,4 +76,68 @@ class CaseResultUnitTest {
         assertFalse(cr.isUrlValue("https://example.com/with space"));
         assertFalse(cr.isUrlValue("https://example.com\nsecond line"));
     }
+
+    @Test
+    void compactLayout() throws Exception {
+        TestResult src = new TestResult();
+        src.parse(TestResultTest.getDataFile("junit-report-1472.xml"), null);
+        int cases = 0;
+        for (SuiteResult suite : src.getSuites()) {
+            CaseResult previous = null;
+            for (CaseResult c : suite.getCases()) {
+                assertTrue(c.getProperties().isEmpty());
+                assertTrue(c.getFlakyFailures().isEmpty());
+                assertTrue(c.getRerunFailures().isEmpty());
+                if (previous != null && previous.getClassName().equals(c.getClassName())) {
+                    assertSame(previous.getClassName(), c.getClassName());
+                }
+                previous = c;
+                cases++;
+            }
+        }
+        assertTrue(cases > 1000);
+
+        TestResult copy = new TestResult(src);
+        CaseResult original = src.getSuites().get(0).getCases().get(0);
+        CaseResult copied = copy.getSuites().get(0).getCases().get(0);
+        assertSame(original.getProperties(), copied.getProperties());
+        assertSame(original.getClassName(), copied.getClassName());
+    }
+
+    /**
+     * Copying a parsed report, as done each time a cached result is handed out,
+     * should only allocate the case objects themselves: what cases do not have is not allocated,
+     * and what they have is shared rather than copied.
+     */
+    @Test
+    void copiesShareWhatTheyDoNotChange() throws Exception {
+        TestResult src = new TestResult();
+        src.parse(TestResultTest.getDataFile("junit-report-1472.xml"), null);
+        TestResult copy = new TestResult(src);
+        assertEquals(src.getSuites().size(), copy.getSuites().size());
+        Field properties = CaseResult.class.getDeclaredField("properties");
+        Field flakyFailures = CaseResult.class.getDeclaredField("flakyFailures");
+        Field rerunFailures = CaseResult.class.getDeclaredField("rerunFailures");
+        for (Field f : new Field[] {properties, flakyFailures, rerunFailures}) {
+            f.setAccessible(true);
+        }
+        for (int i = 0; i < src.getSuites().size(); i++) {
+            List<CaseResult> originals = src.getSuites().get(i).getCases();
+            List<CaseResult> copies = copy.getSuites().get(i).getCases();
+            assertEquals(originals.size(), copies.size());
+            for (int j = 0; j < copies.size(); j++) {
+                CaseResult c = copies.get(j);
+                assertNotSame(originals.get(j), c);
+                assertNull(properties.get(c));
+                assertNull(flakyFailures.get(c));
+                assertNull(rerunFailures.get(c));
+                assertSame(Collections.emptyMap(), c.getProperties());
+                assertSame(Collections.emptyList(), c.getFlakyFailures());
+                assertSame(originals.get(j).getClassName(), c.getClassName());
+                if (j > 0 && copies.get(j - 1).getClassName().equals(c.getClassName())) {
+                    assertSame(copies.get(j - 1).getClassName(), c.getClassName());
+                }
+            }
+        }
+    }
 }
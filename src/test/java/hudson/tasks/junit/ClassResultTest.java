@@ -1,8 +1,10 @@
 package hudson.tasks.junit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import hudson.tasks.test.TestResult;
+import java.util.Set;
 import org.junit.jupiter.api.Test;
 
 class ClassResultTest {
@@ -42,4 +44,33 @@ class ClassResultTest {
         TestResult result = classResult.findCorrespondingResult("tc_aaaa");
         assertEquals(caseResult, result);
     }
+
+    @Test
+    void testSafeNamesOfDuplicateCases() {
+        ClassResult classResult = new ClassResult(null, "com.example.ExampleTest");
+
+        CaseResult first = new CaseResult(null, "test case", null);
+        CaseResult second = new CaseResult(null, "test case", null);
+        CaseResult other = new CaseResult(null, "other", null);
+
+        classResult.add(first);
+        classResult.add(second);
+        classResult.add(other);
+        classResult.tally();
+
+        assertEquals(Set.of("test_case", "test_case_2"), Set.of(first.getSafeName(), second.getSafeName()));
+        assertEquals("other", other.getSafeName());
+        assertSame(first, classResult.getCaseResult(first.getSafeName()));
+        assertSame(second, classResult.getCaseResult(second.getSafeName()));
+
+        String firstName = first.getSafeName(), secondName = second.getSafeName();
+        CaseResult third = new CaseResult(null, "test case", null);
+        classResult.add(third);
+        classResult.tally();
+
+        assertEquals(firstName, first.getSafeName());
+        assertEquals(secondName, second.getSafeName());
+        assertEquals("test_case_3", third.getSafeName());
+        assertSame(third, classResult.getCaseResult("test_case_3"));
+    }
 }
@@ -0,0 +1,129 @@
+package hudson.tasks.junit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import hudson.tasks.junit.History.SimpleLinearRegression;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DurationStatsTest {
+
+    @TempDir
+    private File tmp;
+
+    @Test
+    void meanVarianceAndTrendMatchTheWholeSeries() {
+        double[] xs = {2, 3, 4, 5, 6, 8, 10, 11};
+        double[] ys = {21.05, 23.51, 24.23, 27.71, 30.86, 45.85, 52.12, 55.98};
+        DurationStats.Stats stats = new DurationStats.Stats();
+        for (int i = 0; i < xs.length; i++) {
+            stats.add((int) xs[i], ys[i]);
+        }
+        DurationStats.Summary summary = stats.summary();
+
+        double mean = Arrays.stream(ys).average().orElseThrow();
+        double variance =
+                Arrays.stream(ys).map(y -> (y - mean) * (y - mean)).sum() / (ys.length - 1);
+        double[] cs = SimpleLinearRegression.coefficients(xs, ys);
+        assertEquals(xs.length, summary.count());
+        assertThat(summary.mean(), closeTo(mean, 1e-9));
+        assertThat(summary.stdDev(), closeTo(Math.sqrt(variance), 1e-9));
+        assertThat(summary.intercept(), closeTo(cs[0], 1e-9));
+        assertThat(summary.slope(), closeTo(cs[1], 1e-9));
+        assertThat(summary.trendAt(12), closeTo(cs[0] + 12 * cs[1], 1e-9));
+    }
+
+    @Test
+    void percentilesAreWithinTheAccuracyOfTheSketch() {
+        Random random = new Random(42);
+        double[] values = new double[10_000];
+        DurationStats.Stats stats = new DurationStats.Stats();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(random.nextGaussian()) * 0.2;
+            stats.add(i + 1, values[i]);
+        }
+        Arrays.sort(values);
+        DurationStats.Summary summary = stats.summary();
+        double error = DurationStats.Sketch.GAMMA - 1;
+        assertThat(summary.median(), closeTo(values[values.length / 2], values[values.length / 2] * error));
+        assertThat(summary.p95(), closeTo(values[values.length * 95 / 100], values[values.length * 95 / 100] * error));
+    }
+
+    @Test
+    void sketchFoldsLowBucketsWhenValuesSpanTooMuch() {
+        DurationStats.Sketch sketch = new DurationStats.Sketch();
+        sketch.add(0);
+        for (double d = 1e-5; d < 1e5; d *= 1.5) {
+            sketch.add(d);
+        }
+        sketch.add(1e6);
+        // the highest values stay accurate
+        assertThat(sketch.quantile(1), closeTo(1e6, 1e6 * (DurationStats.Sketch.GAMMA - 1)));
+        assertEquals(0, sketch.quantile(0));
+    }
+
+    @Test
+    void slowerThanUsual() {
+        DurationStats.Stats stats = new DurationStats.Stats();
+        for (int i = 1; i <= 20; i++) {
+            stats.add(i, 1.0 + (i % 3) * 0.05);
+        }
+        DurationStats.Summary summary = stats.summary();
+        assertTrue(summary.isSlowerThanUsual(3.0));
+        assertFalse(summary.isSlowerThanUsual(1.1));
+
+        DurationStats.Stats few = new DurationStats.Stats();
+        few.add(1, 1.0);
+        few.add(2, 1.0);
+        assertFalse(few.summary().isSlowerThanUsual(10.0));
+    }
+
+    @Test
+    void savedAndLoaded() throws Exception {
+        TestResult result = new TestResult();
+        result.parse(new File(getClass().getResource("junit-report-1463.xml").toURI()));
+        result.tally();
+        DurationStats stats = new DurationStats();
+        stats.record(1, result);
+        stats.record(2, result);
+        File file = new File(tmp, "junit-history/stats.bin");
+        stats.save(file);
+
+        DurationStats loaded = new DurationStats();
+        loaded.load(file);
+        CaseResult c = result.getSuites().iterator().next().getCases().get(0);
+        assertEquals(stats.get(c.getId()), loaded.get(c.getId()));
+        assertEquals(2, loaded.get(c.getId()).count());
+        assertEquals(stats.get(result.getId()), loaded.get(result.getId()));
+        assertNull(loaded.get("junit/no/such/test"));
+
+        DurationStats missing = new DurationStats();
+        missing.load(new File(tmp, "missing.bin"));
+        assertNull(missing.get(c.getId()));
+    }
+
+    @Test
+    void testsThatStopRunningAreForgotten() throws Exception {
+        TestResult result = new TestResult();
+        result.parse(new File(getClass().getResource("junit-report-1463.xml").toURI()));
+        result.tally();
+        TestResult none = new TestResult();
+        none.tally();
+        CaseResult c = result.getSuites().iterator().next().getCases().get(0);
+        DurationStats stats = new DurationStats();
+        stats.record(1, result);
+        stats.record(1 + DurationStats.RETENTION, none);
+        assertEquals(1, stats.get(c.getId()).count());
+        stats.record(2 + DurationStats.RETENTION, none);
+        assertNull(stats.get(c.getId()));
+        assertNull(stats.get(result.getId()));
+    }
+}
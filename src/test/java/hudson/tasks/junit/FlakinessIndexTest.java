@@ -0,0 +1,58 @@
+package hudson.tasks.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FlakinessIndexTest {
+
+    @TempDir
+    private File tmp;
+
+    private TestResult result(String name, String cases) throws Exception {
+        File report = new File(tmp, name + ".xml");
+        Files.writeString(report.toPath(), "<testsuite name='F'>" + cases + "</testsuite>");
+        TestResult result = new TestResult();
+        result.parse(report, null);
+        result.tally();
+        return result;
+    }
+
+    @Test
+    void flakyCasesAreSavedAndLoaded() throws Exception {
+        TestResult passing =
+                result("passing", "<testcase classname='F' name='stable'/><testcase classname='F' name='flip'/>");
+        TestResult failing = result(
+                "failing",
+                "<testcase classname='F' name='stable'/><testcase classname='F' name='flip'><failure/></testcase>");
+        FlakinessIndex index = new FlakinessIndex();
+        index.record(1, passing);
+        index.record(2, failing);
+        index.record(3, passing);
+
+        List<FlakinessIndex.Flakiness> top = index.top(10);
+        assertEquals(1, top.size());
+        assertEquals("junit/(root)/F/flip", top.get(0).id());
+        assertEquals(2, top.get(0).flips());
+        assertEquals(3, top.get(0).runs());
+
+        File file = new File(tmp, "junit-history/flakiness.bin");
+        index.save(file);
+        FlakinessIndex loaded = new FlakinessIndex();
+        loaded.load(file);
+        assertEquals(top, loaded.top(10));
+
+        // a case gets its name once it is flaky, after being loaded without one
+        loaded.record(4, result("stable-fails", "<testcase classname='F' name='stable'><failure/></testcase>"));
+        assertTrue(loaded.top(10).stream().anyMatch(f -> "junit/(root)/F/stable".equals(f.id())));
+
+        FlakinessIndex missing = new FlakinessIndex();
+        missing.load(new File(tmp, "missing.bin"));
+        assertTrue(missing.top(10).isEmpty());
+    }
+}
@@ -0,0 +1,108 @@
+package hudson.tasks.junit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class HistoryExecutorTest {
+
+    @Test
+    void requestsAreCappedAndCancellable() throws Exception {
+        requestsAreCappedAndCancellable(false);
+        requestsAreCappedAndCancellable(true);
+    }
+
+    private static void requestsAreCappedAndCancellable(boolean virtualThreads) throws Exception {
+        HistoryExecutor executor = new HistoryExecutor(4, 10, virtualThreads);
+        HistoryExecutor.Request request = executor.newRequest(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            int n = i;
+            futures.add(request.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } finally {
+                    running.decrementAndGet();
+                }
+                return n;
+            }));
+        }
+
+        // another request still gets threads while the first one waits
+        assertEquals("other", executor.newRequest(2).submit(() -> "other").get(10, TimeUnit.SECONDS));
+
+        while (executor.getActiveCount() != 2) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i, futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertThat(maxRunning.get(), lessThanOrEqualTo(2));
+
+        CountDownLatch unblock = new CountDownLatch(1);
+        request = executor.newRequest(1);
+        Future<Object> blocked = request.submit(() -> {
+            unblock.await();
+            return "done";
+        });
+        Future<Object> waiting = request.submit(() -> null);
+        while (executor.getActiveCount() != 1) {
+            Thread.sleep(10);
+        }
+        request.cancel();
+        // running tasks are not interrupted
+        assertFalse(blocked.isCancelled());
+        assertTrue(waiting.isCancelled());
+        assertTrue(request.submit(() -> null).isCancelled());
+        unblock.countDown();
+        assertEquals("done", blocked.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void tasksBeyondTheQueueAreRejected() throws Exception {
+        tasksBeyondTheQueueAreRejected(false);
+        tasksBeyondTheQueueAreRejected(true);
+    }
+
+    private static void tasksBeyondTheQueueAreRejected(boolean virtualThreads) throws Exception {
+        HistoryExecutor executor = new HistoryExecutor(1, 1, virtualThreads);
+        HistoryExecutor.Request request = executor.newRequest(3);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Object> first = request.submit(() -> {
+            release.await();
+            return null;
+        });
+        Future<Object> second = request.submit(() -> {
+            release.await();
+            return null;
+        });
+        Future<Object> third = request.submit(() -> null);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> third.get(10, TimeUnit.SECONDS));
+        assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+        assertEquals(1, executor.getRejectedTaskCount());
+
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+    }
+}
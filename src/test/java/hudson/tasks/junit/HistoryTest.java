@@ -33,8 +33,10 @@ import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Project;
 import hudson.model.Result;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import net.sf.json.JSONObject;
 import org.htmlunit.AlertHandler;
 import org.htmlunit.Page;
 import org.htmlunit.html.HtmlPage;
@@ -160,6 +162,80 @@ class HistoryTest {
         }
     }
 
+    @LocalData
+    @Test
+    void testHistoryContinuesFromCursor() throws Exception {
+        FreeStyleBuild build7 = project.getBuildByNumber(7);
+        TestResult tr = build7.getAction(TestResultAction.class).getResult();
+
+        int batchSize = History.BATCH_SIZE;
+        long maxTime = History.MAX_TIME_ELAPSED_RETRIEVING_HISTORY_NS;
+        History.BATCH_SIZE = 2;
+        History.MAX_TIME_ELAPSED_RETRIEVING_HISTORY_NS = 0;
+        HistoryCache.clear();
+        try {
+            History.HistoryTableResult first = new History(tr).retrieveHistorySummary(0, 10);
+            assertTrue(first.parseResult.hasTimedOut);
+            assertEquals(2, first.parseResult.cursor);
+            List<Integer> numbers = new ArrayList<>();
+            for (HistoryTestResultSummary summary : first.getHistorySummaries()) {
+                numbers.add(summary.getRun().getNumber());
+            }
+
+            int cursor = first.parseResult.cursor;
+            try (JenkinsRule.WebClient wc = rule.createWebClient()) {
+                while (cursor < 10) {
+                    String body = wc.goTo(
+                                    build7.getUrl() + "testReport/history/rows?start=0&cursor=" + cursor
+                                            + "&end=10&interval=1",
+                                    "application/x-ndjson")
+                            .getWebResponse()
+                            .getContentAsString();
+                    int next = cursor;
+                    for (String line : body.split("\n")) {
+                        JSONObject json = JSONObject.fromObject(line);
+                        if (json.has("cursor")) {
+                            next = json.getInt("cursor");
+                        } else {
+                            numbers.add(json.getInt("number"));
+                        }
+                    }
+                    assertTrue(next > cursor, "each request makes progress");
+                    cursor = next;
+                }
+            }
+            assertEquals(List.of(7, 5, 4, 3), numbers);
+        } finally {
+            History.BATCH_SIZE = batchSize;
+            History.MAX_TIME_ELAPSED_RETRIEVING_HISTORY_NS = maxTime;
+        }
+    }
+
+    @LocalData
+    @Test
+    void testHistoryRowsFromNegativeCursor() throws Exception {
+        FreeStyleBuild build7 = project.getBuildByNumber(7);
+        try (JenkinsRule.WebClient wc = rule.createWebClient()) {
+            String body = wc.goTo(
+                            build7.getUrl() + "testReport/history/rows?start=-5&cursor=-3&end=10&interval=1",
+                            "application/x-ndjson")
+                    .getWebResponse()
+                    .getContentAsString();
+            List<Integer> numbers = new ArrayList<>();
+            int cursor = -1;
+            for (String line : body.split("\n")) {
+                JSONObject json = JSONObject.fromObject(line);
+                if (json.has("cursor")) {
+                    cursor = json.getInt("cursor");
+                } else {
+                    numbers.add(json.getInt("number"));
+                }
+            }
+            assertEquals(10, cursor);
+            assertEquals(List.of(7, 5, 4, 3), numbers);
+        }
+    }
+
     static class Alerter implements AlertHandler {
 
         Page page = null;
@@ -24,12 +24,15 @@
 package hudson.tasks.junit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assumptions.assumeFalse;
@@ -38,6 +41,7 @@ import hudson.Extension;
 import hudson.FilePath;
 import hudson.Functions;
 import hudson.Launcher;
+import hudson.XmlFile;
 import hudson.matrix.AxisList;
 import hudson.matrix.MatrixBuild;
 import hudson.matrix.MatrixProject;
@@ -56,6 +60,7 @@ import hudson.slaves.DumbSlave;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import hudson.tasks.test.TestObject;
+import hudson.tasks.test.TestResultTrendStore;
 import hudson.tasks.test.helper.WebClientFactory;
 import hudson.util.HttpResponses;
 import java.io.File;
@@ -63,13 +68,23 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
+import net.sf.json.JSONArray;
 import org.apache.commons.io.FileUtils;
 import org.htmlunit.html.HtmlForm;
 import org.htmlunit.html.HtmlPage;
@@ -80,6 +95,7 @@ import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.LogRecorder;
 import org.jvnet.hudson.test.SingleFileSCM;
+import org.jvnet.hudson.test.TestBuilder;
 import org.jvnet.hudson.test.TestExtension;
 import org.jvnet.hudson.test.TouchBuilder;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
@@ -257,6 +273,371 @@ class JUnitResultArchiverTest {
         assertEquals(/* ⅞ = 87.5% */ 87, testResultAction.getBuildHealth().getScore());
     }
 
+    @Test
+    void repeatedArchivingAppendsSegments() throws Exception {
+        project.getPublishersList().removeAll(JUnitResultArchiver.class);
+        project.getBuildersList().add(new SimpleArchive("A", 7, 0));
+        project.getBuildersList().add(new SimpleArchive("B", 0, 1));
+        project.getBuildersList().add(new SimpleArchive("C", 2, 1));
+        List<String> filesWhileRunning = new ArrayList<>();
+        project.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                filesWhileRunning.addAll(List.of(build.getRootDir().list((dir, name) -> name.startsWith("junit"))));
+                return true;
+            }
+        });
+        FreeStyleBuild build =
+                j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        assertThat(filesWhileRunning, containsInAnyOrder("junitResult.xml", "junitResult-1.xml", "junitResult-2.xml"));
+        // merged once the build completed
+        assertTrue(new File(build.getRootDir(), "junitResult.xml").isFile());
+        assertFalse(new File(build.getRootDir(), "junitResult-1.xml").exists());
+        assertFalse(new File(build.getRootDir(), "junitResult-2.xml").exists());
+        TestResult compacted = new TestResult();
+        compacted.parse(new XmlFile(TestResultAction.XSTREAM, new File(build.getRootDir(), "junitResult.xml")));
+        compacted.tally();
+        assertEquals(10, compacted.getTotalCount());
+
+        TestResult result = build.getAction(TestResultAction.class).getResult();
+        assertEquals(10, result.getTotalCount());
+        assertEquals(2, result.getFailCount());
+        assertEquals(3, result.getSuites().size());
+        assertEquals(2, result.byPackage("(root)").getFailCount());
+
+        boolean cacheEnabled = TestResultAction.RESULT_CACHE_ENABLED;
+        try {
+            for (boolean enabled : new boolean[] {true, false}) {
+                TestResultAction.RESULT_CACHE_ENABLED = enabled;
+                TestResultAction.resultCache.clear();
+                build.reload();
+                TestResultAction action = build.getAction(TestResultAction.class);
+                result = action.getResult();
+                assertEquals(10, action.getTotalCount());
+                assertEquals(10, result.getTotalCount());
+                assertEquals(2, result.getFailCount());
+                assertEquals(3, result.getSuites().size());
+                assertEquals(8, result.getPassedTests().size());
+                assertNotNull(result.getCase("C", "C.failing0"));
+            }
+        } finally {
+            TestResultAction.RESULT_CACHE_ENABLED = cacheEnabled;
+        }
+    }
+
+    @Test
+    void historyIsReadFromIndex() throws Exception {
+        project.getPublishersList().removeAll(JUnitResultArchiver.class);
+        project.getBuildersList().add(new SimpleArchive("A", 2, 1));
+        FreeStyleBuild b1 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        FreeStyleBuild b2 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        assertTrue(new File(project.getRootDir(), "junit-history/1.idx").isFile());
+
+        TestResult result = b2.getAction(TestResultAction.class).getResult();
+        CaseResult failing = result.getFailedTests().get(0);
+        HistoryIndex index = HistoryIndex.of(project);
+        HistoryIndex.Row row = index.find(2, failing.getId());
+        assertNotNull(row);
+        assertEquals(1, row.failCount());
+        assertEquals(1, row.failedSince());
+        row = index.find(2, result.getId());
+        assertNotNull(row);
+        assertEquals(2, row.passCount());
+        assertEquals(1, row.failCount());
+        assertNull(index.find(2, result.getId() + "/nosuch"));
+
+        // the history no longer needs the results of earlier builds
+        Files.delete(new File(b1.getRootDir(), "junitResult.xml").toPath());
+        TestResultAction.resultCache.clear();
+        b1.reload();
+        List<HistoryTestResultSummary> history =
+                new History(failing).retrieveHistorySummary(0, 10).getHistorySummaries();
+        assertEquals(2, history.size());
+        for (HistoryTestResultSummary summary : history) {
+            assertEquals(1, summary.getFailCount());
+        }
+
+        b1.delete();
+        assertFalse(new File(project.getRootDir(), "junit-history/1.idx").exists());
+    }
+
+    @Test
+    void historyIsCachedAcrossRequests() throws Exception {
+        project.getPublishersList().removeAll(JUnitResultArchiver.class);
+        project.getBuildersList().add(new SimpleArchive("A", 2, 1));
+        FreeStyleBuild b1 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        FreeStyleBuild b2 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        CaseResult failing =
+                b2.getAction(TestResultAction.class).getResult().getFailedTests().get(0);
+
+        History.HistoryTableResult first = new History(failing).retrieveHistorySummary(0, 10);
+        assertEquals(2, first.getHistorySummaries().size());
+        assertSame(first, new History(failing).retrieveHistorySummary(0, 10));
+
+        // a new build only needs the new build to be read
+        Files.delete(new File(b1.getRootDir(), "junitResult.xml").toPath());
+        Files.delete(new File(project.getRootDir(), "junit-history/1.idx").toPath());
+        TestResultAction.resultCache.clear();
+        b1.reload();
+        j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        History.HistoryTableResult second = new History(failing).retrieveHistorySummary(0, 10);
+        assertNotSame(first, second);
+        assertEquals(3, second.getHistorySummaries().size());
+        for (HistoryTestResultSummary summary : second.getHistorySummaries()) {
+            assertEquals(1, summary.getFailCount());
+        }
+    }
+
+    @Test
+    void flakiestTestsAreListed() throws Exception {
+        project.getPublishersList().removeAll(JUnitResultArchiver.class);
+        project.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                String flip = build.getNumber() % 2 == 0 ? "<error message=\"failure\"/>" : "";
+                build.getWorkspace()
+                        .child("flaky.xml")
+                        .write(
+                                "<testsuite name=\"F\"><testcase classname=\"F\" name=\"stable\"/>"
+                                        + "<testcase classname=\"F\" name=\"flip\">" + flip + "</testcase></testsuite>",
+                                "UTF-8");
+                new JUnitResultArchiver("flaky.xml").perform(build, build.getWorkspace(), launcher, listener);
+                return true;
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            project.scheduleBuild2(0).get();
+        }
+
+        List<FlakinessIndex.Flakiness> top = FlakinessIndex.of(project).top(10);
+        assertEquals(1, top.size());
+        assertEquals("junit/(root)/F/flip", top.get(0).id());
+        assertEquals(3, top.get(0).flips());
+        assertEquals(4, top.get(0).runs());
+        assertEquals(2, top.get(0).failures());
+        assertEquals(0.75, top.get(0).flakiness(), 1e-9);
+
+        JSONArray json = JSONArray.fromObject(j.createWebClient()
+                .goTo("job/junit/test/flaky?top=5", "application/json")
+                .getWebResponse()
+                .getContentAsString());
+        assertEquals(1, json.size());
+        assertEquals("junit/(root)/F/flip", json.getJSONObject(0).getString("id"));
+        assertEquals("job/junit/4/testReport/junit/(root)/F/flip", json.getJSONObject(0).getString("url"));
+    }
+
+    @Test
+    void singleTestIsReadWithoutLoadingTheWholeResult() throws Exception {
+        project.getPublishersList().removeAll(JUnitResultArchiver.class);
+        project.getBuildersList().add(new SimpleArchive("A", 2, 1));
+        project.getBuildersList().add(new SimpleArchive("B", 1, 0));
+        FreeStyleBuild b1 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        FreeStyleBuild b2 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        CaseResult failing = b2.getAction(TestResultAction.class).getResult().getFailedTests().get(0);
+
+        TestResultAction.resultCache.clear();
+        b1.reload();
+        TestResultAction action = b1.getAction(TestResultAction.class);
+        CaseResult c = (CaseResult) action.findCorrespondingResult(failing.getId());
+        assertEquals(failing.getId(), c.getId());
+        assertTrue(c.isFailed());
+        assertEquals(b1, c.getRun());
+        ClassResult a = (ClassResult) action.findCorrespondingResult(c.getParent().getId());
+        assertEquals(2, a.getPassCount());
+        assertEquals(1, a.getFailCount());
+        assertNull(action.findCorrespondingResult("junit/(root)/C"));
+
+        CaseResult previous = failing.getPreviousResult();
+        assertEquals(b1, previous.getRun());
+        assertEquals(failing.getId(), previous.getId());
+        assertTrue(previous.isFailed());
+
+        // none of this loaded the whole result
+        assertTrue(TestResultAction.resultCache.isEmpty());
+        assertEquals(3, action.getResult().getTotalCount());
+    }
+
+    @Test
+    void historyOfWholeResultsIsReadFromTheTrendStore() throws Exception {
+        project.getPublishersList().removeAll(JUnitResultArchiver.class);
+        project.getBuildersList().add(new SimpleArchive("A", 2, 1));
+        FreeStyleBuild b1 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        FreeStyleBuild b2 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        TestResult result = b2.getAction(TestResultAction.class).getResult();
+        while (!TestResultTrendStore.of(project).isReady()) {
+            Thread.sleep(10);
+        }
+
+        File[] rows = new File(project.getRootDir(), "junit-history").listFiles((dir, name) -> name.endsWith(".idx"));
+        for (File row : rows) {
+            Files.delete(row.toPath());
+        }
+        TestResultAction.resultCache.clear();
+        b1.reload();
+        List<HistoryTestResultSummary> history =
+                new History(result).retrieveHistorySummary(0, 10).getHistorySummaries();
+        assertEquals(2, history.size());
+        for (HistoryTestResultSummary summary : history) {
+            assertEquals(2, summary.getPassCount());
+            assertEquals(1, summary.getFailCount());
+        }
+        // neither the rows of the builds nor their results were read
+        assertTrue(TestResultAction.resultCache.isEmpty());
+    }
+
+    @Test
+    void buildsTheLastSeenIndexSkipsCountTowardsTheBacktrackLimit() throws Exception {
+        project.getPublishersList().removeAll(JUnitResultArchiver.class);
+        project.getBuildersList().add(new SimpleArchive("A", 1, 0));
+        LastSeenIndex.DISABLED = true;
+        FreeStyleBuild b1;
+        try {
+            b1 = j.buildAndAssertSuccess(project); // older than the index
+        } finally {
+            LastSeenIndex.DISABLED = false;
+        }
+        project.getBuildersList().replace(new SimpleArchive("B", 1, 0));
+        for (int i = 0; i < 3; i++) {
+            j.buildAndAssertSuccess(project);
+        }
+        project.getBuildersList().replace(new SimpleArchive("A", 1, 0));
+        FreeStyleBuild b5 = j.buildAndAssertSuccess(project);
+        CaseResult c = b5.getAction(TestResultAction.class).getResult().getPassedTests().get(0);
+
+        assertEquals(b1, c.getPreviousResult().getRun());
+        int max = CaseResult.PREVIOUS_TEST_RESULT_BACKTRACK_BUILDS_MAX;
+        CaseResult.PREVIOUS_TEST_RESULT_BACKTRACK_BUILDS_MAX = 3;
+        try {
+            assertNull(c.getPreviousResult(), "builds #2 to #4 used up the budget");
+        } finally {
+            CaseResult.PREVIOUS_TEST_RESULT_BACKTRACK_BUILDS_MAX = max;
+        }
+    }
+
+    @Test
+    void unreadableResultsAreNotCached() throws Exception {
+        project.getPublishersList().removeAll(JUnitResultArchiver.class);
+        project.getBuildersList().add(new SimpleArchive("A", 2, 1));
+        FreeStyleBuild b = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        Path data = new File(b.getRootDir(), "junitResult.xml").toPath();
+        String saved = Files.readString(data);
+
+        Files.writeString(data, "<result><suites>");
+        TestResultAction.resultCache.clear();
+        b.reload();
+        assertEquals(0, b.getAction(TestResultAction.class).getResult().getTotalCount());
+        assertTrue(TestResultAction.resultCache.isEmpty());
+
+        Files.writeString(data, saved);
+        assertEquals(3, b.getAction(TestResultAction.class).getResult().getTotalCount());
+    }
+
+    @Test
+    void failedSinceIsComputedFromTheHistoryIndexAndSaved() throws Exception {
+        project.getPublishersList().removeAll(JUnitResultArchiver.class);
+        project.getBuildersList().add(new SimpleArchive("A", 2, 1));
+        FreeStyleBuild b1 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        FreeStyleBuild b2 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        assertEquals(1, b2.getAction(TestResultAction.class).getFailedTests().get(0).getFailedSince());
+
+        // only the index of previous builds is left to tell since when the test fails
+        for (FreeStyleBuild b : List.of(b1, b2)) {
+            Files.delete(new File(b.getRootDir(), "junitResult.xml").toPath());
+        }
+        TestResultAction.resultCache.clear();
+        b1.reload();
+        b2.reload();
+
+        FreeStyleBuild b3 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        assertThat(
+                Files.readString(new File(b3.getRootDir(), "junitResult.xml").toPath()),
+                containsString("<failedSince>1</failedSince>"));
+        TestResultAction.resultCache.clear();
+        b3.reload();
+        CaseResult failing = b3.getAction(TestResultAction.class).getFailedTests().get(0);
+        assertEquals(1, failing.getFailedSince());
+        assertEquals(3, failing.getAge());
+    }
+
+    @Test
+    void regressionsAreCountedWhenRecorded() throws Exception {
+        project.getPublishersList().removeAll(JUnitResultArchiver.class);
+        String[] report = {
+            "<testsuite name='A'><testcase classname='A' name='a'/><testcase classname='A' name='b'/></testsuite>"
+        };
+        project.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                build.getWorkspace().child("TEST-A.xml").write(report[0], "UTF-8");
+                return true;
+            }
+        });
+        project.getPublishersList().add(new JUnitResultArchiver("TEST-A.xml"));
+        j.buildAndAssertSuccess(project);
+        report[0] = "<testsuite name='A'><testcase classname='A' name='a'><failure/></testcase>"
+                + "<testcase classname='A' name='b'/><testcase classname='A' name='c'><failure/></testcase></testsuite>";
+        FreeStyleBuild b2 = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+        assertEquals(1, b2.getAction(TestResultAction.class).getRegressionCount());
+        assertThat(
+                Files.readString(new File(b2.getRootDir(), "build.xml").toPath()),
+                containsString("<regressionCount>1</regressionCount>"));
+
+        // the widget only needs what is kept with the build
+        Files.delete(new File(b2.getRootDir(), "junitResult.xml").toPath());
+        TestResultAction.resultCache.clear();
+        b2.reload();
+        List<String> lines = b2.getAction(TestResultAction.class).getWidget().getLines();
+        assertEquals(Messages.Widget_Failed(2), lines.get(0));
+        assertEquals(Messages.Widget_Regression(1), lines.get(1));
+        assertEquals(Messages.Widget_Passed(1) + ", " + Messages.Widget_Total(3), lines.get(2));
+    }
+
+    @Test
+    void concurrentReadersDuringColdLoad() throws Exception {
+        project.getPublishersList().removeAll(JUnitResultArchiver.class);
+        project.getBuildersList().add(new SimpleArchive("A", 200, 3));
+        project.getBuildersList().add(new SimpleArchive("B", 100, 0));
+        FreeStyleBuild build =
+                j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0).get());
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            for (int round = 0; round < 5; round++) {
+                TestResultAction.resultCache.clear();
+                build.reload();
+                TestResultAction action = build.getAction(TestResultAction.class);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<TestResult>> results = new ArrayList<>();
+                for (int i = 0; i < 64; i++) {
+                    boolean countsOnly = i % 2 == 0;
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        assertEquals(303, action.getTotalCount());
+                        assertEquals(3, action.getFailCount());
+                        assertEquals(0, action.getSkipCount());
+                        return countsOnly ? null : action.getResult();
+                    }));
+                }
+                start.countDown();
+                Set<TestResult> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (Future<TestResult> f : results) {
+                    TestResult r = f.get(60, TimeUnit.SECONDS);
+                    if (r != null) {
+                        distinct.add(r);
+                    }
+                }
+                assertEquals(1, distinct.size(), "all readers should share a single load");
+                TestResult r = distinct.iterator().next();
+                assertEquals(303, r.getTotalCount());
+                assertEquals(3, r.getFailCount());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     public static final class SimpleArchive extends Builder {
         private final String name;
         private final int pass;
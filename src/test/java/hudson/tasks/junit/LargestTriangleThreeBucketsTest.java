@@ -0,0 +1,75 @@
+package hudson.tasks.junit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import hudson.tasks.junit.History.LargestTriangleThreeBuckets;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class LargestTriangleThreeBucketsTest {
+
+    @Test
+    void keepsAllPointsBelowTheThreshold() {
+        double[] xs = {1, 2, 3, 4};
+        int[] selected = LargestTriangleThreeBuckets.select(xs, new double[4], new boolean[4], 10);
+        assertArrayEquals(new int[] {0, 1, 2, 3}, selected);
+    }
+
+    @Test
+    void keepsSpikesAndEnds() {
+        int n = 5000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i + 1;
+            ys[i] = 1.0 + (i % 7) * 0.01;
+        }
+        ys[1234] = 100;
+        ys[4321] = 0;
+        int[] selected = LargestTriangleThreeBuckets.select(xs, ys, new boolean[n], 100);
+
+        assertEquals(100, selected.length);
+        List<Integer> indices = Arrays.stream(selected).boxed().toList();
+        assertEquals(0, selected[0]);
+        assertEquals(n - 1, selected[selected.length - 1]);
+        assertThat(indices, hasItem(1234));
+        assertThat(indices, hasItem(4321));
+        for (int i = 1; i < selected.length; i++) {
+            assertTrue(selected[i - 1] < selected[i]);
+        }
+    }
+
+    @Test
+    void keepsPointsAskedFor() {
+        int n = 5000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        boolean[] keep = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i + 1;
+            ys[i] = i % 2 == 0 ? 1 : 2;
+        }
+        keep[2500] = true;
+        int[] selected = LargestTriangleThreeBuckets.select(xs, ys, keep, 100);
+
+        assertThat(selected.length, lessThanOrEqualTo(200));
+        assertThat(Arrays.stream(selected).boxed().toList(), hasItem(2500));
+        for (int i = 1; i < selected.length; i++) {
+            assertTrue(selected[i - 1] < selected[i]);
+        }
+    }
+
+    @Test
+    void requiresArraysWithSameLength() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> LargestTriangleThreeBuckets.select(new double[3], new double[4], new boolean[3], 10));
+    }
+}
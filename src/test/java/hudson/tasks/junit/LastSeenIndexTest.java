@@ -0,0 +1,94 @@
+package hudson.tasks.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LastSeenIndexTest {
+
+    @TempDir
+    private File tmp;
+
+    private TestResult a;
+    private TestResult b;
+    private String inA;
+    private String inB;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        a = parse("junit-report-1463.xml");
+        b = parse("junit-report-494.xml");
+        inA = a.getSuites().iterator().next().getCases().get(0).getId();
+        inB = b.getSuites().iterator().next().getCases().get(0).getId();
+    }
+
+    private TestResult parse(String name) throws Exception {
+        TestResult result = new TestResult();
+        result.parse(new File(getClass().getResource(name).toURI()));
+        result.tally();
+        return result;
+    }
+
+    @Test
+    void findsTheLastBuildWithTheCase() {
+        LastSeenIndex index = new LastSeenIndex();
+        assertEquals(LastSeenIndex.UNKNOWN, index.previousBuild(inA, 5));
+        index.record(5, a);
+        index.record(6, b);
+        index.record(7, a);
+
+        assertEquals(5, index.previousBuild(inA, 7));
+        assertEquals(5, index.previousBuild(inA, 6));
+        assertEquals(7, index.previousBuild(inA, 8));
+        // builds before the index may have it
+        assertEquals(LastSeenIndex.UNKNOWN, index.previousBuild(inA, 5));
+        assertEquals(LastSeenIndex.UNKNOWN, index.previousBuild(inA, 4));
+
+        assertEquals(LastSeenIndex.NONE, index.previousBuild(inB, 6));
+        assertEquals(6, index.previousBuild(inB, 7));
+        assertEquals(LastSeenIndex.NONE, index.previousBuild("junit/no/Such/test", 7));
+    }
+
+    @Test
+    void forgetsDeletedBuilds() {
+        LastSeenIndex index = new LastSeenIndex();
+        index.record(5, a);
+        index.record(6, b);
+        index.record(7, a);
+
+        index.forget(7);
+        assertEquals(5, index.previousBuild(inA, 8));
+        index.forget(6);
+        assertEquals(LastSeenIndex.NONE, index.previousBuild(inB, 8));
+        index.forget(5);
+        assertEquals(LastSeenIndex.UNKNOWN, index.previousBuild(inA, 8));
+
+        index.record(8, a);
+        assertEquals(8, index.previousBuild(inA, 9));
+        assertEquals(LastSeenIndex.UNKNOWN, index.previousBuild(inA, 8));
+    }
+
+    @Test
+    void savedAndLoaded() throws Exception {
+        LastSeenIndex index = new LastSeenIndex();
+        index.record(5, a);
+        index.record(6, b);
+        index.record(7, a);
+        File file = new File(tmp, "junit-history/last-seen.bin");
+        index.save(file);
+
+        LastSeenIndex loaded = new LastSeenIndex();
+        loaded.load(file);
+        assertEquals(5, loaded.getSince());
+        assertEquals(5, loaded.previousBuild(inA, 7));
+        assertEquals(6, loaded.previousBuild(inB, 7));
+        assertEquals(LastSeenIndex.NONE, loaded.previousBuild(inB, 6));
+
+        LastSeenIndex missing = new LastSeenIndex();
+        missing.load(new File(tmp, "missing.bin"));
+        assertEquals(LastSeenIndex.UNKNOWN, missing.previousBuild(inA, 7));
+    }
+}
@@ -0,0 +1,79 @@
+package hudson.tasks.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import hudson.model.FreeStyleProject;
+import java.nio.file.Files;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class SidecarStoreTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+    }
+
+    private static SidecarStore<StringBuilder> newStore() {
+        return new SidecarStore<>(
+                "test.txt",
+                "test",
+                file -> new StringBuilder(),
+                (sb, file) -> {
+                    if (file.exists()) {
+                        sb.append(Files.readString(file.toPath()));
+                    }
+                },
+                (sb, file) -> {
+                    Files.createDirectories(file.toPath().getParent());
+                    Files.writeString(file.toPath(), sb);
+                });
+    }
+
+    @Test
+    void leastRecentlyUsedJobsAreDroppedOnceWritten() throws Exception {
+        int maxJobs = SidecarStore.MAX_JOBS;
+        long delay = SidecarStore.SAVE_DELAY_MS;
+        SidecarStore.MAX_JOBS = 1;
+        SidecarStore.SAVE_DELAY_MS = 3_600_000L;
+        try {
+            FreeStyleProject a = j.createFreeStyleProject("a");
+            FreeStyleProject b = j.createFreeStyleProject("b");
+            SidecarStore<StringBuilder> store = newStore();
+
+            StringBuilder forA = store.get(a);
+            assertSame(forA, store.get(a));
+            forA.append("first");
+            store.saveLater(a);
+            forA.append(" second");
+            store.saveLater(a);
+            assertFalse(store.getFile(a).exists());
+
+            store.get(b);
+            assertTrue(store.isResident(a), "changes not written yet are kept");
+            assertTrue(store.isResident(b));
+
+            store.flush();
+            assertEquals("first second", Files.readString(store.getFile(a).toPath()));
+            assertFalse(store.isResident(a));
+            assertTrue(store.isResident(b));
+
+            StringBuilder reloaded = store.get(a);
+            assertNotSame(forA, reloaded);
+            assertEquals("first second", reloaded.toString());
+            assertFalse(store.isResident(b));
+        } finally {
+            SidecarStore.MAX_JOBS = maxJobs;
+            SidecarStore.SAVE_DELAY_MS = delay;
+        }
+    }
+}
@@ -26,6 +26,7 @@ package hudson.tasks.junit;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import hudson.XmlFile;
@@ -80,6 +81,19 @@ public class TestResultTest {
         assertEquals(3366, testCaseCount, "Wrong number of test cases");
     }
 
+    @Test
+    void suitesLeftEmptyByAClassFilterCanBeCopied() throws Exception {
+        XmlFile xmlFile = new XmlFile(TestResultAction.XSTREAM, getDataFile("junitResult.xml"));
+        TestResult result = new TestResult();
+        result.parse(xmlFile, className -> false);
+        assertEquals(6, result.getSuites().size());
+        for (SuiteResult suite : result.getSuites()) {
+            assertTrue(suite.getCases().isEmpty());
+            assertTrue(suite.getProperties().isEmpty());
+            assertEquals(suite.getName(), new SuiteResult(suite).getName());
+        }
+    }
+
     /**
      * This test verifies compatibility of JUnit test results persisted to
      * XML prior to the test code refactoring.
@@ -500,6 +514,35 @@ public class TestResultTest {
                 "Forgot to implement XML parsing for something? Forgot to implement XML parsing for something?");
     }
 
+    @Test
+    void packagesAndClassesWithTheSameSafeNameGetUniqueOnes() throws Exception {
+        File report = new File(tmp, "TEST-same-safe-names.xml");
+        Files.writeString(
+                report.toPath(),
+                "<testsuite name='same-safe-names' tests='4'>"
+                        + "<testcase classname='a b.Foo' name='t' time='0'/>"
+                        + "<testcase classname='a_b.Foo' name='t' time='0'/>"
+                        + "<testcase classname='c.Foo Bar' name='t' time='0'/>"
+                        + "<testcase classname='c.Foo_Bar' name='t' time='0'/>"
+                        + "</testsuite>");
+        TestResult testResult = new TestResult();
+        testResult.parse(report, null);
+        testResult.tally();
+
+        assertEquals(3, testResult.getChildren().size());
+        assertEquals("a_b", testResult.byPackage("a_b").getName());
+        assertEquals("a b", testResult.byPackage("a_b_2").getName());
+        PackageResult c = testResult.byPackage("c");
+        assertEquals("Foo_Bar", c.getClassResult("Foo_Bar").getName());
+        assertEquals("Foo Bar", c.getClassResult("Foo_Bar_2").getName());
+
+        for (SuiteResult suite : testResult.getSuites()) {
+            for (CaseResult cr : suite.getCases()) {
+                assertSame(cr, testResult.findCorrespondingResult(cr.getId()), cr.getId());
+            }
+        }
+    }
+
     @Issue("GH-237")
     @Test
     void includeFlakyAndRerun() throws Exception {
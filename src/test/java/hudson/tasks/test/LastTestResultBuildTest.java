@@ -0,0 +1,76 @@
+package hudson.tasks.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.tasks.junit.JUnitResultArchiver;
+import java.io.IOException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class LastTestResultBuildTest {
+
+    private JenkinsRule j;
+    private boolean withTests;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+    }
+
+    @Test
+    void buildsWithoutTestsAreSkipped() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                FilePath report = build.getWorkspace().child("TEST-A.xml");
+                if (withTests) {
+                    report.write("<testsuite name='A'><testcase classname='A' name='a'/></testsuite>", "UTF-8");
+                } else if (report.exists()) {
+                    report.delete();
+                }
+                return true;
+            }
+        });
+        JUnitResultArchiver archiver = new JUnitResultArchiver("TEST-A.xml");
+        archiver.setAllowEmptyResults(true);
+        p.getPublishersList().add(archiver);
+        TestResultProjectAction projectAction = new TestResultProjectAction(p);
+
+        assertNull(projectAction.getLastTestResultAction());
+        withTests = true;
+        FreeStyleBuild b1 = j.buildAndAssertSuccess(p);
+        withTests = false;
+        j.buildAndAssertSuccess(p);
+        j.buildAndAssertSuccess(p);
+        assertEquals(b1, projectAction.getLastTestResultAction().run);
+
+        withTests = true;
+        FreeStyleBuild b4 = j.buildAndAssertSuccess(p);
+        assertEquals(b4, projectAction.getLastTestResultAction().run);
+
+        b4.delete();
+        assertEquals(b1, projectAction.getLastTestResultAction().run);
+
+        // as after a restart
+        LastTestResultBuild.clear();
+        assertEquals(b1, projectAction.getLastTestResultAction().run);
+
+        b1.delete();
+        assertNull(projectAction.getLastTestResultAction());
+        FreeStyleBuild b5 = j.buildAndAssertSuccess(p);
+        assertEquals(b5, projectAction.getLastTestResultAction().run);
+    }
+}
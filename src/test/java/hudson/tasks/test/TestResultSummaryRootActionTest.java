@@ -0,0 +1,155 @@
+package hudson.tasks.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.Result;
+import hudson.tasks.junit.JUnitResultArchiver;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import jenkins.model.Jenkins;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockAuthorizationStrategy;
+import org.jvnet.hudson.test.MockFolder;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+@WithJenkins
+class TestResultSummaryRootActionTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+    }
+
+    private FreeStyleProject createProject(MockFolder folder, String name) throws IOException {
+        FreeStyleProject p = folder.createProject(FreeStyleProject.class, name);
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                build.getWorkspace()
+                        .child("TEST-A.xml")
+                        .write(
+                                "<testsuite name='A'><testcase classname='A' name='a'/>"
+                                        + "<testcase classname='A' name='b'><failure/></testcase>"
+                                        + "<testcase classname='A' name='c'><skipped/></testcase></testsuite>",
+                                "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new JUnitResultArchiver("TEST-A.xml"));
+        return p;
+    }
+
+    private JsonNode get(JenkinsRule.WebClient wc, String query) throws Exception {
+        return getResponse(wc, query).get("jobs");
+    }
+
+    private JsonNode getResponse(JenkinsRule.WebClient wc, String query) throws Exception {
+        String json = wc.goTo("junit-summary/?" + query, "application/json")
+                .getWebResponse()
+                .getContentAsString();
+        return new ObjectMapper().readTree(json);
+    }
+
+    @Test
+    void summaries() throws Exception {
+        MockFolder folder = j.createFolder("f");
+        FreeStyleProject a = createProject(folder, "a");
+        createProject(folder, "b");
+        j.assertBuildStatus(Result.UNSTABLE, a.scheduleBuild2(0));
+        TestResultTrendStore.awaitReady(a);
+
+        try (JenkinsRule.WebClient wc = j.createWebClient()) {
+            JsonNode jobs = get(wc, "job=f/a&job=f/b&job=missing");
+            assertEquals(2, jobs.size());
+            JsonNode first = jobs.get(0);
+            assertEquals("f/a", first.get("name").asString());
+            assertEquals(1, first.get("build").asInt());
+            assertEquals(3, first.get("total").asInt());
+            assertEquals(1, first.get("failed").asInt());
+            assertEquals(1, first.get("skipped").asInt());
+            assertEquals(1, first.get("passed").asInt());
+            assertEquals("f/b", jobs.get(1).get("name").asString());
+            assertFalse(jobs.get(1).has("build"));
+
+            assertEquals(2, get(wc, "folder=f").size());
+        }
+    }
+
+    @Test
+    void limitedNumberOfJobs() throws Exception {
+        MockFolder folder = j.createFolder("f");
+        createProject(folder, "a");
+        createProject(folder, "b");
+        int max = TestResultSummaryRootAction.MAX_JOBS;
+        TestResultSummaryRootAction.MAX_JOBS = 1;
+        try (JenkinsRule.WebClient wc = j.createWebClient()) {
+            JsonNode response = getResponse(wc, "folder=f");
+            assertEquals(1, response.get("jobs").size());
+            assertTrue(response.get("truncated").asBoolean());
+            response = getResponse(wc, "job=f/a");
+            assertEquals(1, response.get("jobs").size());
+            assertFalse(response.get("truncated").asBoolean());
+        } finally {
+            TestResultSummaryRootAction.MAX_JOBS = max;
+        }
+    }
+
+    @Test
+    void jobsWithoutTrendStoreAreReadFromTheirLastBuild() throws Exception {
+        MockFolder folder = j.createFolder("f");
+        FreeStyleProject a = createProject(folder, "a");
+        j.assertBuildStatus(Result.UNSTABLE, a.scheduleBuild2(0));
+        TestResultTrendStore.awaitReady(a);
+        // as if the build was from before the store existed
+        Files.delete(new File(a.getRootDir(), "junit-history/trend.bin").toPath());
+        TestResultTrendStore.clear();
+
+        try (JenkinsRule.WebClient wc = j.createWebClient()) {
+            JsonNode jobs = get(wc, "job=f/a");
+            assertEquals(1, jobs.size());
+            assertEquals(1, jobs.get(0).get("build").asInt());
+            assertEquals(3, jobs.get(0).get("total").asInt());
+            assertEquals(1, jobs.get(0).get("failed").asInt());
+        }
+        assertNull(TestResultTrendStore.ofIfReady(a));
+    }
+
+    @Test
+    void onlyReadableJobs() throws Exception {
+        MockFolder folder = j.createFolder("f");
+        FreeStyleProject a = createProject(folder, "a");
+        createProject(folder, "b");
+        j.jenkins.setSecurityRealm(j.createDummySecurityRealm());
+        j.jenkins.setAuthorizationStrategy(new MockAuthorizationStrategy()
+                .grant(Jenkins.READ)
+                .everywhere()
+                .to("alice")
+                .grant(Item.READ)
+                .onItems(folder, a)
+                .to("alice"));
+
+        try (JenkinsRule.WebClient wc = j.createWebClient().login("alice")) {
+            JsonNode jobs = get(wc, "job=f/a&job=f/b");
+            assertEquals(1, jobs.size());
+            assertEquals("f/a", jobs.get(0).get("name").asString());
+            assertEquals(1, get(wc, "folder=f").size());
+        }
+    }
+}
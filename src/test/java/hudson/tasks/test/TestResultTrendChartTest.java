@@ -1,11 +1,22 @@
 package hudson.tasks.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import edu.hm.hafner.echarts.BuildResult;
+import edu.hm.hafner.echarts.ChartModelConfiguration;
 import edu.hm.hafner.echarts.LineSeries;
+import hudson.model.Run;
+import hudson.tasks.junit.HistoryTestResultSummary;
 import hudson.tasks.junit.TrendTestResultSummary;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
@@ -29,6 +40,59 @@ class TestResultTrendChartTest {
         verifyColors(blueModel.getSeries(), "--blue");
     }
 
+    @Test
+    void historyIsDrawnFromItsCounts() {
+        List<HistoryTestResultSummary> history = List.of(
+                new HistoryTestResultSummary(mockRun(3), 1.0f, 1, 0, 4),
+                new HistoryTestResultSummary(mockRun(2), 1.0f, 0, 1, 4),
+                new HistoryTestResultSummary(mockRun(1), 1.0f, 0, 0, 5));
+
+        var model = new TestResultTrendChart().createFromHistory(history, new ChartModelConfiguration());
+
+        assertEquals(List.of("#1", "#2", "#3"), model.getDomainAxisLabels());
+        verifyColors(model.getSeries(), "--green");
+        assertEquals(List.of(5, 4, 4), values(model.getSeries().get(0)));
+        assertEquals(List.of(0, 1, 0), values(model.getSeries().get(1)));
+        assertEquals(List.of(0, 0, 1), values(model.getSeries().get(2)));
+    }
+
+    @Test
+    void testObjectsOfHistoryAreLookedUpAsTheyAreIteratedTo() {
+        Run<?, ?> r2 = mockRun(2);
+        Run<?, ?> r1 = mockRun(1);
+        TestObject baseline = mock(TestObject.class);
+        TestResult inR2 = mock(TestResult.class);
+        doReturn(r2).when(inR2).getRun();
+        when(baseline.getResultInRun(r2)).thenReturn(inR2);
+        List<HistoryTestResultSummary> history = List.of(
+                new HistoryTestResultSummary(r2, 1.0f, 0, 0, 1), new HistoryTestResultSummary(r1, 1.0f, 0, 0, 1));
+
+        Iterator<BuildResult<TestObject>> results = new TestObjectIterable(baseline, history).iterator();
+        verify(baseline, never()).getResultInRun(any());
+
+        BuildResult<TestObject> first = results.next();
+        assertEquals(2, first.getBuild().getNumber());
+        assertSame(inR2, first.getResult());
+        verify(baseline).getResultInRun(r2);
+        verify(baseline, never()).getResultInRun(r1);
+
+        // builds where it is missing are left out
+        assertFalse(results.hasNext());
+        verify(baseline).getResultInRun(r1);
+    }
+
+    private static List<Integer> values(LineSeries series) {
+        return series.getData().stream().map(Number::intValue).toList();
+    }
+
+    private static Run<?, ?> mockRun(int number) {
+        Run<?, ?> run = mock(Run.class);
+        when(run.getNumber()).thenReturn(number);
+        when(run.getDisplayName()).thenReturn("#" + number);
+        when(run.getTimeInMillis()).thenReturn(number * 1000L);
+        return run;
+    }
+
     private void verifyColors(List<LineSeries> series, String passed) {
         assertEquals(passed, series.get(0).getItemStyle().getColor());
         assertEquals("--medium-grey", series.get(1).getItemStyle().getColor());
@@ -0,0 +1,125 @@
+package hudson.tasks.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.hm.hafner.echarts.ChartModelConfiguration;
+import edu.hm.hafner.echarts.JacksonFacade;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.tasks.junit.JUnitResultArchiver;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class TestResultTrendStoreTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+    }
+
+    private FreeStyleProject createProject() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                build.getWorkspace()
+                        .child("TEST-A.xml")
+                        .write(
+                                "<testsuite name='A'><testcase classname='A' name='passing0'/>"
+                                        + "<testcase classname='A' name='passing1'/>"
+                                        + "<testcase classname='A' name='failing'><failure/></testcase></testsuite>",
+                                "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new JUnitResultArchiver("TEST-A.xml"));
+        return p;
+    }
+
+    @Test
+    void buildsAreAddedAndRemoved() throws Exception {
+        FreeStyleProject p = createProject();
+        j.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+        FreeStyleBuild b2 = j.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+        j.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+
+        List<TestResultTrendStore.Point> points = TestResultTrendStore.awaitReady(p).getPoints();
+        assertEquals(3, points.size());
+        TestResultTrendStore.Point newest = points.get(0);
+        assertEquals(3, newest.number());
+        assertEquals(2, newest.passCount());
+        assertEquals(1, newest.failCount());
+        assertEquals(0, newest.skipCount());
+        assertNull(newest.displayName());
+        assertEquals("#3", newest.getDisplayName());
+        assertTrue(newest.duration() >= 0);
+
+        b2.delete();
+        points = TestResultTrendStore.of(p).getPoints();
+        assertEquals(List.of(3, 1), points.stream().map(TestResultTrendStore.Point::number).toList());
+
+        // rewritten a little later
+        TestResultTrendStore.flush();
+        TestResultTrendStore loaded = new TestResultTrendStore(new File(p.getRootDir(), "junit-history/trend.bin"));
+        assertTrue(loaded.load());
+        assertEquals(points, loaded.getPoints());
+    }
+
+    @Test
+    void filledFromExistingBuilds() throws Exception {
+        FreeStyleProject p = createProject();
+        j.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+        j.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+
+        // as if the builds were from before the store existed
+        File file = new File(p.getRootDir(), "junit-history/trend.bin");
+        Files.delete(file.toPath());
+        TestResultTrendStore fresh = new TestResultTrendStore(file);
+        assertFalse(fresh.load());
+
+        JacksonFacade json = new JacksonFacade();
+        TestResultTrendStore.DISABLED = true;
+        String fromBuilds;
+        try {
+            fromBuilds = json.toJson(new TestResultProjectAction(p).createChartModel());
+        } finally {
+            TestResultTrendStore.DISABLED = false;
+        }
+        TestResultTrendStore.clear();
+        // from the builds while the store is filled in
+        assertEquals(fromBuilds, json.toJson(new TestResultProjectAction(p).createChartModel()));
+        TestResultTrendStore.awaitReady(p);
+        String fromStore = json.toJson(new TestResultProjectAction(p).createChartModel());
+
+        assertEquals(fromBuilds, fromStore);
+        assertTrue(file.exists());
+        assertEquals(2, TestResultTrendStore.of(p).getPoints().size());
+        assertEquals(
+                2,
+                new TestResultTrendChart()
+                        .createFromTrend(
+                                TestResultTrendStore.of(p).getBuildResults(),
+                                new ChartModelConfiguration(),
+                                TestResultTrendChart.PassedColor.GREEN)
+                        .getDomainAxisLabels()
+                        .size());
+    }
+}
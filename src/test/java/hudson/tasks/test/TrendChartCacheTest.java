@@ -0,0 +1,90 @@
+package hudson.tasks.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleProject;
+import hudson.tasks.junit.JUnitResultArchiver;
+import java.io.IOException;
+import java.net.URL;
+import org.htmlunit.WebRequest;
+import org.htmlunit.WebResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class TrendChartCacheTest {
+
+    private JenkinsRule j;
+    private FreeStyleProject p;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) throws Exception {
+        j = rule;
+        p = j.createFreeStyleProject("trend");
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                build.getWorkspace()
+                        .child("TEST-A.xml")
+                        .write("<testsuite name='A'><testcase classname='A' name='a'/></testsuite>", "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new JUnitResultArchiver("TEST-A.xml"));
+        TrendChartCache.clear();
+        // not filled in from builds while the tests run
+        TestResultTrendStore.awaitReady(p);
+    }
+
+    @Test
+    void unchangedTrendIsNotComputedAgain() throws Exception {
+        j.buildAndAssertSuccess(p);
+        TestResultProjectAction action = new TestResultProjectAction(p);
+        String model = action.getConfigurableBuildTrendModel("{}");
+        assertSame(model, action.getConfigurableBuildTrendModel("{}"));
+        assertThat(model, containsString("#1"));
+
+        j.buildAndAssertSuccess(p);
+        String updated = action.getConfigurableBuildTrendModel("{}");
+        assertThat(updated, containsString("#2"));
+        assertSame(updated, action.getConfigurableBuildTrendModel("{}"));
+    }
+
+    @Test
+    void conditionalRequests() throws Exception {
+        j.buildAndAssertSuccess(p);
+        try (JenkinsRule.WebClient wc = j.createWebClient()) {
+            wc.setThrowExceptionOnFailingStatusCode(false);
+            URL url = new URL(j.getURL(), "job/trend/test/trendModel");
+
+            WebResponse first = wc.loadWebResponse(new WebRequest(url));
+            assertEquals(200, first.getStatusCode());
+            assertThat(first.getContentAsString(), containsString("#1"));
+            String etag = first.getResponseHeaderValue("ETag");
+            assertNotNull(etag);
+            assertNotNull(first.getResponseHeaderValue("Last-Modified"));
+
+            WebRequest conditional = new WebRequest(url);
+            conditional.setAdditionalHeader("If-None-Match", etag);
+            assertEquals(304, wc.loadWebResponse(conditional).getStatusCode());
+
+            j.buildAndAssertSuccess(p);
+            WebResponse changed = wc.loadWebResponse(conditional);
+            assertEquals(200, changed.getStatusCode());
+            assertThat(changed.getContentAsString(), containsString("#2"));
+            assertNotEquals(etag, changed.getResponseHeaderValue("ETag"));
+        }
+    }
+}
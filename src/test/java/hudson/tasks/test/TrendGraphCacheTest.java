@@ -0,0 +1,114 @@
+package hudson.tasks.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleProject;
+import hudson.tasks.junit.JUnitResultArchiver;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import javax.imageio.ImageIO;
+import org.htmlunit.WebRequest;
+import org.htmlunit.WebResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class TrendGraphCacheTest {
+
+    private JenkinsRule j;
+    private FreeStyleProject p;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) throws Exception {
+        j = rule;
+        p = j.createFreeStyleProject("graph");
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                build.getWorkspace()
+                        .child("TEST-A.xml")
+                        .write("<testsuite name='A'><testcase classname='A' name='a'/></testsuite>", "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new JUnitResultArchiver("TEST-A.xml"));
+        TrendGraphCache.clear();
+        // not filled in from builds while the tests run
+        TestResultTrendStore.awaitReady(p);
+    }
+
+    @Test
+    void conditionalGraphRequests() throws Exception {
+        j.buildAndAssertSuccess(p);
+        j.buildAndAssertSuccess(p);
+        try (JenkinsRule.WebClient wc = j.createWebClient()) {
+            wc.setThrowExceptionOnFailingStatusCode(false);
+            URL url = new URL(j.getURL(), "job/graph/2/testReport/graph?width=300&height=150");
+
+            WebResponse first = wc.loadWebResponse(new WebRequest(url));
+            assertEquals(200, first.getStatusCode());
+            assertThat(first.getContentType(), startsWith("image/png"));
+            String etag = first.getResponseHeaderValue("ETag");
+            assertNotNull(etag);
+
+            WebRequest conditional = new WebRequest(url);
+            conditional.setAdditionalHeader("If-None-Match", etag);
+            assertEquals(304, wc.loadWebResponse(conditional).getStatusCode());
+
+            WebRequest otherSize = new WebRequest(new URL(j.getURL(), "job/graph/2/testReport/graph?width=400"));
+            otherSize.setAdditionalHeader("If-None-Match", etag);
+            assertEquals(200, wc.loadWebResponse(otherSize).getStatusCode());
+
+            j.buildAndAssertSuccess(p);
+            WebResponse changed = wc.loadWebResponse(conditional);
+            assertEquals(200, changed.getStatusCode());
+            assertNotEquals(etag, changed.getResponseHeaderValue("ETag"));
+        }
+    }
+
+    @Test
+    void conditionalMapRequests() throws Exception {
+        j.buildAndAssertSuccess(p);
+        j.buildAndAssertSuccess(p);
+        try (JenkinsRule.WebClient wc = j.createWebClient()) {
+            wc.setThrowExceptionOnFailingStatusCode(false);
+            URL url = new URL(j.getURL(), "job/graph/2/testReport/graphMap");
+
+            WebResponse first = wc.loadWebResponse(new WebRequest(url));
+            assertEquals(200, first.getStatusCode());
+            assertThat(first.getContentAsString(), containsString("<map"));
+            String etag = first.getResponseHeaderValue("ETag");
+            assertNotNull(etag);
+
+            WebRequest conditional = new WebRequest(url);
+            conditional.setAdditionalHeader("If-None-Match", etag);
+            assertEquals(304, wc.loadWebResponse(conditional).getStatusCode());
+        }
+    }
+
+    @Test
+    void oversizedGraphsAreClamped() throws Exception {
+        j.buildAndAssertSuccess(p);
+        try (JenkinsRule.WebClient wc = j.createWebClient()) {
+            URL url = new URL(j.getURL(), "job/graph/1/testReport/graph?width=100000&height=100");
+            WebResponse response = wc.loadWebResponse(new WebRequest(url));
+            assertEquals(200, response.getStatusCode());
+            BufferedImage image = ImageIO.read(response.getContentAsStream());
+            assertEquals(3000, image.getWidth());
+            assertEquals(100, image.getHeight());
+        }
+    }
+}
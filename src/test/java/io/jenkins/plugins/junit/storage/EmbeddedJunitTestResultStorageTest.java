@@ -0,0 +1,169 @@
+package io.jenkins.plugins.junit.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Label;
+import hudson.model.Result;
+import hudson.tasks.junit.CaseResult;
+import hudson.tasks.junit.JUnitResultArchiver;
+import hudson.tasks.junit.TestResultAction;
+import hudson.tasks.junit.TrendTestResultSummary;
+import java.io.IOException;
+import java.util.List;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class EmbeddedJunitTestResultStorageTest {
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+        TestResultImplCache.clear();
+    }
+
+    @Test
+    void publishesFromAgentsAndQueries() throws Exception {
+        JunitTestResultStorageConfiguration.get().setStorage(new EmbeddedJunitTestResultStorage());
+        r.createOnlineSlave(Label.get("remote"));
+        WorkflowJob p = r.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("""
+                node('remote') {
+                  writeFile file: 'x.xml', text: '''<testsuite name='sweet'>
+                <testcase classname='Klazz' name='test1' time='2.0'><error message='failure'/></testcase>
+                <testcase classname='Klazz' name='test2' time='1.0'/>
+                <testcase classname='other.Klazz' name='test3'><skipped message='Not actually run.'/></testcase>
+                </testsuite>'''
+                  junit testResults: 'x.xml', skipPublishingChecks: true
+                  writeFile file: 'x.xml', text: '''<testsuite name='supersweet'>
+                <testcase classname='other.Klazz' name='test4'><failure message='another failure'/></testcase>
+                </testsuite>'''
+                  junit testResults: 'x.xml', skipPublishingChecks: true
+                }""", true));
+        WorkflowRun b1 = r.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+        WorkflowRun b2 = r.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+
+        TestResultImpl result = new EmbeddedJunitTestResultStorage().load("p", b2.getNumber());
+        assertEquals(4, result.getTotalCount());
+        assertEquals(2, result.getFailCount());
+        assertEquals(1, result.getSkipCount());
+        assertEquals(1, result.getPassCount());
+        assertEquals(2, result.getSuites().size());
+        assertThat(
+                result.getFailedTests().stream().map(CaseResult::getFullName).toList(),
+                contains("Klazz.test1", "other.Klazz.test4"));
+        assertThat(
+                result.getSkippedTestsByPackage("other").stream()
+                        .map(CaseResult::getSkippedMessage)
+                        .toList(),
+                contains("Not actually run."));
+        assertEquals(2, result.getPackageResult("other").getTotalCount());
+        assertEquals(2, result.getAllPackageResults().size());
+        assertEquals("failure", result.getSuite("sweet").getCase("Klazz.test1").getErrorDetails());
+        CaseResult failed = result.getFailedTests().get(0);
+        assertEquals(b1, result.getFailedSinceRun(failed));
+        assertEquals(2, result.getCountOfBuildsWithTestResults());
+        assertThat(
+                result.getTrendTestResultSummary().stream()
+                        .map(TrendTestResultSummary::getBuildNumber)
+                        .toList(),
+                contains(1, 2));
+        assertEquals(b2, result.getHistorySummary(0).get(0).getRun());
+        assertNotNull(result.getPreviousResult());
+
+        TestResultAction action = b2.getAction(TestResultAction.class);
+        assertEquals(2, action.getResult().getFailCount());
+
+        b1.delete();
+        assertEquals(1, result.getCountOfBuildsWithTestResults());
+        assertNull(result.getPreviousResult());
+    }
+
+    @Test
+    void regressionsAreCountedAsResultsArePublished() throws Exception {
+        JunitTestResultStorageConfiguration.get().setStorage(new EmbeddedJunitTestResultStorage());
+        FreeStyleProject p = r.createFreeStyleProject("p");
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                String b = build.getNumber() == 1 ? "" : "<failure message='no'/>";
+                build.getWorkspace()
+                        .child("TEST-A.xml")
+                        .write(
+                                "<testsuite name='A'><testcase classname='A' name='a'><failure/></testcase>"
+                                        + "<testcase classname='A' name='b'>" + b + "</testcase></testsuite>",
+                                "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new JUnitResultArchiver("TEST-A.xml"));
+        FreeStyleBuild b1 = r.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+        FreeStyleBuild b2 = r.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+
+        assertEquals(0, b1.getAction(TestResultAction.class).getRegressionCount());
+        b2.reload();
+        // kept with the build, as A.a kept failing while A.b failed for the first time
+        assertEquals(1, b2.getAction(TestResultAction.class).getRegressionCount());
+    }
+
+    @Test
+    void migratesResultsOfTheFileStorage() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject("p");
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                build.getWorkspace()
+                        .child("TEST-A.xml")
+                        .write(
+                                "<testsuite name='A'><testcase classname='A' name='a'/>"
+                                        + "<testcase classname='A' name='b'><failure message='no'/></testcase>"
+                                        + "</testsuite>",
+                                "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new JUnitResultArchiver("TEST-A.xml"));
+        FreeStyleBuild b1 = r.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+        FreeStyleBuild b2 = r.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+        // only once results are stored in the database
+        assertThrows(IOException.class, EmbeddedJunitTestResultStorage::migrate);
+
+        JunitTestResultStorageConfiguration.get().setStorage(new EmbeddedJunitTestResultStorage());
+        FreeStyleBuild b3 = r.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+        EmbeddedJunitTestResultStorage.migrate();
+        // nothing imported twice
+        EmbeddedJunitTestResultStorage.migrate();
+
+        TestResultImpl result = new EmbeddedJunitTestResultStorage().load("p", b2.getNumber());
+        assertEquals(2, result.getTotalCount());
+        assertEquals(1, result.getFailCount());
+        List<CaseResult> failed = result.getFailedTests();
+        assertEquals(1, failed.size());
+        assertEquals("no", failed.get(0).getErrorDetails());
+        assertEquals(b1, result.getFailedSinceRun(failed.get(0)));
+        // recorded before the builds it follows were imported
+        TestResultImpl latest = new EmbeddedJunitTestResultStorage().load("p", b3.getNumber());
+        assertEquals(b1, latest.getFailedSinceRun(latest.getFailedTests().get(0)));
+        assertEquals(3, result.getCountOfBuildsWithTestResults());
+    }
+}
@@ -0,0 +1,154 @@
+package io.jenkins.plugins.junit.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.junit.JUnitResultArchiver;
+import hudson.tasks.junit.SuiteResult;
+import hudson.tasks.junit.TestResultAction;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.TestExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class StreamingRemotePublisherTest {
+
+    private static final List<Integer> batches = new CopyOnWriteArrayList<>();
+    private static final List<String> finished = new CopyOnWriteArrayList<>();
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+        batches.clear();
+        finished.clear();
+        JunitTestResultStorageConfiguration.get().setStorage(new Storage());
+    }
+
+    @Test
+    void suitesArePublishedInBatchesWhileParsing() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject("p");
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                FilePath ws = build.getWorkspace();
+                for (String name : new String[] {"A", "B", "C"}) {
+                    ws.child("TEST-" + name + ".xml")
+                            .write(
+                                    "<testsuite name='" + name + "'><testcase classname='" + name + "' name='a'/>"
+                                            + "<testcase classname='" + name + "' name='b'>"
+                                            + "<failure message='no'/></testcase></testsuite>",
+                                    "UTF-8");
+                }
+                return true;
+            }
+        });
+        p.getPublishersList().add(new JUnitResultArchiver("TEST-*.xml"));
+        FreeStyleBuild b = r.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+
+        // three cases per batch, files of two cases each
+        assertThat(batches, contains(4, 2));
+        assertThat(finished, contains("p#1"));
+        TestResultAction action = b.getAction(TestResultAction.class);
+        assertEquals(6, action.getTotalCount());
+        assertEquals(3, action.getFailCount());
+    }
+
+    @Test
+    void suitesSplitAcrossBatchesAreCountedOnce() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject("p");
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                FilePath ws = build.getWorkspace();
+                for (int part = 1; part <= 2; part++) {
+                    StringBuilder cases = new StringBuilder();
+                    for (int i = 1; i <= 3; i++) {
+                        cases.append("<testcase classname='A' name='t").append(part).append(i).append("'>");
+                        if (i <= part) {
+                            cases.append("<failure message='no'/>");
+                        }
+                        cases.append("</testcase>");
+                    }
+                    ws.child("TEST-A-" + part + ".xml").write("<testsuite name='A'>" + cases + "</testsuite>", "UTF-8");
+                }
+                return true;
+            }
+        });
+        p.getPublishersList().add(new JUnitResultArchiver("TEST-*.xml"));
+        FreeStyleBuild b = r.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+
+        // each file fills a batch on its own
+        assertThat(batches, contains(3, 3));
+        TestResultAction action = b.getAction(TestResultAction.class);
+        assertEquals(6, action.getTotalCount());
+        assertEquals(3, action.getFailCount());
+
+        // kept as one suite by the embedded database too
+        JunitTestResultStorageConfiguration.get().setStorage(new EmbeddedJunitTestResultStorage());
+        int batchSize = EmbeddedRemotePublisher.BATCH_SIZE;
+        EmbeddedRemotePublisher.BATCH_SIZE = 3;
+        try {
+            FreeStyleBuild b2 = r.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0));
+            TestResultImpl result = new EmbeddedJunitTestResultStorage().load("p", b2.getNumber());
+            assertEquals(1, result.getSuites().size());
+            assertEquals(6, result.getSuite("A").getCases().size());
+            assertEquals(6, result.getTotalCount());
+        } finally {
+            EmbeddedRemotePublisher.BATCH_SIZE = batchSize;
+        }
+    }
+
+    public static class Storage extends JunitTestResultStorage {
+
+        @Override
+        public RemotePublisher createRemotePublisher(Run<?, ?> build) {
+            return new Publisher(build.getExternalizableId());
+        }
+
+        @Override
+        public TestResultImpl load(String job, int build) {
+            return null;
+        }
+
+        @TestExtension
+        public static class DescriptorImpl extends JunitTestResultStorageDescriptor {}
+    }
+
+    private record Publisher(String build) implements JunitTestResultStorage.StreamingRemotePublisher {
+
+        @Override
+        public int getBatchSize() {
+            return 3;
+        }
+
+        @Override
+        public void publishSuites(List<SuiteResult> suites, TaskListener listener) {
+            batches.add(suites.stream().mapToInt(s -> s.getCases().size()).sum());
+        }
+
+        @Override
+        public void finish(TaskListener listener) {
+            finished.add(build);
+        }
+    }
+}
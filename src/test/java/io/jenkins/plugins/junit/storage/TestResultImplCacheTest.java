@@ -0,0 +1,140 @@
+package io.jenkins.plugins.junit.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import hudson.model.Run;
+import hudson.tasks.junit.CaseResult;
+import hudson.tasks.junit.TestResult;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestResultImplCacheTest {
+
+    private CountingStorage storage;
+    private long ttl;
+    private int maxItems;
+
+    @BeforeEach
+    void setUp() {
+        storage = new CountingStorage();
+        ttl = TestResultImplCache.TTL_SECONDS;
+        maxItems = TestResultImplCache.MAX_ITEMS;
+        TestResultImplCache.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TestResultImplCache.TTL_SECONDS = ttl;
+        TestResultImplCache.MAX_ITEMS = maxItems;
+        TestResultImplCache.clear();
+    }
+
+    @Test
+    void queriesAreAskedOnce() {
+        TestResultImpl impl = TestResultImplCache.load(storage, "p", 1);
+        assertSame(impl, TestResultImplCache.load(storage, "p", 1));
+        assertEquals(1, storage.loads);
+
+        assertEquals(2, impl.getFailCount());
+        assertEquals(2, impl.getFailCount());
+        assertEquals(List.of(), impl.getFailedTestsByPackage("a"));
+        assertEquals(List.of(), impl.getFailedTestsByPackage("a"));
+        impl.getFailedTestsByPackage("b");
+        assertNull(impl.getPreviousResult());
+        assertNull(impl.getPreviousResult());
+
+        TestResultImpl delegate = storage.impls.get(0);
+        verify(delegate, times(1)).getFailCount();
+        verify(delegate, times(1)).getFailedTestsByPackage("a");
+        verify(delegate, times(1)).getFailedTestsByPackage("b");
+        verify(delegate, times(1)).getPreviousResult();
+    }
+
+    @Test
+    void largeAnswersAreNotKept() {
+        TestResultImplCache.MAX_ITEMS = 2;
+        TestResultImpl impl = TestResultImplCache.load(storage, "p", 1);
+        TestResultImpl delegate = storage.impls.get(0);
+        CaseResult c = mock(CaseResult.class);
+        when(delegate.getPassedTests()).thenReturn(List.of(c, c, c));
+        when(delegate.getSkippedTests()).thenReturn(List.of(c, c));
+
+        impl.getPassedTests();
+        impl.getPassedTests();
+        impl.getSkippedTests();
+        impl.getSkippedTests();
+        verify(delegate, times(2)).getPassedTests();
+        verify(delegate, times(1)).getSkippedTests();
+    }
+
+    @Test
+    void buildsOfAJobAreDroppedWhenResultsArePublished() {
+        TestResultImpl p1 = TestResultImplCache.load(storage, "p", 1);
+        TestResultImpl q1 = TestResultImplCache.load(storage, "q", 1);
+        TestResultImplCache.invalidate("p");
+        assertNotSame(p1, TestResultImplCache.load(storage, "p", 1));
+        assertSame(q1, TestResultImplCache.load(storage, "q", 1));
+    }
+
+    @Test
+    void buildsLoadedWhileDroppedAreNotKept() {
+        storage.whileLoading = () -> TestResultImplCache.invalidate("p");
+        TestResultImpl p1 = TestResultImplCache.load(storage, "p", 1);
+        storage.whileLoading = null;
+        assertNotSame(p1, TestResultImplCache.load(storage, "p", 1));
+        assertEquals(2, storage.loads);
+    }
+
+    @Test
+    void buildsAreDroppedWhenAnotherStorageIsConfigured() {
+        TestResultImplCache.load(storage, "p", 1);
+        CountingStorage other = new CountingStorage();
+        TestResultImplCache.load(other, "p", 1);
+        assertEquals(1, other.loads);
+        TestResultImplCache.load(storage, "p", 1);
+        assertEquals(2, storage.loads);
+    }
+
+    @Test
+    void nothingIsKeptWithoutTtl() {
+        TestResultImplCache.TTL_SECONDS = 0;
+        TestResultImplCache.load(storage, "p", 1);
+        TestResultImplCache.load(storage, "p", 1);
+        assertEquals(2, storage.loads);
+    }
+
+    private static class CountingStorage extends JunitTestResultStorage {
+        int loads;
+        final List<TestResultImpl> impls = new ArrayList<>();
+        Runnable whileLoading;
+
+        @Override
+        public RemotePublisher createRemotePublisher(Run<?, ?> build) {
+            return null;
+        }
+
+        @Override
+        public TestResultImpl load(String job, int build) {
+            loads++;
+            if (whileLoading != null) {
+                whileLoading.run();
+            }
+            TestResultImpl impl = mock(TestResultImpl.class);
+            when(impl.getFailCount()).thenReturn(2);
+            when(impl.getFailedTestsByPackage("a")).thenReturn(List.of());
+            when(impl.getPreviousResult()).thenReturn((TestResult) null);
+            impls.add(impl);
+            return impl;
+        }
+    }
+}
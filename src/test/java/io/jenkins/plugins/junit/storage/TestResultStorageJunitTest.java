@@ -141,7 +141,10 @@ class TestResultStorageJunitTest {
                           s = junit testResults: 'x.xml', skipPublishingChecks: true
                           echo(/next summary: fail=$s.failCount skip=$s.skipCount pass=$s.passCount total=$s.totalCount/)
                         }""", true));
+        // regressions are counted from the storage as results are published
+        Impl.queriesPermitted = true;
         WorkflowRun b = p.scheduleBuild2(0).get();
+        Impl.queriesPermitted = false;
         try (Connection connection = Objects.requireNonNull(
                                 GlobalDatabaseConfiguration.get().getDatabase())
                         .getDataSource()
@@ -171,7 +174,28 @@ class TestResultStorageJunitTest {
                     childNames.add(((Element) item).getTagName());
                 }
             }
-            assertThat(buildXml, childNames, containsInAnyOrder("healthScaleFactor", "testData", "descriptions"));
+            assertThat(
+                    buildXml,
+                    childNames,
+                    containsInAnyOrder(
+                            "healthScaleFactor",
+                            "testData",
+                            "descriptions",
+                            "failCount",
+                            "skipCount",
+                            "totalCount",
+                            "duration",
+                            "regressionCount"));
+        }
+        {
+            // counts are kept with the build, so reading them does not query the storage
+            TestResultAction a = b.getAction(TestResultAction.class);
+            assertEquals(2, a.getFailCount());
+            assertEquals(1, a.getSkipCount());
+            assertEquals(4, a.getTotalCount());
+            assertEquals(0, a.getRegressionCount());
+            assertNotNull(a.getBadge());
+            assertNotNull(a.getBuildHealth());
         }
         Impl.queriesPermitted = true;
         {